@@ -0,0 +1,180 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * A small benchmark harness for the hot paths of the simulation: each
+ * benchmark is run for a number of timed warmup iterations, whose results are
+ * discarded, and then for a number of measured iterations. For each benchmark
+ * it reports the throughput in operations per second (with the standard
+ * deviation over the measured iterations), the bytes allocated per operation,
+ * the allocation rate in MB/s and the number of garbage collections, as JMH
+ * does with its GC profiler.
+ *
+ * The harness lives in the default package, next to the classes it measures
+ * (JMH refuses benchmark classes in the default package, and classes in a
+ * named package cannot see the simulation classes). Run all benchmarks with
+ *
+ * javac -d out classes/*.java benchmarks/*.java && java -cp out Bench
+ *
+ * and tune them with the system properties bench.warmup and bench.iterations
+ * (iterations, default 5 each), bench.time (milliseconds per iteration,
+ * default 1000) and bench.filter (a regular expression that the names of the
+ * benchmarks to run must contain). For stable results, run on an otherwise idle
+ * machine with a fixed heap, e.g. java -Xms2g -Xmx2g.
+ *
+ */
+public class Bench {
+
+	/**
+	 * A benchmarked operation.
+	 */
+	public interface Op {
+
+		/**
+		 * Runs one invocation of the operation.
+		 *
+		 * @return any value computed by the operation, so that the JIT compiler
+		 *         cannot remove the computation
+		 * @throws Exception
+		 */
+		long run() throws Exception;
+	}
+
+	private final int warmup = Integer.getInteger("bench.warmup", 5);
+	private final int iterations = Integer.getInteger("bench.iterations", 5);
+	private final long iterationNanos = Long.getLong("bench.time", 1000) * 1_000_000L;
+	private final Pattern filter = Pattern.compile(System.getProperty("bench.filter", ""));
+	private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+	private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+	// where the values returned by the operations are accumulated, once per
+	// iteration: a volatile write that the JIT compiler must keep, and with it
+	// the computations of the values
+	private volatile long sink;
+	// how many invocations run between two readings of the clock
+	private int batch;
+
+	/**
+	 * Runs all the benchmarks.
+	 *
+	 * @param args Not used; see the system properties above
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		Locale.setDefault(new Locale("en", "US"));
+		Bench bench = new Bench();
+		bench.header();
+		QueueBenchmarks.run(bench);
+		RingQueueBenchmarks.run(bench);
+		QueueSystemBenchmarks.run(bench);
+		ConcurrentQueueSystemBenchmarks.run(bench);
+		HighwayBenchmarks.run(bench);
+	}
+
+	/**
+	 * Prints the header of the results table.
+	 */
+	public void header() {
+		System.out.printf("%-56s %16s %10s %12s %10s %6s%n", "Benchmark", "ops/s", "sd", "B/op", "MB/s",
+				"GCs");
+	}
+
+	/**
+	 * Should the benchmark with the given name be run?
+	 *
+	 * @param name The name of the benchmark
+	 */
+	public boolean selected(String name) {
+		return filter.matcher(name).find();
+	}
+
+	/**
+	 * Measures an operation and prints its results, if it is selected.
+	 *
+	 * @param name       The name of the benchmark
+	 * @param opsPerCall How many operations each invocation of op performs
+	 * @param op         The operation
+	 * @throws Exception if the operation throws one
+	 */
+	public void run(String name, long opsPerCall, Op op) throws Exception {
+		if (!selected(name))
+			return;
+		batch = 1;
+		for (int i = 0; i < warmup; i++)
+			iteration(opsPerCall, op);
+		double[] throughput = new double[iterations];
+		long ops = 0;
+		long nanos = 0;
+		long gcs = -gcCount();
+		long allocated = -threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		for (int i = 0; i < iterations; i++) {
+			long[] r = iteration(opsPerCall, op);
+			throughput[i] = r[0] * 1e9 / r[1];
+			ops += r[0];
+			nanos += r[1];
+		}
+		allocated += threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		gcs += gcCount();
+		double mean = ops * 1e9 / nanos;
+		double variance = 0;
+		for (double t : throughput)
+			variance += (t - mean) * (t - mean);
+		double sd = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+		System.out.printf("%-56s %16.1f %10.1f %12.1f %10.1f %6d%n", name, mean, sd, (double) allocated / ops,
+				allocated * 1e3 / nanos, gcs);
+	}
+
+	/**
+	 * Invokes op repeatedly for about one iteration time. The clock is read once
+	 * per batch of invocations, and batches double until each one takes at least
+	 * a thousandth of the iteration time, so that reading the clock does not
+	 * weigh on short operations.
+	 *
+	 * @return the number of operations performed and the time they took
+	 */
+	private long[] iteration(long opsPerCall, Op op) throws Exception {
+		long calls = 0;
+		long values = 0;
+		long start = System.nanoTime();
+		long now = start;
+		do {
+			long batchStart = now;
+			for (int k = 0; k < batch; k++)
+				values += op.run();
+			calls += batch;
+			now = System.nanoTime();
+			if (now - batchStart < iterationNanos / 1000 && batch < 1 << 20)
+				batch *= 2;
+		} while (now - start < iterationNanos);
+		sink += values;
+		return new long[] { calls * opsPerCall, now - start };
+	}
+
+	private long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : collectors)
+			count += Math.max(0, gc.getCollectionCount());
+		return count;
+	}
+
+	/**
+	 * The sizes in the given list that are selected by the property with the
+	 * given name, a comma separated list of sizes; all of them if the property
+	 * is not set.
+	 */
+	static List<Integer> sizes(String property, int... defaults) {
+		List<Integer> sizes = new ArrayList<>();
+		String value = System.getProperty(property);
+		if (value == null)
+			for (int n : defaults)
+				sizes.add(n);
+		else
+			for (String n : value.split(","))
+				sizes.add(Integer.parseInt(n.trim()));
+		return sizes;
+	}
+}
@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Benchmarks of ConcurrentQueueSystem.enqueueLeastLoaded fed by 1 to N
+ * producer threads at once (N is the property bench.producers, by default
+ * twice the number of processors), into 64 queues that a consumer thread keeps
+ * draining. Each operation is one element added; with enough processors, the
+ * throughput should grow with the number of producers. The allocation columns
+ * only count the thread that runs the harness, not the producers.
+ *
+ */
+public class ConcurrentQueueSystemBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		Bench bench = new Bench();
+		bench.header();
+		run(bench);
+	}
+
+	/**
+	 * Runs the benchmarks of this class.
+	 *
+	 * @param bench The harness
+	 * @throws Exception
+	 */
+	public static void run(Bench bench) throws Exception {
+		int maxProducers = Integer.getInteger("bench.producers", 2 * Runtime.getRuntime().availableProcessors());
+		int perProducer = 100000;
+		for (int producers = 1; producers <= maxProducers; producers *= 2) {
+			int n = producers;
+			bench.run("ConcurrentQueueSystem.enqueueLeastLoaded.producers" + n, (long) n * perProducer,
+					() -> round(n, perProducer));
+		}
+	}
+
+	/**
+	 * Starts the producers and the consumer together and waits until every
+	 * element has been added and removed.
+	 *
+	 * @return the number of queues
+	 */
+	private static long round(int producers, int perProducer) throws Exception {
+		ConcurrentQueueSystem<Integer> qs = new ConcurrentQueueSystem<>(64);
+		Integer item = 7;
+		CyclicBarrier start = new CyclicBarrier(producers + 1);
+		List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < producers; p++)
+			threads.add(new Thread(() -> {
+				await(start);
+				for (int k = 0; k < perProducer; k++)
+					qs.enqueueLeastLoaded(item);
+			}));
+		long total = (long) producers * perProducer;
+		threads.add(new Thread(() -> {
+			await(start);
+			long removed = 0;
+			for (int i = 0; removed < total; i = (i + 1) & 63)
+				if (qs.tryDequeueAt(i))
+					removed++;
+		}));
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+		return qs.howManyQueues();
+	}
+
+	private static void await(CyclicBarrier barrier) {
+		try {
+			barrier.await();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,214 @@
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Benchmarks of Highway: addVehicle and addVehicles, one tick of the simulation
+ * (updateActiveQueues followed by updateNumberActiveQueues) and the replay of
+ * a whole generated trace by RunSimulation.simulation, in each of the modes
+ * RunSimulation offers, and branching and rendering a highway with a large
+ * backlog.
+ *
+ */
+public class HighwayBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		Bench bench = new Bench();
+		bench.header();
+		run(bench);
+	}
+
+	/**
+	 * Runs the benchmarks of this class.
+	 *
+	 * @param bench The harness
+	 * @throws Exception
+	 */
+	public static void run(Bench bench) throws Exception {
+		addVehicle(bench);
+		tick(bench);
+		branch(bench);
+		render(bench);
+		replay(bench);
+	}
+
+	/**
+	 * Each operation adds a vehicle to a highway that starts empty and keeps
+	 * 10,000 vehicles, opening lanes as they fill up: one at a time, and in
+	 * batches, as the vehicles arriving in the same unit of time.
+	 */
+	private static void addVehicle(Bench bench) throws Exception {
+		int n = 10000;
+		Vehicle[] vehicles = new Vehicle[n];
+		for (int i = 0; i < n; i++)
+			vehicles[i] = new Vehicle(1, 10, 1.5);
+		bench.run("Highway.addVehicle", n, () -> {
+			Highway h = new Highway(2, 8);
+			for (Vehicle v : vehicles)
+				h.addVehicle(v);
+			return h.nrActiveQueues();
+		});
+		for (int batch : new int[] { 16, 256 })
+			bench.run("Highway.addVehicles.batch" + batch, n, () -> {
+				Highway h = new Highway(2, 8);
+				for (int off = 0; off < n; off += batch)
+					h.addVehicles(vehicles, off, Math.min(batch, n - off));
+				return h.nrActiveQueues();
+			});
+	}
+
+	/**
+	 * Each operation is one tick of a highway at steady state: 16 vehicles
+	 * arrive, taking 1 or 2 time units each, and then the time advances one unit.
+	 */
+	private static void tick(Bench bench) throws Exception {
+		Random random = new Random(42);
+		int[] durations = new int[4096];
+		for (int k = 0; k < durations.length; k++)
+			durations[k] = 1 + random.nextInt(2);
+		for (boolean eventDriven : new boolean[] { false, true }) {
+			Highway h = new Highway(2, 8, eventDriven);
+			int[] clock = { 1 };
+			bench.run("Highway.tick" + (eventDriven ? ".events" : ""), 1, () -> {
+				int time = clock[0]++;
+				for (int k = 0; k < 16; k++)
+					h.addVehicle(new Vehicle(time, durations[(time * 16 + k) & (durations.length - 1)], 1.5));
+				if (eventDriven)
+					h.advanceTo(time);
+				else {
+					h.updateActiveQueues();
+					h.updateNumberActiveQueues();
+				}
+				return h.nrActiveQueues();
+			});
+		}
+	}
+
+	/**
+	 * Each operation takes a branch of an event-driven highway holding 100,000
+	 * vehicles in 12,500 lanes and runs it for 10 units of time, with 16
+	 * arrivals in each: with fork, and with a full copy through writeState and
+	 * readState, for comparison.
+	 */
+	private static void branch(Bench bench) throws Exception {
+		Highway trunk = new Highway(2, 8, true);
+		for (int i = 0; i < 100000; i++)
+			trunk.addVehicle(new Vehicle(1, 1000 + i % 1000, 1.5));
+		trunk.advanceTo(1);
+		bench.run("Highway.fork.branch10", 1, () -> branch10(trunk.fork()));
+		bench.run("Highway.copy.branch10", 1, () -> {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			trunk.writeState(new DataOutputStream(bytes));
+			Highway copy = new Highway(2, 8, true);
+			copy.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			return branch10(copy);
+		});
+	}
+
+	private static int branch10(Highway h) throws IllegalQueueRequest {
+		for (int time = 2; time <= 11; time++) {
+			for (int k = 0; k < 16; k++)
+				h.addVehicle(new Vehicle(time, 1 + k % 4, 1.5));
+			h.advanceTo(time);
+		}
+		return h.nrActiveQueues();
+	}
+
+	/**
+	 * Each operation writes the textual representation of a highway holding
+	 * 100,000 vehicles to a stream that discards it: with appendTo, through the
+	 * writer RunSimulation writes its reports with, and with toString, through
+	 * a BufferedWriter, for comparison.
+	 */
+	private static void render(Bench bench) throws Exception {
+		Highway h = new Highway(2, 8);
+		for (int i = 0; i < 100000; i++)
+			h.addVehicle(new Vehicle(1, 1000 + i % 1000, 1.5));
+		PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+		RunSimulation.ReportWriter report = new RunSimulation.ReportWriter(discard);
+		bench.run("Highway.appendTo", 1, () -> {
+			h.appendTo(report);
+			report.flush();
+			return h.totalNrVehicles();
+		});
+		BufferedWriter out = new BufferedWriter(new OutputStreamWriter(discard), 1 << 16);
+		bench.run("Highway.toString", 1, () -> {
+			out.write(h.toString());
+			out.flush();
+			return h.totalNrVehicles();
+		});
+	}
+
+	/**
+	 * Each operation replays a generated trace with the number of vehicles in
+	 * the property bench.vehicles (default 200,000); throughput is in vehicles
+	 * per second. The report lines the simulation prints are discarded. The
+	 * "metrics" mode runs in ticks, with the metrics of the highway enabled.
+	 */
+	private static void replay(Bench bench) throws Exception {
+		String[] modes = { "ticks", "events", "arena", "packed", "metrics" };
+		boolean any = false;
+		for (String mode : modes)
+			any |= bench.selected("RunSimulation.simulation." + mode);
+		if (!any)
+			return;
+
+		int n = Integer.getInteger("bench.vehicles", 200000);
+		Path trace = Files.createTempFile("trace", ".txt");
+		try {
+			generate(trace, n);
+			PrintStream out = System.out;
+			PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+			for (String mode : modes)
+				bench.run("RunSimulation.simulation." + mode, n, () -> {
+					try (MappedArrivalReader sc = new MappedArrivalReader(trace)) {
+						int minActQueues = sc.nextInt();
+						int maxVehiPerQueue = sc.nextInt();
+						System.setOut(discard);
+						if (mode.equals("packed")) {
+							PackedHighway h = new PackedHighway(minActQueues, maxVehiPerQueue);
+							RunSimulation.simulation(h, sc);
+							return h.totalNrVehicles();
+						}
+						QueueSystem<Vehicle> queues = mode.equals("arena")
+								? new ArenaQueueSystem<>(minActQueues, maxVehiPerQueue)
+								: new ArrayQueueSystem<>(minActQueues);
+						boolean ticks = mode.equals("ticks") || mode.equals("metrics");
+						Highway h = new Highway(minActQueues, maxVehiPerQueue, !ticks, queues);
+						if (mode.equals("metrics"))
+							h.enableMetrics();
+						RunSimulation.simulation(h, sc);
+						return h.totalNrVehicles();
+					} finally {
+						System.setOut(out);
+					}
+				});
+		} finally {
+			Files.delete(trace);
+		}
+	}
+
+	/**
+	 * Writes a trace of n vehicles in the text format of highwayTolls.txt: about
+	 * three arrivals per time unit, durations of 1 to 20 time units and tolls of
+	 * 0.50 to 3.00. The simulation lasts until about 1000 time units after the
+	 * last arrival.
+	 */
+	private static void generate(Path trace, int n) throws IOException {
+		ArrivalGenerator generator = new ArrivalGenerator(42, 4, 10, n / 3 + 1000, ArrivalGenerator.Rate.constant(3),
+				ArrivalGenerator.Distribution.uniform(1, 20), ArrivalGenerator.Distribution.uniform(50, 300),
+				ArrivalGenerator.Distribution.constant(1), n);
+		try (OutputStream out = Files.newOutputStream(trace)) {
+			ArrivalGenerator.writeText(generator, out);
+		}
+	}
+}
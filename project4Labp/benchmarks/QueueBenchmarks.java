@@ -0,0 +1,53 @@
+/**
+ * Benchmarks of ArrayQueue: enqueue and dequeue at steady state, when the
+ * array never grows, and filling a new queue, across every reallocation of its
+ * array, compared with filling a SegmentedQueue, which never copies.
+ *
+ */
+public class QueueBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		Bench bench = new Bench();
+		bench.header();
+		run(bench);
+	}
+
+	/**
+	 * Runs the benchmarks of this class.
+	 *
+	 * @param bench The harness
+	 * @throws Exception
+	 */
+	public static void run(Bench bench) throws Exception {
+		Integer item = 7;
+
+		// a queue that keeps 64 elements: each operation is one enqueue and one
+		// dequeue
+		ArrayQueue<Integer> steady = new ArrayQueue<>();
+		for (int i = 0; i < 64; i++)
+			steady.enqueue(item);
+		bench.run("ArrayQueue.enqueueDequeue.steady", 1, () -> {
+			steady.enqueue(item);
+			long size = steady.size();
+			steady.dequeue();
+			return size;
+		});
+
+		// new queues filled up to n elements, growing from the default capacity,
+		// and then emptied: each operation is one enqueue and one dequeue
+		for (int n : Bench.sizes("bench.queueLength", 16, 1024, 65536)) {
+			bench.run("ArrayQueue.enqueueDequeue.growTo" + n, n, () -> fillAndEmpty(new ArrayQueue<>(), n, item));
+			bench.run("SegmentedQueue.enqueueDequeue.growTo" + n, n,
+					() -> fillAndEmpty(new SegmentedQueue<>(), n, item));
+		}
+	}
+
+	private static long fillAndEmpty(Queue<Integer> q, int n, Integer item) {
+		for (int i = 0; i < n; i++)
+			q.enqueue(item);
+		long size = q.size();
+		while (!q.isEmpty())
+			q.dequeue();
+		return size;
+	}
+}
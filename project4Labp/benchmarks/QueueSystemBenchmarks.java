@@ -0,0 +1,56 @@
+import java.util.Random;
+
+/**
+ * Benchmarks of QueueSystem.focusMin with 8 to 10,000 active queues: alone,
+ * and right after the occupation of a random queue changes, as in the
+ * simulation, where every arrival and departure moves the minimum.
+ *
+ */
+public class QueueSystemBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		Bench bench = new Bench();
+		bench.header();
+		run(bench);
+	}
+
+	/**
+	 * Runs the benchmarks of this class.
+	 *
+	 * @param bench The harness
+	 * @throws Exception
+	 */
+	public static void run(Bench bench) throws Exception {
+		for (int n : Bench.sizes("bench.queues", 8, 100, 1000, 10000)) {
+			run(bench, "ArrayQueueSystem", new ArrayQueueSystem<>(n));
+			run(bench, "ArenaQueueSystem", new ArenaQueueSystem<>(n, 16));
+		}
+	}
+
+	private static void run(Bench bench, String name, QueueSystem<Integer> qs) throws Exception {
+		int n = qs.howManyQueues();
+		Integer item = 7;
+		// queues holding 0 to 15 elements
+		Random random = new Random(42);
+		for (int i = 0; i < n; i++)
+			for (int k = random.nextInt(16); k > 0; k--)
+				qs.enqueueAt(i, item);
+		// the queues whose occupation changes, in a cycle
+		int[] lanes = new int[4096];
+		for (int k = 0; k < lanes.length; k++)
+			lanes[k] = random.nextInt(n);
+		int[] next = { 0 };
+
+		bench.run(name + ".focusMin.queues" + n, 1, () -> qs.focusMin());
+
+		// each operation is an arrival and a departure at a random queue, each one
+		// followed by a focusMin
+		bench.run(name + ".updateThenFocusMin.queues" + n, 2, () -> {
+			int lane = lanes[next[0]++ & (lanes.length - 1)];
+			qs.enqueueAt(lane, item);
+			long min = qs.focusMin();
+			qs.tryDequeueAt(lane);
+			return min + qs.focusMin();
+		});
+	}
+}
@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Benchmarks of the ring queues against an ArrayQueue guarded by a lock, in a
+ * pipeline: producer threads enqueue elements that the harness thread dequeues,
+ * through a queue of capacity 1024. Each operation is one element passed from a
+ * producer to the consumer.
+ *
+ */
+public class RingQueueBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		Bench bench = new Bench();
+		bench.header();
+		run(bench);
+	}
+
+	/**
+	 * Runs the benchmarks of this class.
+	 *
+	 * @param bench The harness
+	 * @throws Exception
+	 */
+	public static void run(Bench bench) throws Exception {
+		int capacity = 1024;
+		int perProducer = 100000;
+		pipeline(bench, "SpscRingQueue.pipeline.producers1", 1, perProducer, SpscRingQueue::new, capacity);
+		pipeline(bench, "LockedArrayQueue.pipeline.producers1", 1, perProducer, LockedArrayQueue::new, capacity);
+		for (int producers : new int[] { 1, 2, 4 }) {
+			pipeline(bench, "MpscRingQueue.pipeline.producers" + producers, producers, perProducer,
+					MpscRingQueue::new, capacity);
+			if (producers > 1)
+				pipeline(bench, "LockedArrayQueue.pipeline.producers" + producers, producers, perProducer,
+						LockedArrayQueue::new, capacity);
+		}
+	}
+
+	private static void pipeline(Bench bench, String name, int producers, int perProducer,
+			IntFunction<Queue<Integer>> newQueue, int capacity) throws Exception {
+		Integer item = 7;
+		bench.run(name, (long) producers * perProducer, () -> {
+			Queue<Integer> q = newQueue.apply(capacity);
+			List<Thread> threads = new ArrayList<>();
+			for (int p = 0; p < producers; p++)
+				threads.add(new Thread(() -> {
+					for (int k = 0; k < perProducer; k++)
+						q.enqueue(item);
+				}));
+			for (Thread t : threads)
+				t.start();
+			long sum = 0;
+			for (long k = (long) producers * perProducer; k > 0; k--) {
+				for (int attempt = 0; q.isEmpty(); attempt++)
+					PaddedSequence.backOff(attempt);
+				sum += q.front();
+				q.dequeue();
+			}
+			for (Thread t : threads)
+				t.join();
+			return sum;
+		});
+	}
+
+	/**
+	 * An ArrayQueue guarded by its monitor, bounded like the ring queues:
+	 * enqueue waits while the queue is full.
+	 */
+	private static final class LockedArrayQueue<E> implements Queue<E> {
+		private final ArrayQueue<E> queue = new ArrayQueue<>();
+		private final int capacity;
+
+		LockedArrayQueue(int capacity) {
+			this.capacity = capacity;
+		}
+
+		@Override
+		public void enqueue(E e) {
+			for (int attempt = 0;; attempt++) {
+				synchronized (this) {
+					if (queue.size() < capacity) {
+						queue.enqueue(e);
+						return;
+					}
+				}
+				PaddedSequence.backOff(attempt);
+			}
+		}
+
+		@Override
+		public synchronized void dequeue() {
+			queue.dequeue();
+		}
+
+		@Override
+		public synchronized E front() {
+			return queue.front();
+		}
+
+		@Override
+		public synchronized boolean isEmpty() {
+			return queue.isEmpty();
+		}
+
+		@Override
+		public synchronized int size() {
+			return queue.size();
+		}
+
+		@Override
+		public synchronized String toString() {
+			return queue.toString();
+		}
+	}
+}
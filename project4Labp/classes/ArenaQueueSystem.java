@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.UnaryOperator;
+
+/**
+ * A queue system whose queues all live in one array (the slab), each one in a
+ * fixed-length ring segment of its own: queue i uses the positions i*segment
+ * to (i+1)*segment-1. Visiting many queues per tick then walks a single array
+ * instead of one array per queue.
+ *
+ * The segment length should be the usual maximum occupation of a queue (for
+ * a Highway, its maxVehiclesPerQueue). The elements of a queue that do not
+ * fit in its segment wait, in order, in an overflow ArrayQueue of that queue,
+ * and move into the segment as it empties. Overflow queues are kept once
+ * created, and deactivating and reactivating queues only changes the
+ * bookkeeping, so in steady state the queue system allocates nothing.
+ *
+ * @param <E> The type of the elements in the queues.
+ *
+ */
+public class ArenaQueueSystem<E> extends ArrayQueueSystem<E> {
+
+	/**
+	 * Constructor
+	 *
+	 * @requires howManyQueues > 0 && segmentLength > 0
+	 * @param howManyQueues the initial number of active queues
+	 * @param segmentLength how many elements of each queue fit in the slab; it is
+	 *                      rounded up to a power of two
+	 */
+	public ArenaQueueSystem(int howManyQueues, int segmentLength) {
+		this(howManyQueues, new Arena<E>(howManyQueues * 2, segmentLength));
+	}
+
+	private ArenaQueueSystem(int howManyQueues, Arena<E> arena) {
+		super(howManyQueues, arena::newLane);
+	}
+
+	/**
+	 * Unsupported: the queues of a fork would share the slab, and a copy of a
+	 * queue would use the same segment as the queue.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public ArrayQueueSystem<E> fork(UnaryOperator<E> copy) {
+		throw new UnsupportedOperationException("An ArenaQueueSystem cannot be forked");
+	}
+
+	/**
+	 * The slab shared by the queues of an ArenaQueueSystem.
+	 */
+	private static class Arena<E> {
+
+		// the elements of all queues; segment i belongs to queue i
+		private Object[] slab;
+		// the length of each segment, a power of two
+		private final int segment;
+
+		Arena(int howManyQueues, int segmentLength) {
+			segment = Integer.highestOneBit(Math.max(segmentLength - 1, 1)) << 1;
+			slab = new Object[howManyQueues * segment];
+		}
+
+		/**
+		 * A new queue using the i-th segment; the slab grows if needed.
+		 */
+		Queue<E> newLane(int i) {
+			if ((i + 1) * segment > slab.length)
+				slab = Arrays.copyOf(slab, Math.max(slab.length * 2, (i + 1) * segment));
+			return new Lane(i * segment);
+		}
+
+		/**
+		 * A queue stored in one segment of the slab, plus an overflow queue.
+		 */
+		private class Lane implements Queue<E>, Iterable<E> {
+
+			// the first position of the segment
+			private final int base;
+			// the position of the front inside the segment
+			private int head;
+			// the number of elements in the segment
+			private int count;
+			// the elements that did not fit in the segment, or null if never needed
+			private ArrayQueue<E> overflow;
+
+			Lane(int base) {
+				this.base = base;
+			}
+
+			@Override
+			public void enqueue(E e) {
+				if (count == segment || overflow != null && !overflow.isEmpty()) {
+					if (overflow == null)
+						overflow = new ArrayQueue<>();
+					overflow.enqueue(e);
+				} else {
+					slab[base + ((head + count) & (segment - 1))] = e;
+					count++;
+				}
+			}
+
+			@Override
+			public void dequeue() {
+				slab[base + head] = null;
+				head = (head + 1) & (segment - 1);
+				count--;
+				if (overflow != null && !overflow.isEmpty()) {
+					slab[base + ((head + count) & (segment - 1))] = overflow.front();
+					count++;
+					overflow.dequeue();
+				}
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public E front() {
+				return (E) slab[base + head];
+			}
+
+			@Override
+			public boolean isEmpty() {
+				return count == 0;
+			}
+
+			@Override
+			public int size() {
+				return overflow == null ? count : count + overflow.size();
+			}
+
+			/**
+			 * The textual representation of this queue, in format "<a, b, c<"
+			 */
+			public String toString() {
+				return Renderable.toString(this);
+			}
+
+			@Override
+			public void appendTo(Appendable out) throws IOException {
+				out.append('<');
+				boolean first = true;
+				for (E e : this) {
+					if (!first)
+						out.append(", ");
+					Renderable.appendElement(out, e);
+					first = false;
+				}
+				out.append('<');
+			}
+
+			@Override
+			public Iterator<E> iterator() {
+				return new Iterator<E>() {
+					private int k = 0;
+					private Iterator<E> rest = null;
+
+					@Override
+					public boolean hasNext() {
+						return k < count || overflow != null && k < size();
+					}
+
+					@Override
+					@SuppressWarnings("unchecked")
+					public E next() {
+						if (!hasNext())
+							throw new NoSuchElementException();
+						if (k < count)
+							return (E) slab[base + ((head + k++) & (segment - 1))];
+						if (rest == null)
+							rest = overflow.iterator();
+						k++;
+						return rest.next();
+					}
+				};
+			}
+		}
+	}
+}
@@ -0,0 +1,40 @@
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of all the ArrayQueues of the program, for JMX clients. An ArrayQueue
+ * does not know which highway it belongs to, if any, so these are counted for
+ * the whole program and registered once, under a name of their own, rather
+ * than with the HighwayMetrics of each highway.
+ *
+ */
+public class ArrayQueueMetrics implements ArrayQueueMetricsMBean {
+
+	/**
+	 * The name under which the metrics are registered.
+	 */
+	public static final String NAME = "Highway:type=ArrayQueueMetrics";
+
+	private ArrayQueueMetrics() {
+	}
+
+	/**
+	 * Registers the metrics in the platform MBean server, unless they already
+	 * are.
+	 *
+	 * @throws JMException
+	 */
+	public static synchronized void register() throws JMException {
+		ObjectName name = new ObjectName(NAME);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if (!server.isRegistered(name))
+			server.registerMBean(new ArrayQueueMetrics(), name);
+	}
+
+	@Override
+	public long getReallocations() {
+		return ArrayQueue.reallocations();
+	}
+}
@@ -0,0 +1,13 @@
+/**
+ * The management interface of ArrayQueueMetrics: what JMX clients see of the
+ * ArrayQueues of the whole program.
+ *
+ */
+public interface ArrayQueueMetricsMBean {
+
+	/**
+	 * How many times, since the program started, the array of an ArrayQueue (of
+	 * any highway, or of none) was moved to a larger one.
+	 */
+	long getReallocations();
+}
@@ -1,191 +1,468 @@
-import java.lang.reflect.Array;
-
-/**
- * A queue system implemented with an array of queues.
- * 
- * @param <E> The type of the elements in the queues.
- * 
- */
-public class ArrayQueueSystem<E> implements QueueSystem<E> {
-
-	private Queue<E>[] queues;
-	private boolean[] activated;
-
-	private int currentQueue;
-	private int nQueues; // how many queues do we have?
-	private int nElements; // total number of elements
-
-	/**
-	 * Constructor
-	 * 
-	 * @requires howManyQueues > 0
-	 * @param howManyQueues the initial number of active queues
-	 */
-	@SuppressWarnings("unchecked")
-	public ArrayQueueSystem(int howManyQueues) {
-
-		queues = (Queue<E>[]) Array.newInstance(Queue.class, howManyQueues * 2);
-		activated = new boolean[howManyQueues * 2];
-
-		for (int i = 0; i < howManyQueues; i++) {
-			queues[i] = new ArrayQueue<>();
-			activated[i] = true;
-		}
-		currentQueue = 0;
-		nQueues = howManyQueues;
-		nElements = 0;
-	}
-
-	public void enqueue(E e) throws IllegalQueueRequest {
-		if (!activated[currentQueue])
-			throw new IllegalQueueRequest("Cannot enqueue in a deactivated queue");
-
-		queues[currentQueue].enqueue(e);
-		nElements++;
-	}
-
-	public void dequeue() throws IllegalQueueRequest {
-		if (!activated[currentQueue])
-			throw new IllegalQueueRequest("Cannot dequeue in a deactivated queue");
-
-		if (queues[currentQueue].isEmpty())
-			throw new IllegalQueueRequest("Cannot dequeue from an empty queue");
-
-		queues[currentQueue].dequeue();
-		nElements--;
-	}
-
-	public E front() throws IllegalQueueRequest {
-		if (!activated[currentQueue])
-			throw new IllegalQueueRequest("Cannot get front element in a deactivated queue");
-
-		if (queues[currentQueue].isEmpty())
-			throw new IllegalQueueRequest("Cannot get front element from an empty queue");
-
-		return queues[currentQueue].front();
-	}
-
-	public boolean isEmpty() throws IllegalQueueRequest {
-		if (!activated[currentQueue])
-			throw new IllegalQueueRequest("Cannot check if empty in a deactivated queue");
-
-		return queues[currentQueue].isEmpty();
-	}
-
-	public void create() {
-		if (queues.length == nQueues)
-			grow();
-		queues[nQueues] = new ArrayQueue<>();
-		nQueues++;
-	}
-
-	@SuppressWarnings("unchecked")
-	private void grow() {
-
-		Queue<E>[] newQueues = (Queue<E>[]) Array.newInstance(Queue.class, queues.length * 2);
-		boolean[] newActivated = new boolean[queues.length * 2];
-
-		for (int i = 0; i < queues.length; i++) {
-			newQueues[i] = queues[i];
-			newActivated[i] = activated[i];
-		}
-		queues = newQueues;
-		activated = newActivated;
-	}
-
-	public boolean isActivated(int i) {
-		return activated[i];
-	}
-
-	public void activate(int i) {
-		activated[i] = true;
-	}
-
-	// @requires howManyActiveQueues()>1 [not included in the API, but we need it]
-	public void deactivate(int i) throws IllegalQueueRequest {
-		if (!queues[i].isEmpty())
-			throw new IllegalQueueRequest("Trying to deactivate a non empty queue");
-		activated[i] = false;
-		// we need to keep active the current queue, so let's choose the first active
-		// one
-		boolean found = false;
-		for (int j = 0; j < queues.length && !found; j++) {
-			if (activated[j]) {
-				currentQueue = j;
-				found = true;
-			}
-		}
-	}
-
-	public void focus(int i) throws IllegalQueueRequest {
-		if (!activated[i])
-			throw new IllegalQueueRequest("Cannot focus into a deactived queue");
-		currentQueue = i;
-	}
-
-	public int current() {
-		return currentQueue;
-	}
-
-	public int howManyActiveQueues() {
-		int nActives = 0;
-		for (int i = 0; i < nQueues; i++) {
-			if (activated[i])
-				nActives++;
-		}
-		return nActives;
-	}
-
-	public int howManyQueues() {
-		return nQueues;
-	}
-
-	public int focusMin() {
-		int minIdx = -1;
-		int minOccupation = Integer.MAX_VALUE;
-
-		for (int i = 0; i < nQueues; i++) {
-			if (activated[i] && queues[i].size() < minOccupation) {
-				minOccupation = queues[i].size();
-				minIdx = i;
-			}
-		}
-
-		currentQueue = minIdx;
-		return queues[currentQueue].size();
-	}
-
-	public int focusMax() {
-		int maxIdx = -1;
-		int maxOccupation = Integer.MIN_VALUE;
-
-		for (int i = 0; i < nQueues; i++) {
-			if (activated[i] && queues[i].size() > maxOccupation) {
-				maxOccupation = queues[i].size();
-				maxIdx = i;
-			}
-		}
-
-		currentQueue = maxIdx;
-		return queues[currentQueue].size();
-	}
-
-	public String toString() {
-		String END_LINE = System.lineSeparator();
-
-		StringBuilder sb = new StringBuilder();
-
-		sb.append("Total number of elements in queue system " + nElements + END_LINE);
-		sb.append("Current queue " + currentQueue + END_LINE);
-		for (int i = 0; i < nQueues; i++) {
-			sb.append(queues[i]);
-			sb.append(activated[i] ? "    " : " not").append(" active" + END_LINE);
-		}
-		return sb.toString();
-	}
-
-	@Override
-	public int size() {
-		return nElements;
-	}
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * A queue system implemented with an array of queues.
+ * 
+ * The active queues are also kept in sets of indices by occupation, one set per
+ * number of elements, with the least and the greatest occupation, so that
+ * focusMin and focusMax find their queue as the first member of a set, and an
+ * enqueue or a dequeue moves a queue from a set to the next one in constant
+ * time. Likewise, the active, inactive and non-empty queues are kept in sets of
+ * indices, so that none of the queries in this class needs to scan the queues.
+ * 
+ * A fork shares the queues, the array of queues and the sets of the queue
+ * system it came from, all of them kept in chunks of fixed size, and each of
+ * the two copies only the chunks it changes: the chunks holding each queue it
+ * changes, and the queue itself, with a copy of each of its elements, on its
+ * first change. A branch thus copies in proportion to the queues it changes,
+ * whatever the number of queues.
+ * 
+ * @param <E> The type of the elements in the queues.
+ * 
+ */
+public class ArrayQueueSystem<E> implements QueueSystem<E> {
+
+	private LaneArray<Queue<E>> queues;
+
+	private int currentQueue;
+	private int nQueues; // how many queues do we have?
+	private int nElements; // total number of elements
+
+	// active queues by occupation: bySize[s] holds those with s elements (null
+	// if there never was one), from minSize to maxSize (MAX_VALUE and -1 if
+	// there is no active queue); the first member of bySize[minSize] is the
+	// focusMin queue, the first one of bySize[maxSize] the focusMax one
+	private IndexSet[] bySize;
+	private int minSize;
+	private int maxSize;
+	// active and inactive queues
+	private IndexSet actives;
+	private IndexSet inactives;
+	// non-empty queues (all of them active), to visit only the busy ones
+	private IndexSet busy;
+
+	// makes the queue with a given index, when it is created
+	private final IntFunction<Queue<E>> newQueue;
+
+	// copies an element into a queue copied after a fork (null if never forked)
+	private UnaryOperator<E> copy;
+
+	/**
+	 * Constructor
+	 * 
+	 * @requires howManyQueues > 0
+	 * @param howManyQueues the initial number of active queues
+	 */
+	public ArrayQueueSystem(int howManyQueues) {
+		this(howManyQueues, i -> new ArrayQueue<>());
+	}
+
+	/**
+	 * Constructor for queue systems whose queues are not ArrayQueues
+	 * 
+	 * @requires howManyQueues > 0 && newQueue != null
+	 * @param howManyQueues the initial number of active queues
+	 * @param newQueue      makes an empty queue for a given index; called once for
+	 *                      each index, in increasing order, as queues are created,
+	 *                      and again to copy a queue after a fork
+	 */
+	protected ArrayQueueSystem(int howManyQueues, IntFunction<Queue<E>> newQueue) {
+
+		this.newQueue = newQueue;
+		queues = new LaneArray<>(howManyQueues * 2);
+		bySize = new IndexSet[1];
+		minSize = Integer.MAX_VALUE;
+		maxSize = -1;
+		actives = new IndexSet(howManyQueues * 2);
+		inactives = new IndexSet(howManyQueues * 2);
+		busy = new IndexSet(howManyQueues * 2);
+
+		for (int i = 0; i < howManyQueues; i++) {
+			queues.set(i, newQueue.apply(i));
+			markActive(i);
+		}
+		currentQueue = 0;
+		nQueues = howManyQueues;
+		nElements = 0;
+	}
+
+	/**
+	 * A fork of other, sharing everything with it (see fork)
+	 */
+	private ArrayQueueSystem(ArrayQueueSystem<E> other) {
+		newQueue = other.newQueue;
+		queues = other.queues.fork();
+		currentQueue = other.currentQueue;
+		nQueues = other.nQueues;
+		nElements = other.nElements;
+		bySize = new IndexSet[other.bySize.length];
+		for (int s = 0; s < bySize.length; s++)
+			if (other.bySize[s] != null)
+				bySize[s] = other.bySize[s].fork();
+		minSize = other.minSize;
+		maxSize = other.maxSize;
+		actives = other.actives.fork();
+		inactives = other.inactives.fork();
+		busy = other.busy.fork();
+		copy = other.copy;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Forking takes time in proportion to the number of occupations of the
+	 * queues, not to the number of queues. Afterwards, the first change to a
+	 * queue in either queue system copies that queue, and the chunks of the
+	 * array and sets that hold it (a few hundred bytes), but nothing else.
+	 * 
+	 * @throws UnsupportedOperationException if the queues are not Iterable
+	 */
+	@Override
+	public ArrayQueueSystem<E> fork(UnaryOperator<E> copy) {
+		if (!(queues.get(0) instanceof Iterable))
+			throw new UnsupportedOperationException("Cannot fork a queue system whose queues are not Iterable");
+		this.copy = copy;
+		return new ArrayQueueSystem<>(this);
+	}
+
+	/**
+	 * The i-th queue, to be changed: if it is shared with a fork, it is first
+	 * replaced by a copy holding a copy of each element.
+	 */
+	@SuppressWarnings("unchecked")
+	private Queue<E> lane(int i) {
+		if (copy == null)
+			return queues.get(i);
+		Queue<E> lane = queues.owned(i);
+		if (lane == null) {
+			lane = newQueue.apply(i);
+			for (E e : (Iterable<E>) queues.get(i))
+				lane.enqueue(copy.apply(e));
+			queues.set(i, lane);
+		}
+		return lane;
+	}
+
+	public void enqueue(E e) throws IllegalQueueRequest {
+		if (!enqueueAt(currentQueue, e))
+			throw new IllegalQueueRequest("Cannot enqueue in a deactivated queue");
+	}
+
+	public void dequeue() throws IllegalQueueRequest {
+		if (!actives.contains(currentQueue))
+			throw new IllegalQueueRequest("Cannot dequeue in a deactivated queue");
+
+		if (!tryDequeueAt(currentQueue))
+			throw new IllegalQueueRequest("Cannot dequeue from an empty queue");
+	}
+
+	public E front() throws IllegalQueueRequest {
+		if (!actives.contains(currentQueue))
+			throw new IllegalQueueRequest("Cannot get front element in a deactivated queue");
+
+		if (queues.get(currentQueue).isEmpty())
+			throw new IllegalQueueRequest("Cannot get front element from an empty queue");
+
+		return queues.get(currentQueue).front();
+	}
+
+	public boolean isEmpty() throws IllegalQueueRequest {
+		if (!actives.contains(currentQueue))
+			throw new IllegalQueueRequest("Cannot check if empty in a deactivated queue");
+
+		return queues.get(currentQueue).isEmpty();
+	}
+
+	public boolean enqueueAt(int i, E e) {
+		if (!actives.contains(i))
+			return false;
+
+		Queue<E> queue = lane(i);
+		queue.enqueue(e);
+		nElements++;
+		if (queue.size() == 1)
+			busy.add(i);
+		occupationChanged(i, queue.size() - 1, queue.size());
+		return true;
+	}
+
+	public boolean tryDequeueAt(int i) {
+		if (!actives.contains(i) || queues.get(i).isEmpty())
+			return false;
+
+		Queue<E> queue = lane(i);
+		queue.dequeue();
+		nElements--;
+		if (queue.isEmpty())
+			busy.remove(i);
+		occupationChanged(i, queue.size() + 1, queue.size());
+		return true;
+	}
+
+	public boolean enqueueAllAt(int i, E[] src, int off, int len) {
+		if (!actives.contains(i))
+			return false;
+		if (len == 0)
+			return true;
+
+		Queue<E> queue = lane(i);
+		boolean wasEmpty = queue.isEmpty();
+		queue.enqueueAll(src, off, len);
+		nElements += len;
+		if (wasEmpty)
+			busy.add(i);
+		occupationChanged(i, queue.size() - len, queue.size());
+		return true;
+	}
+
+	public int drainAt(int i, Consumer<? super E> sink, int max) {
+		if (!actives.contains(i))
+			return 0;
+
+		int n = lane(i).drainTo(sink, max);
+		removed(i, n);
+		return n;
+	}
+
+	public int removeFrontAt(int i, int n) {
+		if (!actives.contains(i))
+			return 0;
+
+		n = Math.min(n, queues.get(i).size());
+		lane(i).removeFront(n);
+		removed(i, n);
+		return n;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void forEachAt(int i, Consumer<? super E> action) {
+		if (!actives.contains(i))
+			return;
+		if (queues.get(i) instanceof Iterable)
+			((Iterable<E>) queues.get(i)).forEach(action);
+		else
+			QueueSystem.super.forEachAt(i, action);
+	}
+
+	/**
+	 * Updates the counts and indexes after n elements left the (active) i-th
+	 * queue at once.
+	 */
+	private void removed(int i, int n) {
+		if (n == 0)
+			return;
+		nElements -= n;
+		int size = queues.get(i).size();
+		if (size == 0)
+			busy.remove(i);
+		occupationChanged(i, size + n, size);
+	}
+
+	public E frontAt(int i) {
+		if (!actives.contains(i) || queues.get(i).isEmpty())
+			return null;
+
+		return queues.get(i).front();
+	}
+
+	@Override
+	public E frontToChangeAt(int i) {
+		if (!actives.contains(i) || queues.get(i).isEmpty())
+			return null;
+
+		return lane(i).front();
+	}
+
+	public int sizeOf(int i) {
+		return queues.get(i).size();
+	}
+
+	public void create() {
+		boolean grown = nQueues == queues.capacity();
+		queues.set(nQueues, newQueue.apply(nQueues));
+		inactives.add(nQueues);
+		nQueues++;
+
+		if (HighwayEvents.LANE_CREATED.isEnabled()) {
+			HighwayEvents.LaneCreated event = new HighwayEvents.LaneCreated();
+			event.lane = nQueues - 1;
+			event.lanes = nQueues;
+			event.grown = grown;
+			event.commit();
+		}
+	}
+
+	public boolean isActivated(int i) {
+		return actives.contains(i);
+	}
+
+	public void activate(int i) {
+		if (actives.contains(i))
+			return;
+		inactives.remove(i);
+		markActive(i);
+
+		if (HighwayEvents.LANE_ACTIVATED.isEnabled()) {
+			HighwayEvents.LaneActivated event = new HighwayEvents.LaneActivated();
+			event.lane = i;
+			event.activeLanes = actives.size();
+			event.commit();
+		}
+	}
+
+	/**
+	 * Makes the (empty, inactive and unindexed) i-th queue active and indexes it.
+	 */
+	private void markActive(int i) {
+		actives.add(i);
+		sized(i, queues.get(i).size());
+	}
+
+	// @requires howManyActiveQueues()>1 [not included in the API, but we need it]
+	public void deactivate(int i) throws IllegalQueueRequest {
+		if (!queues.get(i).isEmpty())
+			throw new IllegalQueueRequest("Trying to deactivate a non empty queue");
+		if (actives.contains(i)) {
+			unsized(i, 0);
+			actives.remove(i);
+			inactives.add(i);
+
+			if (HighwayEvents.LANE_DEACTIVATED.isEnabled()) {
+				HighwayEvents.LaneDeactivated event = new HighwayEvents.LaneDeactivated();
+				event.lane = i;
+				event.activeLanes = actives.size();
+				event.commit();
+			}
+		}
+		// we need to keep active the current queue, so let's choose the first active
+		// one
+		if (actives.size() > 0)
+			currentQueue = firstActive();
+	}
+
+	public void focus(int i) throws IllegalQueueRequest {
+		if (!actives.contains(i))
+			throw new IllegalQueueRequest("Cannot focus into a deactived queue");
+		currentQueue = i;
+	}
+
+	public int current() {
+		return currentQueue;
+	}
+
+	public int howManyActiveQueues() {
+		return actives.size();
+	}
+
+	public int howManyEmptyQueues() {
+		return actives.size() - busy.size();
+	}
+
+	public int nextBusy(int from) {
+		return busy.next(from);
+	}
+
+	public int firstActive() {
+		return actives.next(0);
+	}
+
+	public int lastActive() {
+		return actives.last();
+	}
+
+	public int firstInactive() {
+		return inactives.next(0);
+	}
+
+	public int howManyQueues() {
+		return nQueues;
+	}
+
+	public int focusMin() {
+		if (maxSize < 0)
+			throw new NoSuchElementException();
+		currentQueue = bySize[minSize].next(0);
+		return minSize;
+	}
+
+	public int focusMax() {
+		if (maxSize < 0)
+			throw new NoSuchElementException();
+		currentQueue = bySize[maxSize].next(0);
+		return maxSize;
+	}
+
+	/**
+	 * Moves the (active) i-th queue from the queues with from elements to those
+	 * with to elements, after an enqueue or a dequeue.
+	 */
+	private void occupationChanged(int i, int from, int to) {
+		sized(i, to);
+		unsized(i, from);
+	}
+
+	/**
+	 * Adds the i-th queue to the active queues with size elements.
+	 */
+	private void sized(int i, int size) {
+		if (size >= bySize.length)
+			bySize = Arrays.copyOf(bySize, Math.max(size + 1, bySize.length * 2));
+		if (bySize[size] == null)
+			bySize[size] = new IndexSet(nQueues);
+		bySize[size].add(i);
+		minSize = Math.min(minSize, size);
+		maxSize = Math.max(maxSize, size);
+	}
+
+	/**
+	 * Removes the i-th queue from the active queues with size elements, and
+	 * moves minSize and maxSize to the nearest occupations left, if it was the
+	 * only one with size elements.
+	 */
+	private void unsized(int i, int size) {
+		bySize[size].remove(i);
+		if (bySize[size].size() > 0)
+			return;
+		if (size == minSize)
+			do
+				minSize++;
+			while (minSize <= maxSize && (bySize[minSize] == null || bySize[minSize].size() == 0));
+		if (size == maxSize)
+			do
+				maxSize--;
+			while (maxSize >= minSize && (bySize[maxSize] == null || bySize[maxSize].size() == 0));
+		if (minSize > maxSize) {
+			minSize = Integer.MAX_VALUE;
+			maxSize = -1;
+		}
+	}
+
+	public String toString() {
+		return Renderable.toString(this);
+	}
+
+	@Override
+	public void appendTo(Appendable out) throws IOException {
+		String END_LINE = System.lineSeparator();
+
+		out.append("Total number of elements in queue system ");
+		Renderable.appendInt(out, nElements);
+		out.append(END_LINE).append("Current queue ");
+		Renderable.appendInt(out, currentQueue);
+		out.append(END_LINE);
+		for (int i = 0; i < nQueues; i++) {
+			queues.get(i).appendTo(out);
+			out.append(actives.contains(i) ? "    " : " not").append(" active").append(END_LINE);
+		}
+	}
+
+	@Override
+	public int size() {
+		return nElements;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,437 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+
+/**
+ * A synthetic, reproducible arrival trace, generated as it is read: an
+ * ArrivalSource that can be handed to RunSimulation.simulation directly, or
+ * written to a file in the text or in the binary trace format.
+ *
+ * At each time unit t from 1 to the simulation time, a number of platoons of
+ * vehicles arrive that follows a Poisson distribution with the mean given by
+ * the arrival rate at t; the size of each platoon, the duration of each
+ * vehicle and its toll (in cents) are drawn from the given distributions. The
+ * same seed and parameters always give the same trace, and nothing but the
+ * current arrival is kept in memory, so traces can be of any length.
+ *
+ */
+public class ArrivalGenerator implements ArrivalSource {
+
+	/**
+	 * An arrival rate that may vary over time.
+	 */
+	public interface Rate {
+
+		/**
+		 * The mean number of arrivals at a time unit
+		 *
+		 * @param time The time unit
+		 * @return the mean number of arrivals, not negative
+		 */
+		double at(int time);
+
+		/**
+		 * The same rate at every time unit.
+		 */
+		static Rate constant(double rate) {
+			return time -> rate;
+		}
+
+		/**
+		 * A daily profile with rush hours: the rate is base most of the time and
+		 * rises to peak around each of the given times of the day, along bell curves
+		 * whose standard deviation is width.
+		 *
+		 * @param base   The rate out of rush hours
+		 * @param peak   The rate at the height of each rush hour
+		 * @param day    The length of a day, in time units
+		 * @param width  The width of each rush hour, in time units
+		 * @param peaks  The times of the day when rush hours peak
+		 * @requires day > 0 && width > 0
+		 */
+		static Rate rushHours(double base, double peak, int day, int width, int... peaks) {
+			return time -> {
+				int t = time % day;
+				double bell = 0;
+				for (int p : peaks) {
+					// the distance to the peak, on either side of midnight
+					int d = Math.abs(t - p);
+					d = Math.min(d, day - d);
+					bell = Math.max(bell, Math.exp(-0.5 * d * d / ((double) width * width)));
+				}
+				return base + (peak - base) * bell;
+			};
+		}
+	}
+
+	/**
+	 * A distribution of non negative int values.
+	 */
+	public interface Distribution {
+
+		/**
+		 * Draws a value.
+		 *
+		 * @param random The source of randomness
+		 * @return the value
+		 */
+		int sample(SplittableRandom random);
+
+		/**
+		 * Always the same value.
+		 */
+		static Distribution constant(int value) {
+			return random -> value;
+		}
+
+		/**
+		 * Values from min to max, all with the same probability.
+		 *
+		 * @requires 0 <= min <= max < Integer.MAX_VALUE
+		 */
+		static Distribution uniform(int min, int max) {
+			return random -> random.nextInt(min, max + 1);
+		}
+
+		/**
+		 * Values from an exponential distribution with the given mean, rounded and
+		 * limited to the range from min to max; service times are often modelled
+		 * this way.
+		 *
+		 * @requires 0 <= min <= max && mean > 0
+		 */
+		static Distribution exponential(double mean, int min, int max) {
+			return random -> {
+				double x = -mean * Math.log(1 - random.nextDouble());
+				return (int) Math.max(min, Math.min(max, Math.round(x)));
+			};
+		}
+
+		/**
+		 * One of the given values, each one with the probability given by its
+		 * weight, as in tolls that depend on the class of the vehicle.
+		 *
+		 * @requires values.length == weights.length > 0 && the weights are
+		 *           positive
+		 */
+		static Distribution discrete(int[] values, double[] weights) {
+			double[] cumulative = new double[weights.length];
+			double total = 0;
+			for (int i = 0; i < weights.length; i++)
+				cumulative[i] = total += weights[i];
+			int[] v = values.clone();
+			return random -> {
+				double x = random.nextDouble() * cumulative[cumulative.length - 1];
+				int i = 0;
+				while (i < cumulative.length - 1 && x >= cumulative[i])
+					i++;
+				return v[i];
+			};
+		}
+	}
+
+	private final SplittableRandom random;
+	private final int[] header;
+	private final int simulationTime;
+	private final Rate rate;
+	private final Distribution durations;
+	private final Distribution tollsCents;
+	private final Distribution platoons;
+	private final long maxVehicles;
+
+	private int headerRead;
+	// the time unit being generated and how many vehicles are yet to arrive at it
+	private int time;
+	private long pending;
+	private long generated;
+	// the current arrival, whether it has been generated, and which of its values
+	// is next (0 arrival, 1 duration, 2 toll)
+	private int duration;
+	private int tollCents;
+	private boolean ready;
+	private int field;
+
+	/**
+	 * Constructor of a generator where every vehicle arrives alone.
+	 *
+	 * @param seed                The seed of the generator
+	 * @param minActivatedQueues  Minimum number of active queues
+	 * @param maxVehiclesPerQueue Maximum number of vehicles per queue
+	 * @param simulationTime      Simulation time; there are no arrivals after it
+	 * @param rate                The arrival rate
+	 * @param durations           The distribution of the durations
+	 * @param tollsCents          The distribution of the tolls, in cents
+	 */
+	public ArrivalGenerator(long seed, int minActivatedQueues, int maxVehiclesPerQueue, int simulationTime,
+			Rate rate, Distribution durations, Distribution tollsCents) {
+		this(seed, minActivatedQueues, maxVehiclesPerQueue, simulationTime, rate, durations, tollsCents,
+				Distribution.constant(1), Long.MAX_VALUE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param seed                The seed of the generator
+	 * @param minActivatedQueues  Minimum number of active queues
+	 * @param maxVehiclesPerQueue Maximum number of vehicles per queue
+	 * @param simulationTime      Simulation time; there are no arrivals after it
+	 * @param rate                The arrival rate of platoons
+	 * @param durations           The distribution of the durations, none of
+	 *                            which may be less than 1
+	 * @param tollsCents          The distribution of the tolls, in cents
+	 * @param platoons            The distribution of the number of vehicles in
+	 *                            each platoon, none of which may be less than 1
+	 * @param maxVehicles         The trace ends after this many vehicles, if it
+	 *                            has not ended before
+	 */
+	public ArrivalGenerator(long seed, int minActivatedQueues, int maxVehiclesPerQueue, int simulationTime,
+			Rate rate, Distribution durations, Distribution tollsCents, Distribution platoons, long maxVehicles) {
+		this.random = new SplittableRandom(seed);
+		this.header = new int[] { minActivatedQueues, maxVehiclesPerQueue, simulationTime };
+		this.simulationTime = simulationTime;
+		this.rate = rate;
+		this.durations = durations;
+		this.tollsCents = tollsCents;
+		this.platoons = platoons;
+		this.maxVehicles = maxVehicles;
+		headerRead = 0;
+		time = 0;
+		pending = 0;
+		generated = 0;
+		ready = false;
+		field = 0;
+	}
+
+	/**
+	 * Writes a trace to a file.
+	 *
+	 * @param args The output file ("-" for the standard output), followed by any
+	 *             of the options below, as name=value:
+	 *
+	 *             seed (default 1), min and max (the minimum number of active
+	 *             queues and the maximum number of vehicles per queue, default 3
+	 *             and 5), time (the simulation time, default 10000), rate (the
+	 *             mean number of arrivals per time unit, default 1), peak (the
+	 *             rate at the rush hours, at 480 and 1080 of each day of 1440
+	 *             time units; by default there are none), duration (a range
+	 *             of durations, default 1-20), toll (a range of tolls, default
+	 *             0.50-3.00), platoon (a range of platoon sizes, default 1-1),
+	 *             vehicles (the most vehicles to generate);
+	 *
+	 *             and "-binary", to write the binary trace format (see
+	 *             BinaryTraceWriter) instead of text
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0)
+			usage(null);
+		double base = Double.parseDouble(option(args, "rate", "1"));
+		String peak = option(args, "peak", null);
+		Rate rate = peak == null ? Rate.constant(base)
+				: Rate.rushHours(base, Double.parseDouble(peak), 1440, 60, 480, 1080);
+		int[] duration = range(option(args, "duration", "1-20"), 1);
+		int[] toll = range(option(args, "toll", "0.50-3.00"), 100);
+		int[] platoon = range(option(args, "platoon", "1-1"), 1);
+		// a vehicle takes at least one unit of time, and a platoon has at least
+		// one vehicle
+		if (duration[0] < 1 || duration[0] > duration[1])
+			usage("duration must be a range min-max with 1 <= min <= max");
+		if (platoon[0] < 1 || platoon[0] > platoon[1])
+			usage("platoon must be a range min-max with 1 <= min <= max");
+		ArrivalGenerator in = new ArrivalGenerator(Long.parseLong(option(args, "seed", "1")),
+				Integer.parseInt(option(args, "min", "3")), Integer.parseInt(option(args, "max", "5")),
+				Integer.parseInt(option(args, "time", "10000")), rate,
+				Distribution.uniform(duration[0], duration[1]), Distribution.uniform(toll[0], toll[1]),
+				Distribution.uniform(platoon[0], platoon[1]),
+				Long.parseLong(option(args, "vehicles", String.valueOf(Long.MAX_VALUE))));
+
+		boolean binary = false;
+		for (String arg : args)
+			binary |= arg.equals("-binary");
+		try (OutputStream out = args[0].equals("-") ? System.out : Files.newOutputStream(Paths.get(args[0]))) {
+			if (binary)
+				TraceConverter.convert(in, out);
+			else
+				writeText(in, out);
+		}
+	}
+
+	/**
+	 * Writes a source in the text format of highwayTolls.txt, one value per line
+	 * for the header and one line per arrival, reading the arrivals as
+	 * TraceConverter.convert does.
+	 *
+	 * @param in  The source
+	 * @param out Where to write it
+	 * @return the number of arrivals written
+	 * @throws IOException
+	 * @throws IllegalArgumentException if a toll is not a whole number of cents
+	 */
+	public static long writeText(ArrivalSource in, OutputStream out) throws IOException {
+		Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), 1 << 16);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 3; i++)
+			sb.append(in.nextInt()).append('\n');
+		long n = 0;
+		int duration = 0;
+		double toll = 0;
+		while (in.hasNext()) {
+			int arrival = in.nextInt();
+			if (in.hasNext())
+				duration = in.nextInt();
+			if (in.hasNext())
+				toll = in.nextDouble();
+			int cents = TraceConverter.toCents(toll);
+			sb.append(arrival).append(' ').append(duration).append(' ');
+			if (cents < 0)
+				sb.append('-');
+			cents = Math.abs(cents);
+			sb.append(cents / 100).append('.').append(cents % 100 / 10).append(cents % 10).append('\n');
+			n++;
+			if (sb.length() >= 1 << 16) {
+				w.append(sb);
+				sb.setLength(0);
+			}
+		}
+		w.append(sb);
+		w.flush();
+		return n;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return headerRead < header.length || nextArrival();
+	}
+
+	@Override
+	public int nextInt() {
+		if (headerRead < header.length)
+			return header[headerRead++];
+		if (!nextArrival())
+			throw new NoSuchElementException();
+		if (field == 2 && tollCents % 100 != 0)
+			throw new InputMismatchException(String.valueOf(tollCents / 100.0));
+		int f = advance();
+		return f == 0 ? time : f == 1 ? duration : tollCents / 100;
+	}
+
+	@Override
+	public double nextDouble() {
+		if (headerRead < header.length)
+			return header[headerRead++];
+		if (!nextArrival())
+			throw new NoSuchElementException();
+		int f = advance();
+		return f == 0 ? time : f == 1 ? duration : tollCents / 100.0;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * The number of vehicles generated so far.
+	 */
+	public long generated() {
+		return generated;
+	}
+
+	/**
+	 * Moves to the next value of the current arrival.
+	 *
+	 * @return which value of the arrival was read
+	 */
+	private int advance() {
+		int f = field;
+		field++;
+		if (field == 3) {
+			field = 0;
+			ready = false;
+		}
+		return f;
+	}
+
+	/**
+	 * Makes sure there is a current arrival, generating the next one if needed.
+	 *
+	 * @return false if the trace has ended
+	 */
+	private boolean nextArrival() {
+		if (ready)
+			return true;
+		if (generated == maxVehicles)
+			return false;
+		while (pending == 0) {
+			if (time >= simulationTime)
+				return false;
+			time++;
+			for (int k = poisson(random, rate.at(time)); k > 0; k--)
+				pending += platoons.sample(random);
+		}
+		pending--;
+		generated++;
+		duration = durations.sample(random);
+		tollCents = tollsCents.sample(random);
+		ready = true;
+		return true;
+	}
+
+	/**
+	 * Draws a value from a Poisson distribution with the given mean, as a sum of
+	 * Poisson values of means up to 30, each one drawn by multiplying uniform
+	 * values until their product falls below e^-mean.
+	 */
+	static int poisson(SplittableRandom random, double mean) {
+		int n = 0;
+		while (mean > 0) {
+			double m = Math.min(mean, 30);
+			mean -= m;
+			double limit = Math.exp(-m);
+			double p = random.nextDouble();
+			while (p > limit) {
+				n++;
+				p *= random.nextDouble();
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Prints the usage, after an error message if there is one, and exits.
+	 */
+	private static void usage(String error) {
+		if (error != null)
+			System.err.println("ArrivalGenerator: " + error);
+		System.err.println("usage: java ArrivalGenerator <output> [name=value ...] [-binary]");
+		System.exit(2);
+	}
+
+	/**
+	 * The value of the option with the given name, or the default value.
+	 */
+	private static String option(String[] args, String name, String defaultValue) {
+		for (String arg : args)
+			if (arg.startsWith(name + "="))
+				return arg.substring(name.length() + 1);
+		return defaultValue;
+	}
+
+	/**
+	 * The bounds of a range "min-max" of values, multiplied by scale.
+	 */
+	private static int[] range(String range, int scale) {
+		int dash = range.indexOf('-', 1);
+		String min = dash < 0 ? range : range.substring(0, dash);
+		String max = dash < 0 ? range : range.substring(dash + 1);
+		return new int[] { (int) Math.round(Double.parseDouble(min) * scale),
+				(int) Math.round(Double.parseDouble(max) * scale) };
+	}
+}
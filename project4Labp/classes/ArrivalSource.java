@@ -0,0 +1,90 @@
+import java.io.Closeable;
+import java.util.Scanner;
+
+/**
+ * A source of simulation input: the header values (minimum number of active
+ * queues, maximum number of vehicles per queue, simulation time) followed by
+ * arrival triples "arrival duration toll", read one value at a time in the
+ * same way a Scanner reads the input file.
+ *
+ */
+public interface ArrivalSource extends Closeable {
+
+	/**
+	 * Is there another value to read?
+	 *
+	 * @return true if there is another value
+	 */
+	public boolean hasNext();
+
+	/**
+	 * Reads the next value as an int
+	 *
+	 * @return the value
+	 * @throws java.util.NoSuchElementException    if there are no more values
+	 * @throws java.util.InputMismatchException if the value is not an int
+	 */
+	public int nextInt();
+
+	/**
+	 * Reads the next value as a double
+	 *
+	 * @return the value
+	 * @throws java.util.NoSuchElementException    if there are no more values
+	 * @throws java.util.InputMismatchException if the value is not a number
+	 */
+	public double nextDouble();
+
+	/**
+	 * Where the next value will be read from, to continue reading from there
+	 * later with seek (e.g. after a checkpoint); not all sources support it.
+	 *
+	 * @return the position
+	 * @throws UnsupportedOperationException if this source has no positions
+	 */
+	public default long position() {
+		throw new UnsupportedOperationException(getClass().getName() + " cannot tell its position");
+	}
+
+	/**
+	 * Continues reading from a position that position returned, in this source
+	 * or in another one of the same kind over the same data.
+	 *
+	 * @param position The position
+	 * @throws UnsupportedOperationException if this source has no positions
+	 */
+	public default void seek(long position) {
+		throw new UnsupportedOperationException(getClass().getName() + " cannot seek");
+	}
+
+	/**
+	 * An ArrivalSource that reads from a Scanner
+	 *
+	 * @param sc The Scanner
+	 * @requires sc != null
+	 */
+	public static ArrivalSource of(Scanner sc) {
+		return new ArrivalSource() {
+
+			@Override
+			public boolean hasNext() {
+				return sc.hasNext();
+			}
+
+			@Override
+			public int nextInt() {
+				return sc.nextInt();
+			}
+
+			@Override
+			public double nextDouble() {
+				return sc.nextDouble();
+			}
+
+			@Override
+			public void close() {
+				sc.close();
+			}
+		};
+	}
+}
@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * An input file read once into memory: the header values and the arrivals, in
+ * arrays that are never changed after construction, so that one trace can be
+ * shared by any number of simulations, each running in its own thread and
+ * reading the trace through its own source (see source()).
+ *
+ */
+public final class ArrivalTrace {
+
+	private final int minActivatedQueues;
+	private final int maxVehiclesPerQueue;
+	private final int simulationTime;
+	private final int[] arrivals;
+	private final int[] durations;
+	private final double[] tolls;
+
+	private ArrivalTrace(int minActivatedQueues, int maxVehiclesPerQueue, int simulationTime, int[] arrivals,
+			int[] durations, double[] tolls) {
+		this.minActivatedQueues = minActivatedQueues;
+		this.maxVehiclesPerQueue = maxVehiclesPerQueue;
+		this.simulationTime = simulationTime;
+		this.arrivals = arrivals;
+		this.durations = durations;
+		this.tolls = tolls;
+	}
+
+	/**
+	 * Reads a whole source, as RunSimulation.simulation does: a last incomplete
+	 * triple keeps the duration and toll of the previous arrival.
+	 *
+	 * @param in The source, which is closed at the end
+	 * @return the trace
+	 * @throws IOException if the source cannot be closed
+	 */
+	public static ArrivalTrace read(ArrivalSource in) throws IOException {
+		try (in) {
+			int minActivatedQueues = in.nextInt();
+			int maxVehiclesPerQueue = in.nextInt();
+			int simulationTime = in.nextInt();
+			int[] arrivals = new int[1024];
+			int[] durations = new int[1024];
+			double[] tolls = new double[1024];
+			int n = 0;
+			int duration = 0;
+			double toll = 0;
+			while (in.hasNext()) {
+				int arrival = in.nextInt();
+				if (in.hasNext())
+					duration = in.nextInt();
+				if (in.hasNext())
+					toll = in.nextDouble();
+				if (n == arrivals.length) {
+					arrivals = Arrays.copyOf(arrivals, n * 2);
+					durations = Arrays.copyOf(durations, n * 2);
+					tolls = Arrays.copyOf(tolls, n * 2);
+				}
+				arrivals[n] = arrival;
+				durations[n] = duration;
+				tolls[n] = toll;
+				n++;
+			}
+			return new ArrivalTrace(minActivatedQueues, maxVehiclesPerQueue, simulationTime,
+					Arrays.copyOf(arrivals, n), Arrays.copyOf(durations, n), Arrays.copyOf(tolls, n));
+		}
+	}
+
+	/**
+	 * Minimum number of active queues, from the header
+	 */
+	public int minActivatedQueues() {
+		return minActivatedQueues;
+	}
+
+	/**
+	 * Maximum number of vehicles per queue, from the header
+	 */
+	public int maxVehiclesPerQueue() {
+		return maxVehiclesPerQueue;
+	}
+
+	/**
+	 * Simulation time, from the header
+	 */
+	public int simulationTime() {
+		return simulationTime;
+	}
+
+	/**
+	 * The number of arrivals
+	 */
+	public int size() {
+		return arrivals.length;
+	}
+
+	/**
+	 * A new source that reads this trace from the beginning: the three header
+	 * values and then the arrivals. Each source must be used by one thread at a
+	 * time, but different sources may be used by different threads.
+	 */
+	public ArrivalSource source() {
+		return new ArrivalSource() {
+
+			private final int[] header = { minActivatedQueues, maxVehiclesPerQueue, simulationTime };
+			// how many values have been read
+			private long read = 0;
+
+			@Override
+			public boolean hasNext() {
+				return read < 3 + 3L * arrivals.length;
+			}
+
+			@Override
+			public int nextInt() {
+				double v = nextDouble();
+				if (v != (int) v) {
+					read--;
+					throw new InputMismatchException(String.valueOf(v));
+				}
+				return (int) v;
+			}
+
+			@Override
+			public double nextDouble() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				long k = read++;
+				if (k < 3)
+					return header[(int) k];
+				int i = (int) ((k - 3) / 3);
+				int field = (int) ((k - 3) % 3);
+				return field == 0 ? arrivals[i] : field == 1 ? durations[i] : tolls[i];
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+}
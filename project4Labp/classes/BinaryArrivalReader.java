@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a trace in the binary trace format (see BinaryTraceWriter) as an
+ * ArrivalSource: the three header values and then, for each arrival, its
+ * time, duration and toll, exactly as they would be read from the equivalent
+ * text file. The file is read sequentially in large chunks, one block of
+ * arrivals at a time, and reading allocates nothing.
+ *
+ */
+public class BinaryArrivalReader implements ArrivalSource {
+
+	private final FileChannel channel;
+	private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+	// the header values and how many of them were read
+	private final int[] header = new int[3];
+	private int headerRead;
+	// the current block of arrivals
+	private final int[] arrivals = new int[BinaryTraceWriter.BLOCK_LENGTH];
+	private final int[] durations = new int[BinaryTraceWriter.BLOCK_LENGTH];
+	private final int[] tolls = new int[BinaryTraceWriter.BLOCK_LENGTH];
+	private int blockSize;
+	// the arrival whose values are being read, and which of its values is next
+	// (0 arrival, 1 duration, 2 toll)
+	private int blockPos;
+	private int field;
+	private int lastArrival;
+	private boolean ended;
+
+	/**
+	 * Constructor; reads the header.
+	 *
+	 * @param file The trace file
+	 * @throws IOException if the file cannot be read or is not a binary trace
+	 */
+	public BinaryArrivalReader(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		buf.limit(0);
+		if (readInt() != BinaryTraceWriter.MAGIC)
+			throw new IOException(file + " is not a binary trace");
+		int version = readByte();
+		if (version != BinaryTraceWriter.VERSION)
+			throw new IOException(file + ": unknown binary trace version " + version);
+		for (int i = 0; i < header.length; i++)
+			header[i] = readInt();
+		headerRead = 0;
+		blockSize = 0;
+		blockPos = 0;
+		field = 0;
+		lastArrival = 0;
+		ended = false;
+	}
+
+	/**
+	 * Does the given file start with the magic number of binary traces?
+	 *
+	 * @param file The file
+	 * @throws IOException if the file cannot be read
+	 */
+	public static boolean isBinaryTrace(Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer b = ByteBuffer.allocate(4);
+			while (b.hasRemaining() && ch.read(b) > 0)
+				;
+			return !b.hasRemaining() && b.getInt(0) == BinaryTraceWriter.MAGIC;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return headerRead < header.length || nextBlock();
+	}
+
+	@Override
+	public int nextInt() {
+		if (headerRead < header.length)
+			return header[headerRead++];
+		if (!nextBlock())
+			throw new NoSuchElementException();
+		if (field == 2 && tolls[blockPos] % 100 != 0)
+			throw new InputMismatchException(String.valueOf(tolls[blockPos] / 100.0));
+		int f = field;
+		int k = advance();
+		return f == 0 ? arrivals[k] : f == 1 ? durations[k] : tolls[k] / 100;
+	}
+
+	@Override
+	public double nextDouble() {
+		if (headerRead < header.length)
+			return header[headerRead++];
+		if (!nextBlock())
+			throw new NoSuchElementException();
+		int f = field;
+		int k = advance();
+		return f == 0 ? arrivals[k] : f == 1 ? durations[k] : tolls[k] / 100.0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Moves to the next value of the current block.
+	 *
+	 * @return the position in the block of the arrival whose value was read
+	 */
+	private int advance() {
+		int k = blockPos;
+		field++;
+		if (field == 3) {
+			field = 0;
+			blockPos++;
+		}
+		return k;
+	}
+
+	/**
+	 * Makes sure there is a value to read in the current block, reading the next
+	 * block if needed.
+	 *
+	 * @return false if the trace has ended
+	 */
+	private boolean nextBlock() {
+		if (blockPos < blockSize)
+			return true;
+		if (ended)
+			return false;
+		try {
+			int n = (int) readVarint();
+			if (n == 0) {
+				ended = true;
+				return false;
+			}
+			for (int k = 0; k < n; k++) {
+				long z = readVarint();
+				lastArrival += (int) (z >>> 1) ^ -(int) (z & 1);
+				arrivals[k] = lastArrival;
+			}
+			for (int k = 0; k < n; k++)
+				durations[k] = (int) readVarint();
+			for (int k = 0; k < n; k++) {
+				long z = readVarint();
+				tolls[k] = (int) (z >>> 1) ^ -(int) (z & 1);
+			}
+			blockSize = n;
+			blockPos = 0;
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private long readVarint() throws IOException {
+		long v = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = readByte();
+			v |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return v;
+	}
+
+	private int readInt() throws IOException {
+		return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+	}
+
+	private int readByte() throws IOException {
+		if (!buf.hasRemaining()) {
+			buf.clear();
+			int r;
+			do
+				r = channel.read(buf);
+			while (r == 0);
+			buf.flip();
+			if (r < 0)
+				throw new IOException("truncated binary trace");
+		}
+		return buf.get() & 0xFF;
+	}
+}
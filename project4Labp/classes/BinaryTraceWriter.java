@@ -0,0 +1,139 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes an arrival trace in the binary trace format, a compact replacement
+ * of the text format of highwayTolls.txt that needs no parsing:
+ *
+ * - header: the magic number "HWYT", a version byte, and then the minimum
+ * number of active queues, the maximum number of vehicles per queue and the
+ * simulation time, as big-endian 32 bit ints;
+ *
+ * - blocks of up to BLOCK_LENGTH arrivals: the number n of arrivals in the
+ * block as a varint, followed by n arrival times (each one as the zigzag varint
+ * of its difference to the previous arrival), n durations (varints) and n tolls
+ * in integer cents (zigzag varints);
+ *
+ * - an empty block (n = 0) marks the end of the trace.
+ *
+ * Varints are written 7 bits at a time, least significant first, with the
+ * high bit set on every byte but the last. See BinaryArrivalReader.
+ *
+ */
+public class BinaryTraceWriter implements Closeable {
+
+	/**
+	 * The first four bytes of a binary trace: "HWYT".
+	 */
+	public static final int MAGIC = 0x48575954;
+
+	/**
+	 * The version of the format written by this class.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * The maximum number of arrivals in a block.
+	 */
+	public static final int BLOCK_LENGTH = 4096;
+
+	private final OutputStream out;
+	// the arrivals of the block being filled
+	private final int[] arrivals = new int[BLOCK_LENGTH];
+	private final int[] durations = new int[BLOCK_LENGTH];
+	private final int[] tolls = new int[BLOCK_LENGTH];
+	private int n;
+	// the arrival time of the last arrival written
+	private int lastArrival;
+
+	/**
+	 * Constructor; writes the header.
+	 *
+	 * @param out                 Where to write the trace
+	 * @param minActivatedQueues  Minimum number of active queues
+	 * @param maxVehiclesPerQueue Maximum number of vehicles per queue
+	 * @param simulationTime      Simulation time
+	 * @throws IOException
+	 */
+	public BinaryTraceWriter(OutputStream out, int minActivatedQueues, int maxVehiclesPerQueue,
+			int simulationTime) throws IOException {
+		this.out = new BufferedOutputStream(out, 1 << 16);
+		writeInt(MAGIC);
+		this.out.write(VERSION);
+		writeInt(minActivatedQueues);
+		writeInt(maxVehiclesPerQueue);
+		writeInt(simulationTime);
+		n = 0;
+		lastArrival = 0;
+	}
+
+	/**
+	 * Adds an arrival to the trace.
+	 *
+	 * @param arrival   The arrival time
+	 * @param duration  The time needed to process the vehicle
+	 * @param tollCents The toll, in cents
+	 * @throws IOException
+	 */
+	public void add(int arrival, int duration, int tollCents) throws IOException {
+		arrivals[n] = arrival;
+		durations[n] = duration;
+		tolls[n] = tollCents;
+		n++;
+		if (n == BLOCK_LENGTH)
+			writeBlock();
+	}
+
+	/**
+	 * Writes the pending arrivals and the end of the trace, and closes the
+	 * underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (n > 0)
+			writeBlock();
+		writeVarint(0);
+		out.close();
+	}
+
+	/**
+	 * Writes the block being filled and starts a new one.
+	 */
+	private void writeBlock() throws IOException {
+		writeVarint(n);
+		for (int k = 0; k < n; k++) {
+			writeVarint(zigzag(arrivals[k] - lastArrival));
+			lastArrival = arrivals[k];
+		}
+		for (int k = 0; k < n; k++)
+			writeVarint(durations[k] & 0xFFFFFFFFL);
+		for (int k = 0; k < n; k++)
+			writeVarint(zigzag(tolls[k]));
+		n = 0;
+	}
+
+	/**
+	 * Maps signed ints to unsigned ones so that small magnitudes stay small: 0,
+	 * -1, 1, -2, 2, ... become 0, 1, 2, 3, 4, ...
+	 */
+	static long zigzag(int v) {
+		return ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL;
+	}
+
+	private void writeVarint(long v) throws IOException {
+		while (v >= 0x80) {
+			out.write((int) (v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.write((int) v);
+	}
+
+	private void writeInt(int v) throws IOException {
+		out.write(v >>> 24);
+		out.write(v >>> 16);
+		out.write(v >>> 8);
+		out.write(v);
+	}
+}
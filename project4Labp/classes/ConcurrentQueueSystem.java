@@ -0,0 +1,488 @@
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A queue system that can be used by several threads at once, e.g. by one
+ * thread per roadside feed adding vehicles while another one serves them.
+ *
+ * Each queue has its own lock, which guards its elements and its active flag,
+ * so that operations on different queues do not block each other. The array of
+ * queues is replaced, never changed, when a queue is created, and is read
+ * without locking. The current queue is kept per thread: focus, focusMin and
+ * focusMax only move the current queue of the calling thread, and enqueue,
+ * dequeue, front and isEmpty act on it.
+ *
+ * Single queue operations (enqueueAt, tryDequeueAt, frontAt, activate,
+ * deactivate...) are atomic. enqueueLeastLoaded reads the queues without
+ * locking them, and adds the element to one that, when it is added, is active
+ * and no more occupied than when it was read, and so than any other active
+ * queue read in the same pass. Operations that look at all the queues (size,
+ * howManyEmptyQueues, firstActive, focusMin, toString...) read each queue in
+ * turn and, while other threads change the queues, may see a state that never
+ * existed as a whole.
+ *
+ * @param <E> The type of the elements in the queues.
+ *
+ */
+public class ConcurrentQueueSystem<E> implements QueueSystem<E> {
+
+	/**
+	 * How many times enqueueLeastLoaded chooses a queue without locking them all
+	 * before it gives up and locks them all; a choice is only spoiled by another
+	 * thread filling or deactivating the chosen queue.
+	 */
+	private static final int OPTIMISTIC_ATTEMPTS = 8;
+
+	/**
+	 * A queue, with its lock and its active flag.
+	 */
+	private static final class Lane<E> {
+		final ReentrantLock lock = new ReentrantLock();
+		final ArrayQueue<E> queue = new ArrayQueue<>();
+		// written with lock held, read without it
+		volatile boolean active;
+		volatile int size;
+	}
+
+	// replaced, with one more queue, when a queue is created
+	private volatile Lane<E>[] lanes;
+	// guards the creation of queues
+	private final Object creation = new Object();
+
+	// sums of per thread counters, so that threads adding to different queues do
+	// not write the same word
+	private final LongAdder nElements = new LongAdder();
+	private final LongAdder nActive = new LongAdder();
+	private final LongAdder nBusy = new LongAdder();
+	// how many times enqueueLeastLoaded locked all the queues
+	private final LongAdder lockedChoices = new LongAdder();
+
+	// the current queue of each thread
+	private final ThreadLocal<int[]> currentQueue = ThreadLocal.withInitial(() -> new int[1]);
+
+	/**
+	 * Constructor
+	 *
+	 * @requires howManyQueues > 0
+	 * @param howManyQueues the initial number of active queues
+	 */
+	@SuppressWarnings("unchecked")
+	public ConcurrentQueueSystem(int howManyQueues) {
+		Lane<E>[] initial = (Lane<E>[]) Array.newInstance(Lane.class, howManyQueues);
+		for (int i = 0; i < howManyQueues; i++) {
+			initial[i] = new Lane<>();
+			initial[i].active = true;
+		}
+		nActive.add(howManyQueues);
+		lanes = initial;
+	}
+
+	/**
+	 * Adds an element to the least occupied active queue (the one with the least
+	 * index, among equals), without using or moving the current queue.
+	 *
+	 * The queue is chosen without locking, and only the chosen queue is locked
+	 * and checked again: the choice is kept if it is still active and not more
+	 * occupied than when it was read, whatever happened to the other queues
+	 * meanwhile. After a few choices spoiled by other threads, all the queues
+	 * are locked, in increasing index order, to choose.
+	 *
+	 * @param e The element
+	 * @return the index of the queue where the element was added, or -1 if there
+	 *         are no active queues
+	 */
+	public int enqueueLeastLoaded(E e) {
+		for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+			Lane<E>[] ls = lanes;
+			long least = leastLoaded(ls);
+			if (least < 0)
+				return -1;
+			int min = (int) least;
+			int seen = (int) (least >>> 32);
+			Lane<E> lane = ls[min];
+			lane.lock.lock();
+			try {
+				// the chosen queue did not grow since it was read, and nothing else
+				// can change it now
+				if (lane.active && lane.size <= seen) {
+					add(lane, e);
+					return min;
+				}
+			} finally {
+				lane.lock.unlock();
+			}
+		}
+		return enqueueLeastLoadedLocked(e);
+	}
+
+	/**
+	 * enqueueLeastLoaded, with all the queues locked.
+	 */
+	private int enqueueLeastLoadedLocked(E e) {
+		lockedChoices.increment();
+		synchronized (creation) {
+			Lane<E>[] ls = lanes;
+			for (Lane<E> lane : ls)
+				lane.lock.lock();
+			try {
+				int min = (int) leastLoaded(ls);
+				if (min >= 0)
+					add(ls[min], e);
+				return min;
+			} finally {
+				for (Lane<E> lane : ls)
+					lane.lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * The least occupied active queue in ls (the least index among equals): its
+	 * index in the low 32 bits, and its size, as read, in the high ones; -1 if
+	 * there is none. The scan stops at the first empty active queue.
+	 */
+	private static long leastLoaded(Lane<?>[] ls) {
+		int min = -1;
+		int minSize = Integer.MAX_VALUE;
+		for (int i = 0; i < ls.length && minSize > 0; i++) {
+			Lane<?> lane = ls[i];
+			int size = lane.size;
+			if (size < minSize && lane.active) {
+				min = i;
+				minSize = size;
+			}
+		}
+		return min < 0 ? -1 : (long) minSize << 32 | min;
+	}
+
+	/**
+	 * How many times enqueueLeastLoaded had to lock all the queues to choose
+	 * one.
+	 */
+	long lockedChoices() {
+		return lockedChoices.sum();
+	}
+
+	/**
+	 * Adds an element to an active lane.
+	 *
+	 * @requires lane.lock.isHeldByCurrentThread() && lane.active
+	 */
+	private void add(Lane<E> lane, E e) {
+		lane.queue.enqueue(e);
+		lane.size++;
+		if (lane.size == 1)
+			nBusy.increment();
+		nElements.increment();
+	}
+
+	/**
+	 * Removes the front element of a non empty lane.
+	 *
+	 * @requires lane.lock.isHeldByCurrentThread() && lane.size > 0
+	 */
+	private void remove(Lane<E> lane) {
+		lane.queue.dequeue();
+		lane.size--;
+		if (lane.size == 0)
+			nBusy.decrement();
+		nElements.decrement();
+	}
+
+	public int current() {
+		return currentQueue.get()[0];
+	}
+
+	public void enqueue(E e) throws IllegalQueueRequest {
+		if (!enqueueAt(current(), e))
+			throw new IllegalQueueRequest("Cannot enqueue in a deactivated queue");
+	}
+
+	public void dequeue() throws IllegalQueueRequest {
+		Lane<E> lane = lanes[current()];
+		lane.lock.lock();
+		try {
+			if (!lane.active)
+				throw new IllegalQueueRequest("Cannot dequeue from a deactivated queue");
+			if (lane.size == 0)
+				throw new IllegalQueueRequest("Cannot dequeue from an empty queue");
+			remove(lane);
+		} finally {
+			lane.lock.unlock();
+		}
+	}
+
+	public E front() throws IllegalQueueRequest {
+		Lane<E> lane = lanes[current()];
+		lane.lock.lock();
+		try {
+			if (!lane.active)
+				throw new IllegalQueueRequest("Cannot get front from a deactivated queue");
+			if (lane.size == 0)
+				throw new IllegalQueueRequest("Cannot get front from an empty queue");
+			return lane.queue.front();
+		} finally {
+			lane.lock.unlock();
+		}
+	}
+
+	public boolean isEmpty() throws IllegalQueueRequest {
+		Lane<E> lane = lanes[current()];
+		if (!lane.active)
+			throw new IllegalQueueRequest("Cannot check if empty in a deactivated queue");
+		return lane.size == 0;
+	}
+
+	public boolean enqueueAt(int i, E e) {
+		Lane<E> lane = lanes[i];
+		lane.lock.lock();
+		try {
+			if (!lane.active)
+				return false;
+			add(lane, e);
+			return true;
+		} finally {
+			lane.lock.unlock();
+		}
+	}
+
+	public boolean tryDequeueAt(int i) {
+		Lane<E> lane = lanes[i];
+		lane.lock.lock();
+		try {
+			if (!lane.active || lane.size == 0)
+				return false;
+			remove(lane);
+			return true;
+		} finally {
+			lane.lock.unlock();
+		}
+	}
+
+	/**
+	 * Adds the elements atomically: no other thread sees the queue with only
+	 * some of them.
+	 */
+	public boolean enqueueAllAt(int i, E[] src, int off, int len) {
+		Lane<E> lane = lanes[i];
+		lane.lock.lock();
+		try {
+			if (!lane.active)
+				return false;
+			if (len == 0)
+				return true;
+			lane.queue.enqueueAll(src, off, len);
+			if (lane.size == 0)
+				nBusy.increment();
+			lane.size += len;
+			nElements.add(len);
+			return true;
+		} finally {
+			lane.lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the elements atomically; the consumer runs with the lock of the
+	 * queue held, and must not use this queue system.
+	 */
+	public int drainAt(int i, Consumer<? super E> sink, int max) {
+		Lane<E> lane = lanes[i];
+		lane.lock.lock();
+		try {
+			if (!lane.active)
+				return 0;
+			int n = lane.queue.drainTo(sink, max);
+			if (n > 0) {
+				lane.size -= n;
+				if (lane.size == 0)
+					nBusy.decrement();
+				nElements.add(-n);
+			}
+			return n;
+		} finally {
+			lane.lock.unlock();
+		}
+	}
+
+	public int removeFrontAt(int i, int n) {
+		return drainAt(i, e -> {
+		}, n);
+	}
+
+	public void forEachAt(int i, Consumer<? super E> action) {
+		Lane<E> lane = lanes[i];
+		lane.lock.lock();
+		try {
+			if (lane.active)
+				lane.queue.forEach(action);
+		} finally {
+			lane.lock.unlock();
+		}
+	}
+
+	public E frontAt(int i) {
+		Lane<E> lane = lanes[i];
+		lane.lock.lock();
+		try {
+			if (!lane.active || lane.size == 0)
+				return null;
+			return lane.queue.front();
+		} finally {
+			lane.lock.unlock();
+		}
+	}
+
+	public int sizeOf(int i) {
+		return lanes[i].size;
+	}
+
+	public void create() {
+		synchronized (creation) {
+			Lane<E>[] ls = lanes;
+			Lane<E>[] more = Arrays.copyOf(ls, ls.length + 1);
+			more[ls.length] = new Lane<>();
+			lanes = more;
+		}
+	}
+
+	public boolean isActivated(int i) {
+		return lanes[i].active;
+	}
+
+	public void activate(int i) {
+		Lane<E> lane = lanes[i];
+		lane.lock.lock();
+		try {
+			if (lane.active)
+				return;
+			lane.active = true;
+			nActive.increment();
+		} finally {
+			lane.lock.unlock();
+		}
+	}
+
+	public void deactivate(int i) throws IllegalQueueRequest {
+		Lane<E> lane = lanes[i];
+		lane.lock.lock();
+		try {
+			if (lane.size != 0)
+				throw new IllegalQueueRequest("Trying to deactivate a non empty queue");
+			if (lane.active) {
+				lane.active = false;
+				nActive.decrement();
+			}
+		} finally {
+			lane.lock.unlock();
+		}
+		// the current queue of this thread must be active, so let's choose the
+		// first active one
+		int first = firstActive();
+		if (first >= 0)
+			currentQueue.get()[0] = first;
+	}
+
+	public void focus(int i) throws IllegalQueueRequest {
+		if (!lanes[i].active)
+			throw new IllegalQueueRequest("Cannot focus into a deactived queue");
+		currentQueue.get()[0] = i;
+	}
+
+	public int howManyActiveQueues() {
+		return nActive.intValue();
+	}
+
+	public int howManyEmptyQueues() {
+		return (int) (nActive.sum() - nBusy.sum());
+	}
+
+	public int nextBusy(int from) {
+		Lane<E>[] ls = lanes;
+		for (int i = from; i < ls.length; i++)
+			if (ls[i].size > 0)
+				return i;
+		return -1;
+	}
+
+	public int firstActive() {
+		Lane<E>[] ls = lanes;
+		for (int i = 0; i < ls.length; i++)
+			if (ls[i].active)
+				return i;
+		return -1;
+	}
+
+	public int lastActive() {
+		Lane<E>[] ls = lanes;
+		for (int i = ls.length - 1; i >= 0; i--)
+			if (ls[i].active)
+				return i;
+		return -1;
+	}
+
+	public int firstInactive() {
+		Lane<E>[] ls = lanes;
+		for (int i = 0; i < ls.length; i++)
+			if (!ls[i].active)
+				return i;
+		return -1;
+	}
+
+	public int howManyQueues() {
+		return lanes.length;
+	}
+
+	public int focusMin() {
+		Lane<E>[] ls = lanes;
+		int min = (int) leastLoaded(ls);
+		currentQueue.get()[0] = min;
+		return ls[min].size;
+	}
+
+	public int focusMax() {
+		Lane<E>[] ls = lanes;
+		int max = -1;
+		int maxSize = -1;
+		for (int i = 0; i < ls.length; i++)
+			if (ls[i].active && ls[i].size > maxSize) {
+				max = i;
+				maxSize = ls[i].size;
+			}
+		currentQueue.get()[0] = max;
+		return ls[max].size;
+	}
+
+	public String toString() {
+		return Renderable.toString(this);
+	}
+
+	@Override
+	public void appendTo(Appendable out) throws IOException {
+		String END_LINE = System.lineSeparator();
+
+		out.append("Total number of elements in queue system ");
+		Renderable.appendInt(out, nElements.intValue());
+		out.append(END_LINE).append("Current queue ");
+		Renderable.appendInt(out, current());
+		out.append(END_LINE);
+		for (Lane<E> lane : lanes) {
+			lane.lock.lock();
+			try {
+				lane.queue.appendTo(out);
+				out.append(lane.active ? "    " : " not").append(" active").append(END_LINE);
+			} finally {
+				lane.lock.unlock();
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return nElements.intValue();
+	}
+}
@@ -1,227 +1,1149 @@
-/**
- * Instancias desta classe representam vias rapidas onde veiculos que
- * chegam a porticos aguardam a sua vez para o pagamento de respetivas
- * portagens, avancando uma vez saldada a sua divida.
- * 
- * A cada momento podemos determinar o tempo decorrido, tempo de espera
- * dos veiculos, e numero de veiculos processados.
- * 
- * @author
- *
- */
-public class Highway {
-
-	// Numero minimo de filas (porticos de portagens) que devem estar ativas
-    private int minActivatedQueues;
-    // Numero maximo de veiculos por fila
-    private int maxVehiclesPerQueue;
-    // Sequencia de filas
-    private QueueSystem<Vehicle> q;
-    // Unidades de tempo decorridas
-    private int elapsedTime;
-    // Tempo total de espera
-    private int totalWaitTime;
-    // Numero de veiculos cujo pagamento ja foi processado
-    private int numVehiclesProcessed;
-    // Valor total de portagens cobradas
-    private double tollsCollected;
-
-    
-    /**
-     * Construtor
-     * 
-     * @param minActivatedQueues   Numero minimo de filas que deve estar ativas
-     * @param maxVehiclesPerQueue  Numero maximo de veiculos por fila
-     * 
-     * @requires minActivatedQueues > 0 && maxVehiclesPerQueue > 0
-     */
-    public Highway(int minActivatedQueues, int maxVehiclesPerQueue) {
-
-        this.minActivatedQueues = minActivatedQueues;
-        this.maxVehiclesPerQueue = maxVehiclesPerQueue;
-        elapsedTime = 0;
-        totalWaitTime = 0;
-        numVehiclesProcessed = 0;
-        q = new ArrayQueueSystem<>(minActivatedQueues);
-        tollsCollected = 0.0;
-    }
-
-	/**
-     * Numero total de veiculos nas filas desta via rapida
-	 * (inclui aqueles cujo processamento ainda se encontra
-	 * a decorrer)
-	 */
-	public int totalNrVehicles() {
-		return q.size();
-	}
-
-	/**
-     * Numero de filas ativas nesta via rapida
-	 */
-	public int nrActiveQueues() {
-		return q.howManyActiveQueues();
-	}
-
-	/**
-     * Numero medio de veiculos por fila ativa neste instante
-	 */
-	public double averageVehiclesPerQueue() {
-		return (double) totalNrVehicles()/nrActiveQueues();
-	}
-
-	/**
-     * Tempo medio de espera de veiculos na fila
-	 */
-	public double averageWaitingTime() {
-		return (double) totalWaitTime/numVehiclesProcessed;
-	}
-
-	/**
-	 * Valor total de portagens cobradas
-	 */
-	public double totalTolls() {
-		return tollsCollected;
-    }
-	
-	
-    /**
-     * Valor medio de portagens cobradas por veiculo processado
-     */
-	public double averageTolls() {
-		return tollsCollected/numVehiclesProcessed;
-    }
-
-	/**
-     * Adiciona um veiculo a uma fila ativa: aquela com o menor numero de veiculos
-     * em espera. Se todas as filas estiverem na sua capacidade maxima,
-     * se existir uma fila inativa esta torna-se ativa, caso contrario
-     * e criada uma nova fila.
-	 * 
-	 * @param v O veiculo que se quer juntar a uma fila
-	 * @requires v != null
-	 * @throws IllegalQueueRequest
-	 */
-	public void addVehicle(Vehicle v) throws IllegalQueueRequest {
-		if (q.focusMin() >= maxVehiclesPerQueue) {
-			if (q.howManyActiveQueues() < q.howManyQueues()) {
-				int newActiveIndex = activateQueue();
-				q.focus(newActiveIndex);
-				q.enqueue(v);
-			}
-			else {
-				q.create();
-				q.activate(q.howManyQueues()-1);
-				q.focus(q.howManyQueues()-1);
-				q.enqueue(v);
-			}
-		}
-		else {
-			q.focusMin();
-			q.enqueue(v);
-		}
-	}
-
-	/**
-     * Processa uma unidade de tempo em todas as filas ativas:
-     * - atualiza as unidades de tempo decorridas;
-     * - atualiza o estado das filas;
-     * - decrementa uma unidade de tempo ao tempo de espera de cada veiculo
-     * que esta a ser processado (aqueles na primeira posicao numa fila);
-     * - se o tempo de espera de um veiculo ficar a zero, ele abandona a fila e
-     * atualizam-se os valores de totalWaitTime, numVehiclesProcessed
-	 * 
-	 * @throws IllegalQueueRequest
-	 */
-	public void updateActiveQueues() throws IllegalQueueRequest {
-		elapsedTime++;
-		int index = 0;
-
-		while (index < q.howManyQueues()) {
-			if (q.isActivated(index)) {
-				q.focus(index);
-				if (!q.isEmpty()) {
-					q.front().decreaseOneTimeUnit();
-					if (q.front().timeLeft() == 0) {
-						totalWaitTime += elapsedTime - q.front().arrival() - q.front().duration() + 1;
-						tollsCollected += q.front().toll();
-						numVehiclesProcessed++;
-						q.dequeue();
-					}
-				}
-			}
-			index++;
-		}
-	}
-
-
-	/**
-     * Havendo mais do que uma fila vazia, desativa a fila vazia de menor indice,
-     * conquanto o numero minimo de filas ativas seja respeitado
-	 * 
-	 * @throws IllegalQueueRequest
-	 */
-	public void updateNumberActiveQueues() throws IllegalQueueRequest {
-		int EmptyQueues = 0;
-		
-		for (int i = 0; i < q.howManyQueues(); i++) {
-			if (q.isActivated(i)) {
-				q.focus(i);
-				if (q.isEmpty())
-					EmptyQueues++;
-			}
-		}
-		if (EmptyQueues > 1 && minActivatedQueues < q.howManyActiveQueues()) {
-			q.focusMin();
-			
-			if (q.isEmpty()) 
-				q.deactivate(q.current());
-		}
-	}
-
-	/**
-     * Representacao textual da via rapida
-	 */
-	public String toString() {
-        String END_LINE = System.lineSeparator();
-        StringBuilder sb = new StringBuilder();
-        sb.append("Minimum number of activated queues " + minActivatedQueues + END_LINE);
-        sb.append("Maximum number of vehicles per queue " + maxVehiclesPerQueue + END_LINE);
-        sb.append(q.toString());
-        sb.append("Elapsed time " + elapsedTime + END_LINE);
-        sb.append("Total waiting time " + totalWaitTime + END_LINE);
-        sb.append("Number of vehicles processed " + numVehiclesProcessed + END_LINE);
-        sb.append(String.format("Total tolls collected %.2f", tollsCollected) + END_LINE);
-        return sb.toString();
-    }
-
-
-	/**
-     * Imprime uma mensagem no standard output; usar apenas durante o
-     * desenvolvimento de codigo
-	 * 
-	 * @param msg a mensagem a imprimir
-	 */
-	private void log(String msg) {
-		System.out.println(msg);
-	}
-	
-	/**
-	 * Ativa a primeira Queue que estava desativada e devolve o index dessa Queue
-	 * 
-	 * @return index da Queue ativada
-	 */
-	private int activateQueue() {
-		int currentActiveQueues = q.howManyActiveQueues();
-		int index = 0;
-		int result = 0;
-		
-		while (currentActiveQueues == q.howManyActiveQueues()) {
-			if (!q.isActivated(index)) {
-				q.activate(index);
-				result = index;
-			}
-			index++;
-		}
-		return result;
-	}
-}
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Instancias desta classe representam vias rapidas onde veiculos que
+ * chegam a porticos aguardam a sua vez para o pagamento de respetivas
+ * portagens, avancando uma vez saldada a sua divida.
+ * 
+ * A cada momento podemos determinar o tempo decorrido, tempo de espera
+ * dos veiculos, e numero de veiculos processados.
+ * 
+ * @author
+ *
+ */
+public class Highway implements SimulatedHighway, AutoCloseable {
+
+	// Numero minimo de filas (porticos de portagens) que devem estar ativas
+    private int minActivatedQueues;
+    // Numero maximo de veiculos por fila
+    private int maxVehiclesPerQueue;
+    // Sequencia de filas
+    private QueueSystem<Vehicle> q;
+    // Unidades de tempo decorridas
+    private int elapsedTime;
+    // Tempo total de espera
+    private long totalWaitTime;
+    // Numero de veiculos cujo pagamento ja foi processado
+    private long numVehiclesProcessed;
+    // Valor total de portagens cobradas
+    private double tollsCollected;
+    // Maior numero de filas ativas em simultaneo
+    private int peakActiveQueues;
+    // Histogramas dos tempos de espera e dos tempos de processamento dos
+    // veiculos que ja sairam: de toda a via rapida e de cada fila (null ate
+    // sair um veiculo da fila)
+    private LogHistogram waitTimes = new LogHistogram();
+    private LogHistogram serviceTimes = new LogHistogram();
+    private LaneArray<LogHistogram> laneWaitTimes = new LaneArray<>(0);
+    private LaneArray<LogHistogram> laneServiceTimes = new LaneArray<>(0);
+    // Metricas lidas por JMX (null se a recolha nao estiver ativa)
+    private HighwayMetrics metrics;
+    // Modo orientado a eventos: o relogio salta diretamente para a proxima partida
+    private final boolean eventDriven;
+    // No modo orientado a eventos, as filas com veiculo na primeira posicao,
+    // ordenadas pelo instante em que esse veiculo termina (e, em caso de
+    // empate, pelo indice da fila)
+    private MinTree departures;
+    // Modo paralelo: as filas sao repartidas por varias threads no
+    // processamento de cada unidade de tempo (null se nao for usado)
+    private ForkJoinPool pool;
+    private List<Service> services;
+    // Em addVehicles: a fila de cada veiculo do lote, as filas com lugares
+    // livres (ocupacao << 32 | indice), as que recebem veiculos ao nivel
+    // atual, quantos veiculos recebe cada fila e os veiculos agrupados por fila
+    private int[] batchLanes = new int[0];
+    private long[] batchFree = new long[0];
+    private IndexSet batchFilling = new IndexSet(0);
+    private int[] batchCount = new int[0];
+    private int[] batchTouched = new int[0];
+    private Vehicle[] batchGrouped = new Vehicle[0];
+    // Em addArrivals: os veiculos criados para o lote
+    private Vehicle[] arriving = new Vehicle[0];
+    // Reutilizacao de veiculos: os que ja sairam das filas, prontos a ser
+    // devolvidos por newVehicle (null se a reutilizacao nao estiver ativa)
+    private Vehicle[] spareVehicles;
+    private int nSpareVehicles;
+
+    // Abaixo deste numero de veiculos, addVehicles adiciona-os um a um, o que
+    // fica mais barato do que percorrer as filas
+    private static final int BATCH_THRESHOLD = 8;
+
+    
+    /**
+     * Construtor
+     * 
+     * @param minActivatedQueues   Numero minimo de filas que deve estar ativas
+     * @param maxVehiclesPerQueue  Numero maximo de veiculos por fila
+     * 
+     * @requires minActivatedQueues > 0 && maxVehiclesPerQueue > 0
+     */
+    public Highway(int minActivatedQueues, int maxVehiclesPerQueue) {
+        this(minActivatedQueues, maxVehiclesPerQueue, false);
+    }
+
+    /**
+     * Construtor
+     * 
+     * @param minActivatedQueues   Numero minimo de filas que deve estar ativas
+     * @param maxVehiclesPerQueue  Numero maximo de veiculos por fila
+     * @param eventDriven          Se true, cada veiculo na primeira posicao de uma
+     *                             fila recebe o instante em que termina e o tempo
+     *                             avanca de partida em partida (ver advanceTo);
+     *                             os resultados sao os mesmos do modo por unidade
+     *                             de tempo
+     * 
+     * @requires minActivatedQueues > 0 && maxVehiclesPerQueue > 0
+     */
+    public Highway(int minActivatedQueues, int maxVehiclesPerQueue, boolean eventDriven) {
+        this(minActivatedQueues, maxVehiclesPerQueue, eventDriven,
+                new ArrayQueueSystem<>(minActivatedQueues));
+    }
+
+    /**
+     * Construtor
+     * 
+     * @param minActivatedQueues   Numero minimo de filas que deve estar ativas
+     * @param maxVehiclesPerQueue  Numero maximo de veiculos por fila
+     * @param eventDriven          Se true, o tempo avanca de partida em partida
+     * @param q                    A sequencia de filas a usar (por exemplo, uma
+     *                             ArenaQueueSystem)
+     * 
+     * @requires minActivatedQueues > 0 && maxVehiclesPerQueue > 0
+     * @requires q.howManyQueues() == minActivatedQueues && q.size() == 0 &&
+     *           todas as filas de q estao ativas
+     */
+    public Highway(int minActivatedQueues, int maxVehiclesPerQueue, boolean eventDriven,
+            QueueSystem<Vehicle> q) {
+        this(minActivatedQueues, maxVehiclesPerQueue, eventDriven, q, 1);
+    }
+
+    /**
+     * Construtor
+     * 
+     * @param minActivatedQueues   Numero minimo de filas que deve estar ativas
+     * @param maxVehiclesPerQueue  Numero maximo de veiculos por fila
+     * @param eventDriven          Se true, o tempo avanca de partida em partida
+     * @param q                    A sequencia de filas a usar
+     * @param workers              Numero de threads pelas quais se repartem as
+     *                             filas em cada unidade de tempo (ver
+     *                             updateActiveQueues); com 1, ou no modo
+     *                             orientado a eventos, tudo corre na thread que
+     *                             invoca os metodos. Os resultados sao sempre
+     *                             os mesmos. Com mais do que 1, as threads
+     *                             terminam com close
+     * 
+     * @requires minActivatedQueues > 0 && maxVehiclesPerQueue > 0 && workers > 0
+     * @requires q.howManyQueues() == minActivatedQueues && q.size() == 0 &&
+     *           todas as filas de q estao ativas
+     */
+    public Highway(int minActivatedQueues, int maxVehiclesPerQueue, boolean eventDriven,
+            QueueSystem<Vehicle> q, int workers) {
+
+        this.minActivatedQueues = minActivatedQueues;
+        this.maxVehiclesPerQueue = maxVehiclesPerQueue;
+        elapsedTime = 0;
+        totalWaitTime = 0;
+        numVehiclesProcessed = 0;
+        this.q = q;
+        tollsCollected = 0.0;
+        peakActiveQueues = q.howManyActiveQueues();
+        this.eventDriven = eventDriven;
+        if (eventDriven)
+            departures = new MinTree();
+        else if (workers > 1) {
+            pool = new ForkJoinPool(workers);
+            services = new ArrayList<>();
+            for (int i = 0; i < workers; i++)
+                services.add(new Service());
+        }
+    }
+
+    /**
+     * Construtor usado por fork: uma via rapida igual a other, com a sequencia
+     * de filas q, que partilha com other departures e os histogramas das filas
+     */
+    private Highway(Highway other, QueueSystem<Vehicle> q) {
+        minActivatedQueues = other.minActivatedQueues;
+        maxVehiclesPerQueue = other.maxVehiclesPerQueue;
+        this.q = q;
+        elapsedTime = other.elapsedTime;
+        totalWaitTime = other.totalWaitTime;
+        numVehiclesProcessed = other.numVehiclesProcessed;
+        tollsCollected = other.tollsCollected;
+        peakActiveQueues = other.peakActiveQueues;
+        waitTimes = new LogHistogram(other.waitTimes);
+        serviceTimes = new LogHistogram(other.serviceTimes);
+        laneWaitTimes = other.laneWaitTimes.fork();
+        laneServiceTimes = other.laneServiceTimes.fork();
+        eventDriven = other.eventDriven;
+        if (other.departures != null)
+            departures = other.departures.fork();
+        if (other.spareVehicles != null)
+            spareVehicles = new Vehicle[16];
+    }
+
+	/**
+     * Uma copia desta via rapida, no seu estado atual, que dai em diante evolui
+     * de forma independente: por exemplo, para experimentar varias politicas a
+     * partir do mesmo instante.
+     * 
+     * A copia e feita em tempo constante: as duas vias rapidas partilham as
+     * filas, os veiculos e os restantes dados ate uma delas os alterar, e cada
+     * uma copia apenas as filas que altera (ver QueueSystem.fork), com os
+     * blocos de tamanho fixo das estruturas por fila no caminho de cada uma
+     * (departures e os histogramas das filas), pelo que o custo de cada copia
+     * nao cresce com o numero de filas. No modo por unidade de tempo, cada
+     * unidade de tempo altera o veiculo na primeira posicao de todas as filas
+     * com veiculos, pelo que e no modo orientado a eventos que cada via rapida
+     * paga apenas pelas filas onde chegam ou de onde saem veiculos (e, em
+     * toString e writeState, pelas filas cujo primeiro veiculo ja esta a ser
+     * processado).
+     * 
+     * A copia nao recolhe metricas e reutiliza veiculos se esta o fizer.
+	 * 
+	 * @return a nova via rapida
+	 * @throws UnsupportedOperationException se a sequencia de filas nao puder
+	 *                                       ser copiada
+	 * @throws IllegalStateException no modo paralelo
+	 */
+	public Highway fork() {
+		if (pool != null)
+			throw new IllegalStateException("A parallel highway cannot be forked");
+		return new Highway(this, q.fork(Vehicle::new));
+	}
+
+	/**
+     * Ativa a recolha de metricas desta via rapida (contagens, tempos gastos em
+     * cada operacao, estado das filas), que podem ser lidas por JMX enquanto a
+     * simulacao decorre (ver HighwayMetrics.register). Sem ela, nada e medido.
+	 * 
+	 * @return as metricas desta via rapida
+	 */
+	public HighwayMetrics enableMetrics() {
+		if (metrics == null) {
+			metrics = new HighwayMetrics();
+			publishMetrics();
+		}
+		return metrics;
+	}
+
+	/**
+     * As metricas desta via rapida, ou null se a recolha nao estiver ativa
+	 */
+	public HighwayMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Regista o evento do flight recorder de uma fase de uma unidade de tempo,
+	 * se uma gravacao o quiser
+	 * 
+	 * @param event    O evento, iniciado no inicio da fase
+	 * @param phase    O nome do metodo
+	 * @param vehicles Os veiculos adicionados, ou que sairam, na fase
+	 */
+	private void commitPhase(HighwayEvents.TickPhase event, String phase, int vehicles) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.phase = phase;
+			event.elapsedTime = elapsedTime;
+			event.vehicles = vehicles;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Publica nas metricas o estado da via rapida
+	 */
+	private void publishMetrics() {
+		metrics.publish(elapsedTime, numVehiclesProcessed, q.howManyActiveQueues(), q.howManyQueues(), q.size());
+	}
+
+	/**
+     * Numero total de veiculos nas filas desta via rapida
+	 * (inclui aqueles cujo processamento ainda se encontra
+	 * a decorrer)
+	 */
+	public int totalNrVehicles() {
+		return q.size();
+	}
+
+	/**
+     * Numero de filas ativas nesta via rapida
+	 */
+	public int nrActiveQueues() {
+		return q.howManyActiveQueues();
+	}
+
+	/**
+     * Maior numero de filas ativas em simultaneo desde o inicio
+	 */
+	public int peakActiveQueues() {
+		return peakActiveQueues;
+	}
+
+	/**
+     * Numero de veiculos cujo pagamento ja foi processado
+	 */
+	public long nrVehiclesProcessed() {
+		return numVehiclesProcessed;
+	}
+
+	/**
+     * Numero medio de veiculos por fila ativa neste instante
+	 */
+	public double averageVehiclesPerQueue() {
+		return (double) totalNrVehicles()/nrActiveQueues();
+	}
+
+	/**
+     * Tempo medio de espera de veiculos na fila
+	 */
+	public double averageWaitingTime() {
+		return (double) totalWaitTime/numVehiclesProcessed;
+	}
+
+	/**
+     * Percentil dos tempos de espera dos veiculos ja processados (ver
+     * LogHistogram.percentile)
+	 * 
+	 * @param percent A percentagem, por exemplo 99 para o percentil 99
+	 * @requires 0 <= percent <= 100
+	 */
+	public int waitingTimePercentile(double percent) {
+		return waitTimes.percentile(percent);
+	}
+
+	/**
+     * Histograma dos tempos de espera dos veiculos ja processados (uma copia,
+     * que nao muda com a simulacao)
+	 */
+	public LogHistogram waitingTimes() {
+		return new LogHistogram(waitTimes);
+	}
+
+	/**
+     * Histograma dos tempos de espera dos veiculos ja processados numa fila
+     * (uma copia, vazia se nenhum veiculo saiu dessa fila)
+	 * 
+	 * @param index O indice da fila
+	 * @requires index >= 0
+	 */
+	public LogHistogram waitingTimes(int index) {
+		LogHistogram h = laneWaitTimes.get(index);
+		return h != null ? new LogHistogram(h) : new LogHistogram();
+	}
+
+	/**
+     * Histograma dos tempos de processamento (duracoes) dos veiculos ja
+     * processados (uma copia, que nao muda com a simulacao)
+	 */
+	public LogHistogram serviceTimes() {
+		return new LogHistogram(serviceTimes);
+	}
+
+	/**
+     * Histograma dos tempos de processamento dos veiculos ja processados numa
+     * fila (uma copia, vazia se nenhum veiculo saiu dessa fila)
+	 * 
+	 * @param index O indice da fila
+	 * @requires index >= 0
+	 */
+	public LogHistogram serviceTimes(int index) {
+		LogHistogram h = laneServiceTimes.get(index);
+		return h != null ? new LogHistogram(h) : new LogHistogram();
+	}
+
+	/**
+	 * Valor total de portagens cobradas
+	 */
+	public double totalTolls() {
+		return tollsCollected;
+    }
+	
+	
+    /**
+     * Valor medio de portagens cobradas por veiculo processado
+     */
+	public double averageTolls() {
+		return tollsCollected/numVehiclesProcessed;
+    }
+
+	/**
+     * Ativa ou desativa a reutilizacao de veiculos: quando ativa, os veiculos
+     * que saem das filas sao guardados e newVehicle devolve-os, reinicializados,
+     * em vez de criar novos, pelo que uma simulacao longa deixa de produzir
+     * lixo a cada veiculo. Os veiculos juntos a esta via rapida passam a
+     * pertencer-lhe: quem os adicionou nao os deve usar depois de sairem.
+	 * 
+	 * @param pooled Se true, os veiculos que saem das filas sao reutilizados
+	 */
+	public void setVehiclePooling(boolean pooled) {
+		if (!pooled) {
+			spareVehicles = null;
+			nSpareVehicles = 0;
+		}
+		else if (spareVehicles == null)
+			spareVehicles = new Vehicle[16];
+	}
+
+	/**
+     * Um veiculo para juntar a esta via rapida: com a reutilizacao de veiculos
+     * ativa, um dos que ja sairam das filas, reinicializado, se houver algum;
+     * caso contrario, um novo
+	 * 
+	 * @param arrival  O instante de tempo em que o veiculo chegou a fila
+	 * @param duration Unidades de tempo necessarias para processar o pagamento
+	 * @param toll     Valor da portagem a pagar pelo veiculo
+	 * @requires arrival > 0 && duration > 0
+	 */
+	public Vehicle newVehicle(int arrival, int duration, double toll) {
+		if (nSpareVehicles == 0)
+			return new Vehicle(arrival, duration, toll);
+		Vehicle v = spareVehicles[--nSpareVehicles];
+		spareVehicles[nSpareVehicles] = null;
+		v.reinit(arrival, duration, toll);
+		return v;
+	}
+
+	/**
+     * Adiciona um veiculo a uma fila ativa: aquela com o menor numero de veiculos
+     * em espera. Se todas as filas estiverem na sua capacidade maxima,
+     * se existir uma fila inativa esta torna-se ativa, caso contrario
+     * e criada uma nova fila.
+	 * 
+	 * @param v O veiculo que se quer juntar a uma fila
+	 * @requires v != null
+	 * @throws IllegalQueueRequest
+	 */
+	public void addVehicle(Vehicle v) throws IllegalQueueRequest {
+		if (metrics == null && !HighwayEvents.TICK_PHASE.isEnabled()) {
+			placeVehicle(v);
+			return;
+		}
+		HighwayEvents.TickPhase event = new HighwayEvents.TickPhase();
+		event.begin();
+		long start = System.nanoTime();
+		placeVehicle(v);
+		if (metrics != null) {
+			metrics.addVehicleNanos.add(System.nanoTime() - start);
+			metrics.arrivals.increment();
+		}
+		commitPhase(event, "addVehicle", 1);
+	}
+
+	/**
+	 * Implementacao de addVehicle
+	 * 
+	 * @param v O veiculo que se quer juntar a uma fila
+	 * @throws IllegalQueueRequest
+	 */
+	private void placeVehicle(Vehicle v) throws IllegalQueueRequest {
+		int occupation = q.focusMin();
+		int index = q.current();
+		if (occupation >= maxVehiclesPerQueue) {
+			index = openQueue();
+			q.focus(index);
+			occupation = 0;
+			peakActiveQueues = Math.max(peakActiveQueues, q.howManyActiveQueues());
+		}
+		q.enqueueAt(index, v);
+		if (occupation == 0)
+			scheduleDeparture(index, v);
+	}
+
+	/**
+     * Adiciona varios veiculos chegados no mesmo instante, com o mesmo
+     * resultado de addVehicle invocado para cada um, pela ordem em que estao:
+     * as mesmas filas para cada veiculo, as mesmas filas ativadas ou criadas e
+     * a mesma fila atual no fim.
+     * 
+     * Em vez de procurar a fila com menos veiculos para cada um, a colocacao de
+     * todos e calculada de uma vez, enchendo as filas ativas por niveis de
+     * ocupacao (em cada nivel, pela ordem dos indices) ate a capacidade maxima,
+     * e so depois ativando ou criando as filas necessarias para os restantes,
+     * que as enchem uma a uma. Os veiculos de cada fila sao-lhe juntos de uma
+     * so vez.
+	 * 
+	 * @param batch Os veiculos que se querem juntar as filas
+	 * @param off   A posicao do primeiro veiculo em batch
+	 * @param len   O numero de veiculos
+	 * @requires batch != null && 0 <= off && 0 <= len && off + len <= batch.length
+	 * @requires os veiculos nao sao null
+	 * @throws IllegalQueueRequest
+	 */
+	public void addVehicles(Vehicle[] batch, int off, int len) throws IllegalQueueRequest {
+		if (metrics == null && !HighwayEvents.TICK_PHASE.isEnabled()) {
+			placeVehicles(batch, off, len);
+			return;
+		}
+		HighwayEvents.TickPhase event = new HighwayEvents.TickPhase();
+		event.begin();
+		long start = System.nanoTime();
+		placeVehicles(batch, off, len);
+		if (metrics != null) {
+			metrics.addVehicleNanos.add(System.nanoTime() - start);
+			metrics.arrivals.add(len);
+		}
+		commitPhase(event, "addVehicles", len);
+	}
+
+	/**
+     * Adiciona os veiculos chegados no mesmo instante, criados com newVehicle,
+     * tal como addVehicles
+	 * 
+	 * @param arrival   O instante de tempo em que os veiculos chegaram
+	 * @param durations Unidades de tempo necessarias para processar o pagamento
+	 *                  de cada veiculo
+	 * @param tolls     Valor da portagem a pagar por cada veiculo
+	 * @param n         O numero de veiculos
+	 * @requires arrival > 0 && 0 <= n && n <= durations.length && n <= tolls.length
+	 * @throws IllegalQueueRequest
+	 */
+	@Override
+	public void addArrivals(int arrival, int[] durations, double[] tolls, int n) throws IllegalQueueRequest {
+		if (arriving.length < n)
+			arriving = new Vehicle[Math.max(n, arriving.length * 2)];
+		for (int k = 0; k < n; k++)
+			arriving[k] = newVehicle(arrival, durations[k], tolls[k]);
+		addVehicles(arriving, 0, n);
+		Arrays.fill(arriving, 0, n, null);
+	}
+
+	/**
+	 * Implementacao de addVehicles
+	 * 
+	 * @param batch Os veiculos que se querem juntar as filas
+	 * @param off   A posicao do primeiro veiculo em batch
+	 * @param len   O numero de veiculos
+	 * @throws IllegalQueueRequest
+	 */
+	private void placeVehicles(Vehicle[] batch, int off, int len) throws IllegalQueueRequest {
+		if (len < BATCH_THRESHOLD) {
+			for (int k = 0; k < len; k++)
+				placeVehicle(batch[off + k]);
+			return;
+		}
+		placeBatch(len);
+
+		// agrupar os veiculos por fila, mantendo a sua ordem
+		if (batchCount.length < q.howManyQueues())
+			batchCount = new int[Math.max(q.howManyQueues(), batchCount.length * 2)];
+		if (batchTouched.length < len) {
+			batchTouched = new int[len];
+			batchGrouped = new Vehicle[len];
+		}
+		int nTouched = 0;
+		for (int k = 0; k < len; k++)
+			if (batchCount[batchLanes[k]]++ == 0)
+				batchTouched[nTouched++] = batchLanes[k];
+		int start = 0;
+		for (int t = 0; t < nTouched; t++) {
+			int count = batchCount[batchTouched[t]];
+			batchCount[batchTouched[t]] = start;
+			start += count;
+		}
+		for (int k = 0; k < len; k++)
+			batchGrouped[batchCount[batchLanes[k]]++] = batch[off + k];
+
+		start = 0;
+		for (int t = 0; t < nTouched; t++) {
+			int index = batchTouched[t];
+			int end = batchCount[index];
+			boolean wasEmpty = q.sizeOf(index) == 0;
+			q.enqueueAllAt(index, batchGrouped, start, end - start);
+			if (wasEmpty)
+				scheduleDeparture(index, batchGrouped[start]);
+			batchCount[index] = 0;
+			start = end;
+		}
+		Arrays.fill(batchGrouped, 0, len, null);
+		q.focus(batchLanes[len - 1]);
+	}
+
+	/**
+	 * Escolhe a fila de cada um de len veiculos, guardando-a em batchLanes, tal
+	 * como addVehicle o faria, ativando ou criando as filas necessarias
+	 * 
+	 * @param len O numero de veiculos
+	 */
+	private void placeBatch(int len) {
+		if (batchLanes.length < len)
+			batchLanes = new int[len];
+
+		// as filas ativas com lugares livres, por ocupacao e indice (nenhuma,
+		// sem as percorrer, se a fila com menos veiculos estiver cheia)
+		int nFree = 0;
+		if (q.focusMin() < maxVehiclesPerQueue) {
+			int last = q.lastActive();
+			if (batchFree.length < last + 1)
+				batchFree = new long[Math.max(last + 1, batchFree.length * 2)];
+			for (int i = 0; i <= last; i++) {
+				if (q.isActivated(i) && q.sizeOf(i) < maxVehiclesPerQueue)
+					batchFree[nFree++] = (long) q.sizeOf(i) << 32 | i;
+			}
+			Arrays.sort(batchFree, 0, nFree);
+		}
+
+		// a cada nivel de ocupacao, cada fila que o atingiu recebe um veiculo,
+		// pela ordem dos indices, tal como se procurasse a fila com menos
+		// veiculos para cada um
+		int k = 0;
+		int next = 0;
+		int level = nFree > 0 ? (int) (batchFree[0] >>> 32) : maxVehiclesPerQueue;
+		for (; level < maxVehiclesPerQueue && k < len; level++) {
+			while (next < nFree && (int) (batchFree[next] >>> 32) == level)
+				batchFilling.add((int) batchFree[next++]);
+			for (int i = batchFilling.next(0); i >= 0 && k < len; i = batchFilling.next(i + 1))
+				batchLanes[k++] = i;
+		}
+		for (int p = 0; p < next; p++)
+			batchFilling.remove((int) batchFree[p]);
+
+		// todas as filas ativas estao cheias: os restantes veiculos enchem as
+		// filas que se ativam ou criam, uma a uma
+		while (k < len) {
+			int index = openQueue();
+			for (int n = 0; n < maxVehiclesPerQueue && k < len; n++)
+				batchLanes[k++] = index;
+		}
+		peakActiveQueues = Math.max(peakActiveQueues, q.howManyActiveQueues());
+	}
+
+	/**
+     * Processa uma unidade de tempo em todas as filas ativas:
+     * - atualiza as unidades de tempo decorridas;
+     * - atualiza o estado das filas;
+     * - decrementa uma unidade de tempo ao tempo de espera de cada veiculo
+     * que esta a ser processado (aqueles na primeira posicao numa fila);
+     * - se o tempo de espera de um veiculo ficar a zero, ele abandona a fila e
+     * atualizam-se os valores de totalWaitTime, numVehiclesProcessed
+	 * 
+	 * @throws IllegalQueueRequest
+	 */
+	public void updateActiveQueues() throws IllegalQueueRequest {
+		if (metrics == null && !HighwayEvents.TICK_PHASE.isEnabled()) {
+			serviceQueues();
+			return;
+		}
+		HighwayEvents.TickPhase event = new HighwayEvents.TickPhase();
+		event.begin();
+		long processed = numVehiclesProcessed;
+		long start = System.nanoTime();
+		serviceQueues();
+		if (metrics != null) {
+			metrics.updateActiveQueuesNanos.add(System.nanoTime() - start);
+			publishMetrics();
+		}
+		commitPhase(event, "updateActiveQueues", (int) (numVehiclesProcessed - processed));
+	}
+
+	/**
+	 * Implementacao de updateActiveQueues
+	 * 
+	 * @throws IllegalQueueRequest
+	 */
+	private void serviceQueues() throws IllegalQueueRequest {
+		elapsedTime++;
+		if (eventDriven)
+			processDepartures();
+		else if (pool != null)
+			serviceInParallel();
+		else {
+			// apenas as filas com veiculos
+			for (int index = q.nextBusy(0); index >= 0; index = q.nextBusy(index + 1)) {
+				Vehicle v = q.frontToChangeAt(index);
+				v.decreaseOneTimeUnit();
+				if (v.timeLeft() == 0) {
+					registerDeparture(index, v);
+					q.tryDequeueAt(index);
+					recycle(v);
+				}
+			}
+		}
+		// a fila atual passa a ser a ultima ativa, tal como se todas as filas
+		// ativas tivessem sido percorridas
+		q.focus(q.lastActive());
+	}
+
+	/**
+	 * Modo paralelo: cada thread decrementa o tempo dos veiculos na primeira
+	 * posicao das filas de um intervalo de indices e regista as filas de onde
+	 * sai um veiculo, bem como o tempo de espera desses veiculos. Terminadas
+	 * todas, os veiculos saem das filas nesta thread, pela ordem dos indices das
+	 * filas, para que as portagens sejam somadas pela mesma ordem do modo
+	 * sequencial e o resultado seja exatamente o mesmo
+	 */
+	private void serviceInParallel() {
+		// filas 0 a lastActive, em intervalos consecutivos
+		int n = q.lastActive() + 1;
+		int chunk = (n + services.size() - 1) / services.size();
+		for (int i = 0; i < services.size(); i++) {
+			services.get(i).from = Math.min(n, i * chunk);
+			services.get(i).to = Math.min(n, (i + 1) * chunk);
+		}
+		try {
+			for (Future<Void> f : pool.invokeAll(services))
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		for (Service s : services) {
+			totalWaitTime += s.waitTime;
+			numVehiclesProcessed += s.nDeparted;
+			for (int k = 0; k < s.nDeparted; k++) {
+				int index = s.departed[k];
+				Vehicle v = q.frontAt(index);
+				tollsCollected += v.toll();
+				recordTimes(index, v);
+				q.tryDequeueAt(index);
+				recycle(v);
+			}
+		}
+	}
+
+	/**
+	 * Modo paralelo: o trabalho de uma thread numa unidade de tempo, sobre as
+	 * filas com indices de from (inclusive) a to (exclusive). Apenas le a
+	 * sequencia de filas, e cada veiculo e alterado por uma so thread
+	 */
+	private final class Service implements Callable<Void> {
+		private int from;
+		private int to;
+		// filas de onde sai um veiculo, por ordem crescente
+		private int[] departed = new int[16];
+		private int nDeparted;
+		// tempo de espera dos veiculos que saem
+		private long waitTime;
+
+		@Override
+		public Void call() {
+			nDeparted = 0;
+			waitTime = 0;
+			if (from == to)
+				return null;
+			for (int index = q.nextBusy(from); index >= 0 && index < to; index = q.nextBusy(index + 1)) {
+				Vehicle v = q.frontAt(index);
+				v.decreaseOneTimeUnit();
+				if (v.timeLeft() == 0) {
+					waitTime += elapsedTime - v.arrival() - v.duration() + 1;
+					if (nDeparted == departed.length)
+						departed = Arrays.copyOf(departed, nDeparted * 2);
+					departed[nDeparted++] = index;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Modo orientado a eventos: retira das filas os veiculos cujo processamento
+	 * termina no instante elapsedTime, pela ordem dos indices das filas, e agenda
+	 * o fim do processamento dos veiculos que passam a primeira posicao
+	 */
+	private void processDepartures() {
+		while (!departures.isEmpty() && (int) (departures.peekKey() >>> 32) == elapsedTime) {
+			int index = departures.poll();
+			Vehicle v = q.frontToChangeAt(index);
+			v.decreaseTimeUnits(v.timeLeft());
+			registerDeparture(index, v);
+			q.tryDequeueAt(index);
+			recycle(v);
+			Vehicle next = q.frontAt(index);
+			if (next != null)
+				scheduleDeparture(index, next);
+		}
+	}
+
+	/**
+	 * Reutilizacao de veiculos: guarda um veiculo que acabou de sair de uma fila
+	 * para ser devolvido por newVehicle
+	 * 
+	 * @param v O veiculo que saiu da fila
+	 */
+	private void recycle(Vehicle v) {
+		if (spareVehicles == null)
+			return;
+		if (nSpareVehicles == spareVehicles.length)
+			spareVehicles = Arrays.copyOf(spareVehicles, nSpareVehicles * 2);
+		spareVehicles[nSpareVehicles++] = v;
+	}
+
+	/**
+	 * Atualiza totalWaitTime, tollsCollected, numVehiclesProcessed e os
+	 * histogramas com um veiculo que termina o seu processamento no instante
+	 * elapsedTime
+	 * 
+	 * @param index O indice da fila
+	 * @param v     O veiculo que abandona a fila
+	 */
+	private void registerDeparture(int index, Vehicle v) {
+		totalWaitTime += elapsedTime - v.arrival() - v.duration() + 1;
+		tollsCollected += v.toll();
+		numVehiclesProcessed++;
+		recordTimes(index, v);
+	}
+
+	/**
+	 * Regista nos histogramas da via rapida e da fila o tempo de espera e o
+	 * tempo de processamento de um veiculo que termina o seu processamento no
+	 * instante elapsedTime
+	 * 
+	 * @param index O indice da fila
+	 * @param v     O veiculo que abandona a fila
+	 */
+	private void recordTimes(int index, Vehicle v) {
+		int wait = elapsedTime - v.arrival() - v.duration() + 1;
+		waitTimes.record(wait);
+		serviceTimes.record(v.duration());
+		LogHistogram laneWait = laneWaitTimes.owned(index);
+		LogHistogram laneService = laneServiceTimes.owned(index);
+		if (laneWait == null) {
+			// ainda nao existem, ou sao partilhados com outra via rapida (ver
+			// fork)
+			LogHistogram shared = laneWaitTimes.get(index);
+			laneWait = shared == null ? new LogHistogram() : new LogHistogram(shared);
+			laneWaitTimes.set(index, laneWait);
+			shared = laneServiceTimes.get(index);
+			laneService = shared == null ? new LogHistogram() : new LogHistogram(shared);
+			laneServiceTimes.set(index, laneService);
+		}
+		laneWait.record(wait);
+		laneService.record(v.duration());
+	}
+
+	/**
+	 * Modo orientado a eventos: regista o instante em que termina o processamento
+	 * de um veiculo que acaba de chegar a primeira posicao de uma fila
+	 * 
+	 * @param index O indice da fila
+	 * @param v     O veiculo na primeira posicao da fila
+	 */
+	private void scheduleDeparture(int index, Vehicle v) {
+		if (eventDriven)
+			departures.insert(index, (long) (elapsedTime + v.timeLeft()) << 32 | index);
+	}
+
+	/**
+	 * Avanca a simulacao ate ao instante time, processando cada unidade de tempo
+	 * tal como updateActiveQueues seguido de updateNumberActiveQueues.
+	 * 
+	 * No modo orientado a eventos, as unidades de tempo em que nenhum veiculo
+	 * termina e nenhuma fila e desativada sao saltadas, pelo que o custo depende
+	 * do numero de veiculos e nao do tempo decorrido.
+	 * 
+	 * @param time O instante ate ao qual se avanca
+	 * @throws IllegalQueueRequest
+	 */
+	public void advanceTo(int time) throws IllegalQueueRequest {
+		boolean idle = false;
+		while (elapsedTime < time) {
+			// nada muda ate a proxima partida: basta avancar o relogio
+			if (eventDriven && idle) {
+				int next = departures.isEmpty() ? time : (int) (departures.peekKey() >>> 32);
+				elapsedTime = Math.max(elapsedTime, Math.min(next, time) - 1);
+			}
+			updateActiveQueues();
+			idle = !reduceActiveQueues();
+		}
+	}
+
+
+	/**
+     * Havendo mais do que uma fila vazia, desativa a fila vazia de menor indice,
+     * conquanto o numero minimo de filas ativas seja respeitado
+	 * 
+	 * @throws IllegalQueueRequest
+	 */
+	public void updateNumberActiveQueues() throws IllegalQueueRequest {
+		reduceActiveQueues();
+	}
+
+	/**
+	 * Implementacao de updateNumberActiveQueues
+	 * 
+	 * @return true se foi desativada uma fila
+	 * @throws IllegalQueueRequest
+	 */
+	private boolean reduceActiveQueues() throws IllegalQueueRequest {
+		if (metrics == null && !HighwayEvents.TICK_PHASE.isEnabled())
+			return deactivateEmptyQueue();
+		HighwayEvents.TickPhase event = new HighwayEvents.TickPhase();
+		event.begin();
+		long start = System.nanoTime();
+		boolean reduced = deactivateEmptyQueue();
+		if (metrics != null) {
+			metrics.updateNumberActiveQueuesNanos.add(System.nanoTime() - start);
+			if (reduced)
+				metrics.laneDeactivations.increment();
+			publishMetrics();
+		}
+		commitPhase(event, "updateNumberActiveQueues", 0);
+		return reduced;
+	}
+
+	/**
+	 * Desativa a fila vazia de menor indice, se houver mais do que uma fila
+	 * vazia e o numero minimo de filas ativas o permitir
+	 * 
+	 * @return true se foi desativada uma fila
+	 * @throws IllegalQueueRequest
+	 */
+	private boolean deactivateEmptyQueue() throws IllegalQueueRequest {
+		// a fila atual passa a ser a ultima ativa, tal como se todas as filas
+		// ativas tivessem sido percorridas
+		q.focus(q.lastActive());
+
+		if (q.howManyEmptyQueues() > 1 && minActivatedQueues < q.howManyActiveQueues()) {
+			if (q.focusMin() == 0) {
+				q.deactivate(q.current());
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+     * Escreve o estado completo desta via rapida (contadores, histogramas, o
+     * conteudo de cada fila, com o tempo que falta a cada veiculo, quais as
+     * filas ativas e a fila atual), para ser retomado com readState numa via
+     * rapida nova com a mesma configuracao. A via rapida nao muda.
+	 * 
+	 * @param out Onde escrever o estado
+	 * @throws IOException
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		if (eventDriven)
+			syncTimeLeft();
+		out.writeInt(minActivatedQueues);
+		out.writeInt(maxVehiclesPerQueue);
+		out.writeBoolean(eventDriven);
+		out.writeInt(elapsedTime);
+		out.writeLong(totalWaitTime);
+		out.writeLong(numVehiclesProcessed);
+		out.writeDouble(tollsCollected);
+		out.writeInt(peakActiveQueues);
+		waitTimes.write(out);
+		serviceTimes.write(out);
+		out.writeInt(q.howManyQueues());
+		for (int i = 0; i < q.howManyQueues(); i++) {
+			LogHistogram laneWait = laneWaitTimes.get(i);
+			out.writeBoolean(laneWait != null);
+			if (laneWait != null) {
+				laneWait.write(out);
+				laneServiceTimes.get(i).write(out);
+			}
+		}
+
+		out.writeInt(q.howManyQueues());
+		for (int i = 0; i < q.howManyQueues(); i++) {
+			out.writeBoolean(q.isActivated(i));
+			out.writeInt(q.sizeOf(i));
+			try {
+				q.forEachAt(i, v -> {
+					try {
+						out.writeInt(v.arrival());
+						out.writeInt(v.duration());
+						out.writeInt(v.timeLeft());
+						out.writeDouble(v.toll());
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+		out.writeInt(q.current());
+	}
+
+	/**
+     * Retoma o estado escrito por writeState, como se esta via rapida tivesse
+     * feito tudo o que fez aquela cujo estado foi escrito
+	 * 
+	 * @param in Onde ler o estado
+	 * @requires esta via rapida acabou de ser construida, com os mesmos
+	 *           minActivatedQueues, maxVehiclesPerQueue e modo orientado a
+	 *           eventos da via rapida cujo estado foi escrito
+	 * @throws IOException se o estado nao puder ser lido ou for de uma via
+	 *                     rapida com outra configuracao
+	 */
+	public void readState(DataInput in) throws IOException {
+		int min = in.readInt();
+		int max = in.readInt();
+		boolean events = in.readBoolean();
+		if (min != minActivatedQueues || max != maxVehiclesPerQueue || events != eventDriven)
+			throw new IOException("The state is of a highway with " + min + " and " + max
+					+ (events ? ", event-driven" : "") + ", not " + minActivatedQueues + " and "
+					+ maxVehiclesPerQueue + (eventDriven ? ", event-driven" : ""));
+		elapsedTime = in.readInt();
+		totalWaitTime = in.readLong();
+		numVehiclesProcessed = in.readLong();
+		tollsCollected = in.readDouble();
+		peakActiveQueues = in.readInt();
+		waitTimes = LogHistogram.read(in);
+		serviceTimes = LogHistogram.read(in);
+		int lanes = in.readInt();
+		laneWaitTimes = new LaneArray<>(lanes);
+		laneServiceTimes = new LaneArray<>(lanes);
+		for (int i = 0; i < lanes; i++) {
+			if (in.readBoolean()) {
+				laneWaitTimes.set(i, LogHistogram.read(in));
+				laneServiceTimes.set(i, LogHistogram.read(in));
+			}
+		}
+
+		// as filas inativas so sao desativadas no fim, para que haja sempre
+		// alguma ativa
+		int n = in.readInt();
+		boolean[] active = new boolean[n];
+		while (q.howManyQueues() < n)
+			q.create();
+		for (int i = 0; i < n; i++) {
+			active[i] = in.readBoolean();
+			q.activate(i);
+			int size = in.readInt();
+			for (int k = 0; k < size; k++) {
+				int arrival = in.readInt();
+				int duration = in.readInt();
+				int timeLeft = in.readInt();
+				Vehicle v = new Vehicle(arrival, duration, in.readDouble());
+				v.decreaseTimeUnits(duration - timeLeft);
+				q.enqueueAt(i, v);
+				if (k == 0)
+					scheduleDeparture(i, v);
+			}
+		}
+		try {
+			for (int i = 0; i < n; i++) {
+				if (!active[i])
+					q.deactivate(i);
+			}
+			q.focus(in.readInt());
+		} catch (IllegalQueueRequest e) {
+			// uma fila inativa com veiculos, ou a fila atual inativa
+			throw new IOException("Inconsistent highway state", e);
+		}
+		if (metrics != null)
+			publishMetrics();
+	}
+
+	/**
+     * Termina as threads do modo paralelo, se as houver; depois disso, a via
+     * rapida pode ser consultada, mas o tempo ja nao pode avancar. Fora do
+     * modo paralelo, nao faz nada
+	 */
+	@Override
+	public void close() {
+		if (pool != null)
+			pool.shutdown();
+	}
+
+	/**
+     * Representacao textual da via rapida
+	 */
+	public String toString() {
+        return Renderable.toString(this);
+    }
+
+	/**
+     * Escreve a representacao textual da via rapida (a de toString) em out,
+     * sem construir Strings com o conteudo das filas: com um Writer com buffer,
+     * o relatorio de uma via rapida com muitos veiculos nao ocupa memoria
+     * proporcional ao numero de veiculos
+	 * 
+	 * @param out Onde escrever
+	 * @throws IOException se out a lancar
+	 */
+	@Override
+	public void appendTo(Appendable out) throws IOException {
+        if (eventDriven)
+            syncTimeLeft();
+        String END_LINE = System.lineSeparator();
+        out.append("Minimum number of activated queues ");
+        Renderable.appendInt(out, minActivatedQueues);
+        out.append(END_LINE).append("Maximum number of vehicles per queue ");
+        Renderable.appendInt(out, maxVehiclesPerQueue);
+        out.append(END_LINE);
+        q.appendTo(out);
+        out.append("Elapsed time ");
+        Renderable.appendInt(out, elapsedTime);
+        out.append(END_LINE).append("Total waiting time ");
+        Renderable.appendLong(out, totalWaitTime);
+        out.append(END_LINE).append("Number of vehicles processed ");
+        Renderable.appendLong(out, numVehiclesProcessed);
+        out.append(END_LINE).append(String.format("Total tolls collected %.2f", tollsCollected)).append(END_LINE);
+    }
+
+
+	/**
+	 * Modo orientado a eventos: atualiza o tempo que falta aos veiculos na
+	 * primeira posicao das filas, para que a representacao textual seja a mesma
+	 * do modo por unidade de tempo. A fila atual nao se altera.
+	 */
+	private void syncTimeLeft() {
+		for (int i = q.nextBusy(0); i >= 0; i = q.nextBusy(i + 1)) {
+			int timeLeft = (int) (departures.key(i) >>> 32) - elapsedTime;
+			// so se altera (e, depois de fork, copia) a fila se o tempo mudou
+			if (q.frontAt(i).timeLeft() != timeLeft) {
+				Vehicle v = q.frontToChangeAt(i);
+				v.decreaseTimeUnits(v.timeLeft() - timeLeft);
+			}
+		}
+	}
+
+	/**
+     * Imprime uma mensagem no standard output; usar apenas durante o
+     * desenvolvimento de codigo
+	 * 
+	 * @param msg a mensagem a imprimir
+	 */
+	private void log(String msg) {
+		System.out.println(msg);
+	}
+	
+	/**
+	 * Ativa a primeira fila inativa ou, se nao houver nenhuma, cria uma nova
+	 * 
+	 * @return o indice da fila ativada
+	 */
+	private int openQueue() {
+		int index;
+		if (q.howManyActiveQueues() < q.howManyQueues()) {
+			index = activateQueue();
+		}
+		else {
+			q.create();
+			index = q.howManyQueues()-1;
+			q.activate(index);
+		}
+		if (metrics != null)
+			metrics.laneActivations.increment();
+		return index;
+	}
+
+	/**
+	 * Ativa a primeira Queue que estava desativada e devolve o index dessa Queue
+	 * 
+	 * @return index da Queue ativada
+	 */
+	private int activateQueue() {
+		int index = q.firstInactive();
+		q.activate(index);
+		return index;
+	}
+}
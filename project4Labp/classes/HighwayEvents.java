@@ -0,0 +1,113 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the highway simulation: the life of the lanes
+ * of an ArrayQueueSystem, the growth of ArrayQueues and the phases of each
+ * unit of time of a Highway.
+ *
+ * All of them are disabled by default, even in recordings with the default
+ * settings: they must be enabled by name (e.g. "highway.LaneActivated"), as
+ * RunSimulation does with -jfr. Where they are emitted, an event is only
+ * created, filled in and committed if the isEnabled of its EventType below
+ * says that a recording wants it, so that otherwise they cost a field read
+ * and allocate nothing.
+ *
+ */
+public final class HighwayEvents {
+
+	private HighwayEvents() {
+	}
+
+	/**
+	 * The names of all the events.
+	 */
+	static final String[] NAMES = { "highway.LaneCreated", "highway.LaneActivated", "highway.LaneDeactivated",
+			"highway.QueueReallocated", "highway.TickPhase" };
+
+	/**
+	 * The type of each event.
+	 */
+	static final EventType LANE_CREATED = EventType.getEventType(LaneCreated.class);
+	static final EventType LANE_ACTIVATED = EventType.getEventType(LaneActivated.class);
+	static final EventType LANE_DEACTIVATED = EventType.getEventType(LaneDeactivated.class);
+	static final EventType QUEUE_REALLOCATED = EventType.getEventType(QueueReallocated.class);
+	static final EventType TICK_PHASE = EventType.getEventType(TickPhase.class);
+
+	@Name("highway.LaneCreated")
+	@Label("Lane Created")
+	@Category({ "Highway", "Lanes" })
+	@Description("A lane was added to a queue system")
+	@Enabled(false)
+	@StackTrace(false)
+	static final class LaneCreated extends Event {
+		@Label("Lane")
+		int lane;
+		@Label("Lanes")
+		@Description("The number of lanes, with the new one")
+		int lanes;
+		@Label("Arrays Grown")
+		@Description("Whether the arrays of the queue system were moved to larger ones")
+		boolean grown;
+	}
+
+	@Name("highway.LaneActivated")
+	@Label("Lane Activated")
+	@Category({ "Highway", "Lanes" })
+	@Enabled(false)
+	@StackTrace(false)
+	static final class LaneActivated extends Event {
+		@Label("Lane")
+		int lane;
+		@Label("Active Lanes")
+		int activeLanes;
+	}
+
+	@Name("highway.LaneDeactivated")
+	@Label("Lane Deactivated")
+	@Category({ "Highway", "Lanes" })
+	@Enabled(false)
+	@StackTrace(false)
+	static final class LaneDeactivated extends Event {
+		@Label("Lane")
+		int lane;
+		@Label("Active Lanes")
+		int activeLanes;
+	}
+
+	@Name("highway.QueueReallocated")
+	@Label("Queue Reallocated")
+	@Category({ "Highway", "Queues" })
+	@Description("The array of an ArrayQueue was moved to a larger one")
+	@Enabled(false)
+	@StackTrace(false)
+	static final class QueueReallocated extends Event {
+		@Label("Old Capacity")
+		int oldCapacity;
+		@Label("New Capacity")
+		int newCapacity;
+	}
+
+	@Name("highway.TickPhase")
+	@Label("Tick Phase")
+	@Category({ "Highway", "Simulation" })
+	@Description("A call to addVehicle, addVehicles, updateActiveQueues or updateNumberActiveQueues")
+	@Enabled(false)
+	@StackTrace(false)
+	static final class TickPhase extends Event {
+		@Label("Phase")
+		String phase;
+		@Label("Elapsed Time")
+		@Description("The simulated time at the end of the phase")
+		int elapsedTime;
+		@Label("Vehicles")
+		@Description("The vehicles added, or that left, in the phase")
+		int vehicles;
+	}
+}
@@ -0,0 +1,195 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Live metrics of a Highway, for JMX clients to read while the simulation runs
+ * (see Highway.enableMetrics and register).
+ *
+ * The thread running the simulation only adds to LongAdders and writes a few
+ * volatile fields, once per unit of time, and never waits for a reader: the
+ * counters are read, and the rates computed, in the threads of the JMX
+ * clients. Rates are taken over the last full second between two readings,
+ * or since the metrics were created, before that.
+ *
+ */
+public class HighwayMetrics implements HighwayMetricsMBean {
+
+	private static final long SECOND = 1_000_000_000L;
+
+	// updated by the thread running the simulation
+	final LongAdder arrivals = new LongAdder();
+	final LongAdder laneActivations = new LongAdder();
+	final LongAdder laneDeactivations = new LongAdder();
+	final LongAdder addVehicleNanos = new LongAdder();
+	final LongAdder updateActiveQueuesNanos = new LongAdder();
+	final LongAdder updateNumberActiveQueuesNanos = new LongAdder();
+	private volatile int elapsedTime;
+	private volatile long departures;
+	private volatile int activeLanes;
+	private volatile int totalLanes;
+	private volatile int backlog;
+
+	/**
+	 * The readings between which the rates are taken, by the JMX clients.
+	 */
+	private static final class Sample {
+		final long nanos;
+		final int elapsedTime;
+		final long arrivals;
+		final long departures;
+
+		Sample(long nanos, int elapsedTime, long arrivals, long departures) {
+			this.nanos = nanos;
+			this.elapsedTime = elapsedTime;
+			this.arrivals = arrivals;
+			this.departures = departures;
+		}
+	}
+
+	private Sample previous;
+	private Sample last;
+
+	private ObjectName name;
+
+	HighwayMetrics() {
+		previous = new Sample(System.nanoTime(), 0, 0, 0);
+		last = null;
+	}
+
+	/**
+	 * Publishes the state of the highway at the end of a unit of time.
+	 */
+	void publish(int elapsedTime, long departures, int activeLanes, int totalLanes, int backlog) {
+		this.elapsedTime = elapsedTime;
+		this.departures = departures;
+		this.activeLanes = activeLanes;
+		this.totalLanes = totalLanes;
+		this.backlog = backlog;
+	}
+
+	/**
+	 * Registers these metrics in the platform MBean server, as
+	 * "Highway:type=HighwayMetrics,name=" followed by the given name, and the
+	 * ArrayQueueMetrics of the whole program, if they are not yet.
+	 *
+	 * @param name A name that tells this highway apart from others
+	 * @throws JMException if the name is not valid or already in use
+	 */
+	public synchronized void register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("Highway:type=HighwayMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		this.name = objectName;
+		ArrayQueueMetrics.register();
+	}
+
+	/**
+	 * Removes these metrics from the platform MBean server, if registered.
+	 *
+	 * @throws JMException
+	 */
+	public synchronized void unregister() throws JMException {
+		if (name == null)
+			return;
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		name = null;
+	}
+
+	/**
+	 * The two readings between which rates are taken now: the last two taken a
+	 * second apart, or the first one and a new one.
+	 */
+	private synchronized Sample[] window() {
+		long now = System.nanoTime();
+		Sample current = new Sample(now, elapsedTime, arrivals.sum(), departures);
+		if (last == null) {
+			if (now - previous.nanos >= SECOND)
+				last = current;
+			return new Sample[] { previous, current };
+		}
+		if (now - last.nanos >= SECOND) {
+			previous = last;
+			last = current;
+		}
+		return new Sample[] { previous, last };
+	}
+
+	private static double perSecond(long delta, Sample[] window) {
+		long nanos = window[1].nanos - window[0].nanos;
+		return nanos == 0 ? 0 : delta * (double) SECOND / nanos;
+	}
+
+	@Override
+	public double getTicksPerSecond() {
+		Sample[] w = window();
+		return perSecond(w[1].elapsedTime - w[0].elapsedTime, w);
+	}
+
+	@Override
+	public double getArrivalsPerSecond() {
+		Sample[] w = window();
+		return perSecond(w[1].arrivals - w[0].arrivals, w);
+	}
+
+	@Override
+	public double getDeparturesPerSecond() {
+		Sample[] w = window();
+		return perSecond(w[1].departures - w[0].departures, w);
+	}
+
+	@Override
+	public int getElapsedTime() {
+		return elapsedTime;
+	}
+
+	@Override
+	public long getArrivals() {
+		return arrivals.sum();
+	}
+
+	@Override
+	public long getDepartures() {
+		return departures;
+	}
+
+	@Override
+	public long getLaneActivations() {
+		return laneActivations.sum();
+	}
+
+	@Override
+	public long getLaneDeactivations() {
+		return laneDeactivations.sum();
+	}
+
+	@Override
+	public int getActiveLanes() {
+		return activeLanes;
+	}
+
+	@Override
+	public int getTotalLanes() {
+		return totalLanes;
+	}
+
+	@Override
+	public int getBacklog() {
+		return backlog;
+	}
+
+	@Override
+	public double getAddVehicleMillis() {
+		return addVehicleNanos.sum() / 1e6;
+	}
+
+	@Override
+	public double getUpdateActiveQueuesMillis() {
+		return updateActiveQueuesNanos.sum() / 1e6;
+	}
+
+	@Override
+	public double getUpdateNumberActiveQueuesMillis() {
+		return updateNumberActiveQueuesNanos.sum() / 1e6;
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * The management interface of HighwayMetrics: what JMX clients (e.g. jconsole)
+ * see of a running simulation. Rates are per second of wall-clock time; times
+ * are in milliseconds.
+ *
+ */
+public interface HighwayMetricsMBean {
+
+	/**
+	 * Simulated time units per second.
+	 */
+	double getTicksPerSecond();
+
+	/**
+	 * Vehicles added to the highway per second.
+	 */
+	double getArrivalsPerSecond();
+
+	/**
+	 * Vehicles that left the highway per second.
+	 */
+	double getDeparturesPerSecond();
+
+	/**
+	 * The simulated time elapsed.
+	 */
+	int getElapsedTime();
+
+	/**
+	 * The number of vehicles added to the highway.
+	 */
+	long getArrivals();
+
+	/**
+	 * The number of vehicles that left the highway.
+	 */
+	long getDepartures();
+
+	/**
+	 * How many times a lane was activated (or created) to take a vehicle.
+	 */
+	long getLaneActivations();
+
+	/**
+	 * How many times an empty lane was deactivated.
+	 */
+	long getLaneDeactivations();
+
+	/**
+	 * The number of active lanes.
+	 */
+	int getActiveLanes();
+
+	/**
+	 * The number of lanes, active or not.
+	 */
+	int getTotalLanes();
+
+	/**
+	 * The number of vehicles in the lanes.
+	 */
+	int getBacklog();
+
+	/**
+	 * The time spent adding vehicles (addVehicle and addVehicles).
+	 */
+	double getAddVehicleMillis();
+
+	/**
+	 * The time spent in updateActiveQueues.
+	 */
+	double getUpdateActiveQueuesMillis();
+
+	/**
+	 * The time spent in updateNumberActiveQueues.
+	 */
+	double getUpdateNumberActiveQueuesMillis();
+}
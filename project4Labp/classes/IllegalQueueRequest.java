@@ -1,8 +1,8 @@
-public class IllegalQueueRequest extends Exception {
-
-	private static final long serialVersionUID = 7399265976541982440L;
-
-    public IllegalQueueRequest(String msg) {
-        super(msg);
-    }
-}
+public class IllegalQueueRequest extends Exception {
+
+	private static final long serialVersionUID = 7399265976541982440L;
+
+    public IllegalQueueRequest(String msg) {
+        super(msg);
+    }
+}
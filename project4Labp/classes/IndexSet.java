@@ -0,0 +1,232 @@
+import java.util.Arrays;
+
+/**
+ * A set of non-negative integers (typically queue indices) kept as a bitset
+ * with a summary level: bit w of the summary is set whenever word w of the
+ * bitset is not zero. Enumerating the set in increasing order with next skips
+ * 64 empty words at a time, so that it costs about one step per member even
+ * when the members are few and far apart.
+ *
+ * The words are kept in blocks of 64 (4,096 possible members), so that a fork
+ * shares them: afterwards, each of the two sets copies a block the first time
+ * it changes it, and the arrays of blocks and of the summary (one entry per
+ * block) on its first change.
+ *
+ */
+class IndexSet {
+
+	/**
+	 * The number of words in a block.
+	 */
+	private static final int BLOCK = 64;
+
+	/**
+	 * One bit per possible member, in blocks: word w is blocks[w >>> 6][w & 63].
+	 * A set with fewer than 4,096 possible members has a single, shorter block.
+	 */
+	private long[][] blocks;
+
+	/**
+	 * One bit per word, set if that word is not zero: bit w of summary[w >>> 6],
+	 * so that there is one entry per block.
+	 */
+	private long[] summary;
+
+	/**
+	 * The number of members.
+	 */
+	private int size;
+
+	/**
+	 * After a fork, blocks and summary are shared with the other set until this
+	 * one changes them, and block b belongs to this set alone only if bit b of
+	 * owned is set; owned is null if the set was never forked.
+	 */
+	private boolean shared;
+	private long[] owned;
+
+	/**
+	 * Construct an empty set ready to hold the integers 0 to capacity-1.
+	 *
+	 * @param capacity The expected greatest member plus one.
+	 */
+	public IndexSet(int capacity) {
+		int nWords = Math.max((capacity + 63) >>> 6, 1);
+		blocks = new long[(nWords + BLOCK - 1) / BLOCK][];
+		for (int b = 0; b < blocks.length; b++)
+			blocks[b] = new long[Math.min(nWords, BLOCK)];
+		summary = new long[blocks.length];
+		size = 0;
+	}
+
+	/**
+	 * A set with the members of other, sharing its blocks (see fork).
+	 */
+	private IndexSet(IndexSet other) {
+		blocks = other.blocks;
+		summary = other.summary;
+		size = other.size;
+		shared = true;
+		owned = new long[(blocks.length + 63) >>> 6];
+	}
+
+	/**
+	 * A set with the same members as this one, from which it evolves
+	 * independently. It takes constant time; afterwards each of the two sets
+	 * copies a few words per 4,096 possible members on its first change, and
+	 * the blocks it changes.
+	 */
+	public IndexSet fork() {
+		shared = true;
+		owned = new long[(blocks.length + 63) >>> 6];
+		return new IndexSet(this);
+	}
+
+	/**
+	 * The number of members.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Is i a member?
+	 *
+	 * @param i The integer.
+	 */
+	public boolean contains(int i) {
+		int w = i >>> 6;
+		if (w >>> 6 >= blocks.length)
+			return false;
+		long[] block = blocks[w >>> 6];
+		return (w & 63) < block.length && (block[w & 63] & 1L << i) != 0;
+	}
+
+	/**
+	 * Makes i a member.
+	 *
+	 * @param i The integer.
+	 * @requires i >= 0
+	 */
+	public void add(int i) {
+		if (contains(i))
+			return;
+		int w = i >>> 6;
+		if (w >>> 6 >= blocks.length || (w & 63) >= blocks[w >>> 6].length)
+			reallocate(w + 1);
+		long[] block = block(w >>> 6);
+		block[w & 63] |= 1L << i;
+		summary[w >>> 6] |= 1L << w;
+		size++;
+	}
+
+	/**
+	 * Removes i from the members.
+	 *
+	 * @param i The integer.
+	 */
+	public void remove(int i) {
+		if (!contains(i))
+			return;
+		int w = i >>> 6;
+		long[] block = block(w >>> 6);
+		block[w & 63] &= ~(1L << i);
+		if (block[w & 63] == 0)
+			summary[w >>> 6] &= ~(1L << w);
+		size--;
+	}
+
+	/**
+	 * The least member greater than or equal to from.
+	 *
+	 * @param from Where to start looking.
+	 * @return the member, or -1 if there is none
+	 * @requires from >= 0
+	 */
+	public int next(int from) {
+		int w = from >>> 6;
+		if (w >>> 6 >= blocks.length)
+			return -1;
+		long[] block = blocks[w >>> 6];
+		if ((w & 63) < block.length) {
+			long bits = block[w & 63] & -1L << from;
+			if (bits != 0)
+				return w << 6 | Long.numberOfTrailingZeros(bits);
+		}
+		// find the next non-zero word through the summary
+		w++;
+		int s = w >>> 6;
+		if (s >= summary.length)
+			return -1;
+		long sbits = summary[s] & -1L << w;
+		while (sbits == 0) {
+			if (++s == summary.length)
+				return -1;
+			sbits = summary[s];
+		}
+		w = s << 6 | Long.numberOfTrailingZeros(sbits);
+		return w << 6 | Long.numberOfTrailingZeros(blocks[s][w & 63]);
+	}
+
+	/**
+	 * The greatest member.
+	 *
+	 * @return the member, or -1 if there is none
+	 */
+	public int last() {
+		for (int s = summary.length - 1; s >= 0; s--) {
+			if (summary[s] != 0) {
+				int w = s << 6 | 63 - Long.numberOfLeadingZeros(summary[s]);
+				return w << 6 | 63 - Long.numberOfLeadingZeros(blocks[s][w & 63]);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The b-th block, to be changed: after a fork, the arrays of blocks and of
+	 * the summary, and then the block, are first replaced by copies of their
+	 * own.
+	 */
+	private long[] block(int b) {
+		if (shared) {
+			blocks = blocks.clone();
+			summary = summary.clone();
+			shared = false;
+		}
+		if (owned != null && (owned[b >>> 6] & 1L << b) == 0) {
+			blocks[b] = blocks[b].clone();
+			owned[b >>> 6] |= 1L << b;
+		}
+		return blocks[b];
+	}
+
+	/**
+	 * Move the arrays to larger ones, able to hold at least the given number of
+	 * words. The blocks it makes, or copies, belong to this set.
+	 */
+	private void reallocate(int nWords) {
+		int oldBlocks = blocks.length;
+		int nBlocks = Math.max((nWords + BLOCK - 1) / BLOCK, oldBlocks);
+		if (nBlocks > oldBlocks)
+			nBlocks = Math.max(nBlocks, oldBlocks * 2);
+		blocks = Arrays.copyOf(blocks, nBlocks);
+		summary = Arrays.copyOf(summary, nBlocks);
+		shared = false;
+		if (owned != null)
+			owned = Arrays.copyOf(owned, (nBlocks + 63) >>> 6);
+
+		// the first block is shorter only while it is the only one
+		int firstLength = nBlocks > 1 ? BLOCK : Math.min(Math.max(nWords, blocks[0].length * 2), BLOCK);
+		if (blocks[0].length < firstLength) {
+			blocks[0] = Arrays.copyOf(blocks[0], firstLength);
+			if (owned != null)
+				owned[0] |= 1L;
+		}
+		for (int b = oldBlocks; b < nBlocks; b++) {
+			blocks[b] = new long[BLOCK];
+			if (owned != null)
+				owned[b >>> 6] |= 1L << b;
+		}
+	}
+}
@@ -0,0 +1,241 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A binary min-heap over the integers 0, 1, 2, ... (typically queue indices),
+ * each one with a long key. Besides the usual heap operations, the position of
+ * every element is recorded, so that the key of any element can be changed, or
+ * the element removed, in logarithmic time.
+ *
+ * Elements with equal keys come out in no particular order; clients that need
+ * a tie-break must encode it in the key.
+ *
+ */
+class IndexedMinHeap {
+
+	/**
+	 * The length of initial arrays.
+	 */
+	private static final int DEFAULT_CAPACITY = 4;
+
+	/**
+	 * The elements in heap order: heap[0] is the element with the least key.
+	 */
+	private int[] heap;
+
+	/**
+	 * The key of each element, indexed by element.
+	 */
+	private long[] keys;
+
+	/**
+	 * The position of each element in heap, or -1 if it is not in the heap.
+	 */
+	private int[] pos;
+
+	/**
+	 * The number of elements in the heap.
+	 */
+	private int size;
+
+	/**
+	 * Construct an empty heap.
+	 */
+	public IndexedMinHeap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Construct an empty heap ready to hold the elements 0 to capacity-1.
+	 *
+	 * @param capacity The expected greatest element plus one.
+	 */
+	public IndexedMinHeap(int capacity) {
+		capacity = Math.max(capacity, 1);
+		heap = new int[capacity];
+		keys = new long[capacity];
+		pos = new int[capacity];
+		Arrays.fill(pos, -1);
+		size = 0;
+	}
+
+	/**
+	 * The number of elements in the heap.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Is this heap empty?
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Is element i in the heap?
+	 *
+	 * @param i The element.
+	 */
+	public boolean contains(int i) {
+		return i < pos.length && pos[i] >= 0;
+	}
+
+	/**
+	 * The key of element i.
+	 *
+	 * @param i The element.
+	 * @requires contains(i)
+	 */
+	public long key(int i) {
+		return keys[i];
+	}
+
+	/**
+	 * The element with the least key.
+	 *
+	 * @throws NoSuchElementException if the heap is empty
+	 */
+	public int peek() {
+		if (size == 0)
+			throw new NoSuchElementException();
+		return heap[0];
+	}
+
+	/**
+	 * The least key in the heap.
+	 *
+	 * @throws NoSuchElementException if the heap is empty
+	 */
+	public long peekKey() {
+		return keys[peek()];
+	}
+
+	/**
+	 * Removes and returns the element with the least key.
+	 *
+	 * @throws NoSuchElementException if the heap is empty
+	 */
+	public int poll() {
+		int top = peek();
+		remove(top);
+		return top;
+	}
+
+	/**
+	 * Adds element i with the given key.
+	 *
+	 * @param i   The element.
+	 * @param key Its key.
+	 * @requires i >= 0 && !contains(i)
+	 */
+	public void insert(int i, long key) {
+		if (i >= pos.length)
+			reallocate(i + 1);
+		keys[i] = key;
+		heap[size] = i;
+		pos[i] = size;
+		size++;
+		siftUp(pos[i]);
+	}
+
+	/**
+	 * Changes the key of element i.
+	 *
+	 * @param i   The element.
+	 * @param key Its new key.
+	 * @requires contains(i)
+	 */
+	public void update(int i, long key) {
+		long old = keys[i];
+		keys[i] = key;
+		if (key < old)
+			siftUp(pos[i]);
+		else if (key > old)
+			siftDown(pos[i]);
+	}
+
+	/**
+	 * Removes element i from the heap.
+	 *
+	 * @param i The element.
+	 * @requires contains(i)
+	 */
+	public void remove(int i) {
+		int p = pos[i];
+		size--;
+		pos[i] = -1;
+		if (p == size)
+			return;
+		int last = heap[size];
+		heap[p] = last;
+		pos[last] = p;
+		siftUp(p);
+		siftDown(pos[last]);
+	}
+
+	/**
+	 * Removes all elements from the heap.
+	 */
+	public void clear() {
+		for (int k = 0; k < size; k++)
+			pos[heap[k]] = -1;
+		size = 0;
+	}
+
+	/**
+	 * Moves the element at position p up until its parent has a smaller key.
+	 */
+	private void siftUp(int p) {
+		int e = heap[p];
+		long k = keys[e];
+		while (p > 0) {
+			int parent = (p - 1) >>> 1;
+			int pe = heap[parent];
+			if (keys[pe] <= k)
+				break;
+			heap[p] = pe;
+			pos[pe] = p;
+			p = parent;
+		}
+		heap[p] = e;
+		pos[e] = p;
+	}
+
+	/**
+	 * Moves the element at position p down until its children have larger keys.
+	 */
+	private void siftDown(int p) {
+		int e = heap[p];
+		long k = keys[e];
+		int half = size >>> 1;
+		while (p < half) {
+			int child = 2 * p + 1;
+			int right = child + 1;
+			if (right < size && keys[heap[right]] < keys[heap[child]])
+				child = right;
+			int ce = heap[child];
+			if (k <= keys[ce])
+				break;
+			heap[p] = ce;
+			pos[ce] = p;
+			p = child;
+		}
+		heap[p] = e;
+		pos[e] = p;
+	}
+
+	/**
+	 * Move the arrays to larger ones, able to hold at least the elements 0 to
+	 * capacity-1.
+	 */
+	private void reallocate(int capacity) {
+		int newLength = Math.max(capacity, pos.length * 2);
+		heap = Arrays.copyOf(heap, newLength);
+		keys = Arrays.copyOf(keys, newLength);
+		int oldLength = pos.length;
+		pos = Arrays.copyOf(pos, newLength);
+		Arrays.fill(pos, oldLength, newLength, -1);
+	}
+}
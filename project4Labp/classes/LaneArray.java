@@ -0,0 +1,192 @@
+import java.util.Arrays;
+
+/**
+ * An array indexed by lane (a queue, a histogram, ... per lane) that grows as
+ * lanes are set, kept in chunks of 64 elements and pages of 64 chunks: element
+ * i is element i & 63 of chunk i >>> 6 & 63 of page i >>> 12. A chunk or a page
+ * is made when the first element in it is set.
+ *
+ * A fork shares the pages and chunks: afterwards, each of the two arrays
+ * copies a page or a chunk the first time it sets an element in it, and the
+ * array of pages (one entry per 4,096 elements) on its first change. The
+ * elements are shared too: owned tells whether an element was set by this
+ * array since the last fork, and so may be changed in place by it alone.
+ *
+ * @param <T> The type of the elements.
+ *
+ */
+class LaneArray<T> {
+
+	/**
+	 * The number of elements in a chunk, and of chunks in a page.
+	 */
+	private static final int CHUNK = 64;
+
+	/**
+	 * The elements: element i is pages[i >>> 12][i >>> 6 & 63][i & 63], null if
+	 * it was never set; a chunk or a page is null if none of its elements was
+	 * set.
+	 */
+	private Object[][][] pages;
+
+	/**
+	 * One bit per element of each page, set if it was set by this array since
+	 * it copied its chunk (or since the chunk was made): bit i of
+	 * set[i >>> 12][i >>> 6 & 63].
+	 */
+	private long[][] set;
+
+	/**
+	 * After a fork, pages and set are shared with the other array until this
+	 * one changes them; page p belongs to this array alone only if bit p of
+	 * ownedPages is set, and its chunk k only if bit k of ownedChunks[p] is set.
+	 * Both are null if the array was never forked.
+	 */
+	private boolean shared;
+	private long[] ownedPages;
+	private long[] ownedChunks;
+
+	/**
+	 * Construct an array with no element set, ready to hold the elements 0 to
+	 * capacity-1.
+	 *
+	 * @param capacity The expected greatest index plus one.
+	 */
+	public LaneArray(int capacity) {
+		int nPages = Math.max((capacity + CHUNK * CHUNK - 1) / (CHUNK * CHUNK), 1);
+		pages = new Object[nPages][][];
+		set = new long[nPages][];
+	}
+
+	/**
+	 * An array with the elements of other, sharing its pages (see fork).
+	 */
+	private LaneArray(LaneArray<T> other) {
+		pages = other.pages;
+		set = other.set;
+		shared = true;
+		ownedPages = new long[(pages.length + 63) >>> 6];
+		ownedChunks = new long[pages.length];
+	}
+
+	/**
+	 * An array with the same elements as this one, from which it evolves
+	 * independently. It takes constant time; afterwards each of the two arrays
+	 * copies a few words per 4,096 elements on its first change, and the pages
+	 * and chunks it changes. No element is owned by either array after it.
+	 */
+	public LaneArray<T> fork() {
+		shared = true;
+		ownedPages = new long[(pages.length + 63) >>> 6];
+		ownedChunks = new long[pages.length];
+		return new LaneArray<>(this);
+	}
+
+	/**
+	 * The number of elements the array holds without moving to a larger array
+	 * of pages.
+	 */
+	public int capacity() {
+		return pages.length * CHUNK * CHUNK;
+	}
+
+	/**
+	 * The i-th element.
+	 *
+	 * @param i The index.
+	 * @return the element, or null if it was never set
+	 * @requires i >= 0
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int i) {
+		if (i >>> 12 >= pages.length)
+			return null;
+		Object[][] page = pages[i >>> 12];
+		if (page == null)
+			return null;
+		Object[] chunk = page[i >>> 6 & 63];
+		return chunk == null ? null : (T) chunk[i & 63];
+	}
+
+	/**
+	 * The i-th element, if this array set it since the last fork, so that no
+	 * other array holds it.
+	 *
+	 * @param i The index.
+	 * @return the element, or null if it is shared or was never set
+	 * @requires i >= 0
+	 */
+	public T owned(int i) {
+		int p = i >>> 12;
+		if (p >= pages.length || set[p] == null || (set[p][i >>> 6 & 63] & 1L << i) == 0)
+			return null;
+		if (ownedChunks != null && (ownedChunks[p] & 1L << (i >>> 6)) == 0)
+			return null;
+		return get(i);
+	}
+
+	/**
+	 * Sets the i-th element, which this array owns from then on.
+	 *
+	 * @param i     The index.
+	 * @param value The element.
+	 * @requires i >= 0
+	 */
+	public void set(int i, T value) {
+		if (i >>> 12 >= pages.length)
+			reallocate((i >>> 12) + 1);
+		chunk(i >>> 6)[i & 63] = value;
+		set[i >>> 12][i >>> 6 & 63] |= 1L << i;
+	}
+
+	/**
+	 * The c-th chunk, to be changed: after a fork, the arrays of pages and of
+	 * set, then the page and its part of set, and then the chunk, are first
+	 * replaced by copies of their own. A page or chunk that does not exist yet
+	 * is made.
+	 */
+	private Object[] chunk(int c) {
+		if (shared) {
+			pages = pages.clone();
+			set = set.clone();
+			shared = false;
+		}
+		int p = c >>> 6;
+		if (pages[p] == null) {
+			pages[p] = new Object[CHUNK][];
+			set[p] = new long[CHUNK];
+			if (ownedPages != null)
+				ownedPages[p >>> 6] |= 1L << p;
+		} else if (ownedPages != null && (ownedPages[p >>> 6] & 1L << p) == 0) {
+			pages[p] = pages[p].clone();
+			set[p] = set[p].clone();
+			ownedPages[p >>> 6] |= 1L << p;
+		}
+		Object[][] page = pages[p];
+		if (page[c & 63] == null) {
+			page[c & 63] = new Object[CHUNK];
+			if (ownedChunks != null)
+				ownedChunks[p] |= 1L << c;
+		} else if (ownedChunks != null && (ownedChunks[p] & 1L << c) == 0) {
+			page[c & 63] = page[c & 63].clone();
+			set[p][c & 63] = 0;
+			ownedChunks[p] |= 1L << c;
+		}
+		return page[c & 63];
+	}
+
+	/**
+	 * Move the arrays to larger ones, able to hold at least the given number of
+	 * pages.
+	 */
+	private void reallocate(int nPages) {
+		nPages = Math.max(nPages, pages.length * 2);
+		pages = Arrays.copyOf(pages, nPages);
+		set = Arrays.copyOf(set, nPages);
+		shared = false;
+		if (ownedPages != null) {
+			ownedPages = Arrays.copyOf(ownedPages, (nPages + 63) >>> 6);
+			ownedChunks = Arrays.copyOf(ownedChunks, nPages);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative int values (typically times, in time units)
+ * whose memory does not depend on how many values are recorded.
+ *
+ * Values below 32 have a bucket each; above that, each power of two is split
+ * into 16 buckets of equal width, so that a value is known within 1/16 (about
+ * 6%) of itself. The buckets are only allocated up to the greatest value
+ * recorded so far, and there are never more than 448 of them.
+ *
+ * All histograms use the same buckets, so that any two can be merged, e.g. the
+ * histograms of the lanes of a highway, or of several runs of a simulation.
+ *
+ */
+public class LogHistogram {
+
+	/**
+	 * Values below 2^SUB_BITS have a bucket each; above that, the SUB_BITS
+	 * highest bits of a value (the first of which is 1) give its bucket within
+	 * its power of two.
+	 */
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int HALF_COUNT = SUB_COUNT / 2;
+
+	/**
+	 * The number of values in each bucket, up to the bucket of the greatest
+	 * value so far.
+	 */
+	private long[] counts;
+
+	/**
+	 * The number of values, their sum, and the least and the greatest of them.
+	 */
+	private long count;
+	private long sum;
+	private int min;
+	private int max;
+
+	/**
+	 * Construct an empty histogram.
+	 */
+	public LogHistogram() {
+		counts = new long[SUB_COUNT];
+		count = 0;
+		sum = 0;
+		min = Integer.MAX_VALUE;
+		max = 0;
+	}
+
+	/**
+	 * Construct a histogram with the same values as another one.
+	 *
+	 * @param other The histogram to copy
+	 */
+	public LogHistogram(LogHistogram other) {
+		counts = other.counts.clone();
+		count = other.count;
+		sum = other.sum;
+		min = other.min;
+		max = other.max;
+	}
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value The value
+	 * @requires value >= 0
+	 */
+	public void record(int value) {
+		int b = bucket(value);
+		if (b >= counts.length)
+			counts = Arrays.copyOf(counts, b + 1);
+		counts[b]++;
+		count++;
+		sum += value;
+		if (value < min)
+			min = value;
+		if (value > max)
+			max = value;
+	}
+
+	/**
+	 * Adds all the values of another histogram to this one.
+	 *
+	 * @param other The histogram whose values are added
+	 */
+	public void merge(LogHistogram other) {
+		if (other.count == 0)
+			return;
+		if (other.counts.length > counts.length)
+			counts = Arrays.copyOf(counts, other.counts.length);
+		for (int b = 0; b < other.counts.length; b++)
+			counts[b] += other.counts[b];
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * Writes this histogram, to be read back with read.
+	 *
+	 * @param out Where to write it
+	 * @throws IOException
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(counts.length);
+		for (long c : counts)
+			out.writeLong(c);
+		out.writeLong(count);
+		out.writeLong(sum);
+		out.writeInt(min);
+		out.writeInt(max);
+	}
+
+	/**
+	 * Reads a histogram written by write.
+	 *
+	 * @param in Where to read it from
+	 * @return the histogram
+	 * @throws IOException
+	 */
+	public static LogHistogram read(DataInput in) throws IOException {
+		LogHistogram h = new LogHistogram();
+		int length = in.readInt();
+		if (length < SUB_COUNT || length > bucket(Integer.MAX_VALUE) + 1)
+			throw new IOException("Not a histogram: " + length + " buckets");
+		h.counts = new long[length];
+		for (int b = 0; b < length; b++)
+			h.counts[b] = in.readLong();
+		h.count = in.readLong();
+		h.sum = in.readLong();
+		h.min = in.readInt();
+		h.max = in.readInt();
+		return h;
+	}
+
+	/**
+	 * Removes all the values.
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum = 0;
+		min = Integer.MAX_VALUE;
+		max = 0;
+	}
+
+	/**
+	 * The number of values.
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * The least value, or 0 if there is none.
+	 */
+	public int min() {
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * The greatest value, or 0 if there is none.
+	 */
+	public int max() {
+		return max;
+	}
+
+	/**
+	 * The mean of the values (exact, not taken from the buckets), or NaN if
+	 * there is none.
+	 */
+	public double mean() {
+		return (double) sum / count;
+	}
+
+	/**
+	 * The value below or at which lie the given percentage of the values: the
+	 * greatest value of the bucket where that percentage is reached (but no
+	 * greater than max()), so that it is exact below 32 and otherwise within
+	 * 1/16 of the exact percentile, above it.
+	 *
+	 * @param percent The percentage, e.g. 99 for the 99th percentile
+	 * @return the value, or 0 if there is none
+	 * @requires 0 <= percent <= 100
+	 */
+	public int percentile(double percent) {
+		if (count == 0)
+			return 0;
+		// the rank of the value, from 1 to count
+		long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+		long seen = 0;
+		for (int b = 0; b < counts.length; b++) {
+			seen += counts[b];
+			if (seen >= rank)
+				return Math.min(highestIn(b), max);
+		}
+		return max;
+	}
+
+	/**
+	 * The bucket of a value.
+	 */
+	private static int bucket(int value) {
+		if (value < SUB_COUNT)
+			return value;
+		int shift = 32 - Integer.numberOfLeadingZeros(value) - SUB_BITS;
+		// value >>> shift is between HALF_COUNT and SUB_COUNT - 1
+		return shift * HALF_COUNT + (value >>> shift);
+	}
+
+	/**
+	 * The greatest value whose bucket is b.
+	 */
+	private static int highestIn(int b) {
+		if (b < SUB_COUNT)
+			return b;
+		int shift = b / HALF_COUNT - 1;
+		long top = HALF_COUNT + b % HALF_COUNT;
+		return (int) Math.min(Integer.MAX_VALUE, ((top + 1) << shift) - 1);
+	}
+
+	/**
+	 * The textual representation of this histogram: the number of values and
+	 * a few statistics.
+	 */
+	public String toString() {
+		return String.format("count %d min %d p50 %d p95 %d p99 %d max %d", count, min(), percentile(50),
+				percentile(95), percentile(99), max);
+	}
+}
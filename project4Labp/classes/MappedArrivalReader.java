@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a text input file (the format of highwayTolls.txt) by memory-mapping
+ * it and parsing the numbers by hand, instead of through the regular
+ * expressions of a Scanner. Values are separated by any amount of whitespace,
+ * line breaks included (\n, \r\n or a lone \r), as Scanner accepts.
+ *
+ * Files larger than one mapping are mapped one window at a time; a value that
+ * runs into the end of a window is read again from a window that starts with
+ * it. Reading values allocates nothing, except for doubles with more than 15
+ * significant digits or an exponent, which are handed to Double.parseDouble.
+ *
+ */
+public class MappedArrivalReader implements ArrivalSource {
+
+	/**
+	 * The length of each mapped window of the file.
+	 */
+	private static final long WINDOW = 1L << 30;
+
+	/**
+	 * Values are seldom longer than this: when fewer bytes than this are left in
+	 * the window before a value, the window is moved forward, so that values
+	 * are hardly ever read twice. It also bounds the text of a value that cannot
+	 * be read in the exception thrown.
+	 */
+	private static final int MAX_VALUE_LENGTH = 64;
+
+	/**
+	 * Powers of ten that are exact doubles.
+	 */
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+
+	private final FileChannel channel;
+	private final long fileSize;
+	// the length of the windows, WINDOW but in tests
+	private final long windowLength;
+	// the current window, starting at windowStart in the file
+	private MappedByteBuffer window;
+	private long windowStart;
+	// the position of the next byte to read, within the window
+	private int pos;
+
+	/**
+	 * Constructor
+	 *
+	 * @param file The input file
+	 * @throws IOException if the file cannot be opened
+	 */
+	public MappedArrivalReader(Path file) throws IOException {
+		this(file, WINDOW);
+	}
+
+	/**
+	 * A reader that maps windows of the given length, so that tests can cross
+	 * window ends with small files.
+	 *
+	 * @requires windowLength > 0
+	 */
+	MappedArrivalReader(Path file, long windowLength) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		fileSize = channel.size();
+		this.windowLength = windowLength;
+		map(0);
+	}
+
+	/**
+	 * The position in the file of the next byte to read.
+	 */
+	@Override
+	public long position() {
+		return windowStart + pos;
+	}
+
+	/**
+	 * Continues reading from a position in the file.
+	 *
+	 * @param position The position
+	 * @requires 0 <= position <= the size of the file
+	 */
+	@Override
+	public void seek(long position) {
+		map(position);
+	}
+
+	@Override
+	public boolean hasNext() {
+		return skipWhitespace();
+	}
+
+	@Override
+	public int nextInt() {
+		if (!skipWhitespace())
+			throw new NoSuchElementException();
+		int start = pos;
+		boolean negative = false;
+		int b = window.get(pos);
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			pos++;
+		}
+		long value = 0;
+		int digits = 0;
+		while (pos < window.limit() && isDigit(b = window.get(pos))) {
+			value = value * 10 + (b - '0');
+			if (value > Integer.MAX_VALUE + 1L)
+				throw mismatch(start);
+			digits++;
+			pos++;
+		}
+		if (crossesWindow(start))
+			return nextInt();
+		if (digits == 0 || pos < window.limit() && !isWhitespace(window.get(pos)))
+			throw mismatch(start);
+		if (negative)
+			value = -value;
+		if (value > Integer.MAX_VALUE)
+			throw mismatch(start);
+		return (int) value;
+	}
+
+	@Override
+	public double nextDouble() {
+		if (!skipWhitespace())
+			throw new NoSuchElementException();
+		int start = pos;
+		boolean negative = false;
+		int b = window.get(pos);
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			pos++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int significant = 0;
+		int decimals = 0;
+		boolean point = false;
+		while (pos < window.limit()) {
+			b = window.get(pos);
+			if (isDigit(b)) {
+				if (mantissa != 0 || b != '0')
+					significant++;
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if (point)
+					decimals++;
+			} else if (b == '.' && !point)
+				point = true;
+			else
+				break;
+			pos++;
+			if (significant > 15 || decimals >= POWERS_OF_TEN.length)
+				return slowDouble(start);
+		}
+		if (crossesWindow(start))
+			return nextDouble();
+		if (pos < window.limit() && !isWhitespace(window.get(pos)))
+			return slowDouble(start);
+		if (digits == 0)
+			throw mismatch(start);
+		// both operands are exact, so the quotient is correctly rounded, as in
+		// Double.parseDouble
+		double value = mantissa / POWERS_OF_TEN[decimals];
+		return negative ? -value : value;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Parses the value starting at position start with Double.parseDouble.
+	 */
+	private double slowDouble(int start) {
+		pos = start;
+		StringBuilder sb = new StringBuilder();
+		while (pos < window.limit() && !isWhitespace(window.get(pos)))
+			sb.append((char) window.get(pos++));
+		if (crossesWindow(start))
+			return slowDouble(0);
+		try {
+			return Double.parseDouble(sb.toString());
+		} catch (NumberFormatException e) {
+			throw new InputMismatchException(sb.toString());
+		}
+	}
+
+	/**
+	 * The exception for a value starting at position start that cannot be read;
+	 * the value is not consumed.
+	 */
+	private InputMismatchException mismatch(int start) {
+		pos = start;
+		StringBuilder sb = new StringBuilder();
+		while (pos < window.limit() && !isWhitespace(window.get(pos)) && sb.length() < MAX_VALUE_LENGTH)
+			sb.append((char) window.get(pos++));
+		pos = start;
+		return new InputMismatchException(sb.toString());
+	}
+
+	/**
+	 * Called when a value starting at position start was read up to position
+	 * pos: if it ran into the end of the window and the file goes on, it may go
+	 * on too, so the window is moved to start with it, to read it again.
+	 *
+	 * @return true if the window was moved
+	 * @throws InputMismatchException if the value is longer than a window
+	 */
+	private boolean crossesWindow(int start) {
+		if (pos < window.limit() || windowStart + window.limit() == fileSize)
+			return false;
+		if (start == 0)
+			throw mismatch(start);
+		map(windowStart + start);
+		return true;
+	}
+
+	/**
+	 * Skips whitespace, moving the window forward when the next value might not
+	 * be whole in it.
+	 *
+	 * @return true if there is a value to read
+	 */
+	private boolean skipWhitespace() {
+		while (true) {
+			if (pos > 0 && window.limit() - pos < MAX_VALUE_LENGTH && windowStart + window.limit() < fileSize)
+				map(windowStart + pos);
+			if (pos == window.limit())
+				return false;
+			if (!isWhitespace(window.get(pos)))
+				return true;
+			pos++;
+		}
+	}
+
+	/**
+	 * Maps the window of the file that starts at the given position.
+	 */
+	private void map(long start) {
+		try {
+			window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowLength, fileSize - start));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		windowStart = start;
+		pos = 0;
+	}
+
+	private static boolean isDigit(int b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isWhitespace(int b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B;
+	}
+}
@@ -0,0 +1,296 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * The integers 0, 1, 2, ... (typically queue indices), each one with a long
+ * key or none, in a tree of fan-out 16 whose nodes record the least key below
+ * each child and the element that has it, and within each node, a tournament:
+ * the least key, and the element with it, of each pair of children, of each
+ * pair of pairs, and so on. The element with the least key is found in
+ * constant time; changing a key updates the entries on its path, with one
+ * comparison each, up to the first one that does not change (about log2 of the
+ * number of elements at most, as in a binary heap).
+ *
+ * A fork shares the whole tree and takes constant time. Afterwards, each of the
+ * two trees replaces a node by a copy of its own the first time it changes it,
+ * so that each copies only the paths to the keys it changes.
+ *
+ * Used where an IndexedMinHeap would be, in the highways that can be forked
+ * (for the departures of an event-driven Highway): the sift of a heap moves
+ * elements all over its arrays, whereas a key here changes only the nodes
+ * above it.
+ *
+ */
+class MinTree {
+
+	private static final int BITS = 4;
+	private static final int FAN = 1 << BITS;
+	private static final int MASK = FAN - 1;
+
+	/**
+	 * The key of the elements that are not in the tree.
+	 */
+	private static final long NONE = Long.MAX_VALUE;
+
+	/**
+	 * A node: at FAN + s, a leaf holds the key of its s-th element, any other
+	 * node the least key below its s-th child (NONE if there is none), and the
+	 * element with it; at k, from FAN - 1 down to 1, the least of the keys at 2k
+	 * and 2k + 1 (the first one among equals), and the element with it. A node
+	 * may only be changed by the tree that owns it.
+	 */
+	private static final class Node {
+		final Object owner;
+		final long[] mins;
+		final int[] at;
+		final Node[] children;
+
+		Node(Object owner, boolean leaf) {
+			this.owner = owner;
+			mins = new long[2 * FAN];
+			Arrays.fill(mins, NONE);
+			at = new int[2 * FAN];
+			children = leaf ? null : new Node[FAN];
+		}
+
+		Node(Object owner, Node other) {
+			this.owner = owner;
+			mins = other.mins.clone();
+			at = other.at.clone();
+			children = other.children == null ? null : other.children.clone();
+		}
+	}
+
+	/**
+	 * The nodes that this tree may change are those it owns; a fork gives both
+	 * trees a new owner.
+	 */
+	private Object owner;
+
+	/**
+	 * The root, at the given height (0 if it is a leaf).
+	 */
+	private Node root;
+	private int height;
+
+	/**
+	 * The number of elements, the least key and the element with it.
+	 */
+	private int size;
+	private long least;
+	private int leastAt;
+
+	/**
+	 * The nodes on the path of the last key changed, by height.
+	 */
+	private Node[] path;
+
+	/**
+	 * Construct an empty tree.
+	 */
+	public MinTree() {
+		owner = new Object();
+		root = new Node(owner, true);
+		least = NONE;
+		leastAt = -1;
+		path = new Node[1];
+	}
+
+	/**
+	 * A tree with the elements and keys of other, sharing its nodes (see fork).
+	 */
+	private MinTree(MinTree other) {
+		owner = new Object();
+		root = other.root;
+		height = other.height;
+		size = other.size;
+		least = other.least;
+		leastAt = other.leastAt;
+		path = new Node[other.path.length];
+	}
+
+	/**
+	 * A tree with the same elements and keys as this one, from which it evolves
+	 * independently; it takes constant time, and each of the two trees copies
+	 * the nodes it changes afterwards.
+	 */
+	public MinTree fork() {
+		owner = new Object();
+		return new MinTree(this);
+	}
+
+	/**
+	 * The number of elements in the tree.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Is this tree empty?
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Is element i in the tree?
+	 *
+	 * @param i The element.
+	 * @requires i >= 0
+	 */
+	public boolean contains(int i) {
+		return key(i) != NONE;
+	}
+
+	/**
+	 * The key of element i.
+	 *
+	 * @param i The element.
+	 * @requires contains(i)
+	 */
+	public long key(int i) {
+		if ((long) i >>> BITS * (height + 1) != 0)
+			return NONE;
+		Node node = root;
+		for (int h = height; h > 0; h--) {
+			node = node.children[i >>> BITS * h & MASK];
+			if (node == null)
+				return NONE;
+		}
+		return node.mins[FAN + (i & MASK)];
+	}
+
+	/**
+	 * The element with the least key (the least element with it, if there are
+	 * several).
+	 *
+	 * @throws NoSuchElementException if the tree is empty
+	 */
+	public int peek() {
+		if (size == 0)
+			throw new NoSuchElementException();
+		return leastAt;
+	}
+
+	/**
+	 * The least key in the tree.
+	 *
+	 * @throws NoSuchElementException if the tree is empty
+	 */
+	public long peekKey() {
+		if (size == 0)
+			throw new NoSuchElementException();
+		return least;
+	}
+
+	/**
+	 * Removes and returns the element with the least key.
+	 *
+	 * @throws NoSuchElementException if the tree is empty
+	 */
+	public int poll() {
+		int top = peek();
+		remove(top);
+		return top;
+	}
+
+	/**
+	 * Adds element i with the given key.
+	 *
+	 * @param i   The element.
+	 * @param key Its key.
+	 * @requires i >= 0 && !contains(i) && key < Long.MAX_VALUE
+	 */
+	public void insert(int i, long key) {
+		set(i, key);
+		size++;
+	}
+
+	/**
+	 * Changes the key of element i.
+	 *
+	 * @param i   The element.
+	 * @param key Its new key.
+	 * @requires contains(i) && key < Long.MAX_VALUE
+	 */
+	public void update(int i, long key) {
+		set(i, key);
+	}
+
+	/**
+	 * Removes element i from the tree.
+	 *
+	 * @param i The element.
+	 * @requires contains(i)
+	 */
+	public void remove(int i) {
+		set(i, NONE);
+		size--;
+	}
+
+	/**
+	 * Sets the key of element i, NONE to remove it, copying the nodes on its
+	 * path that this tree does not own, and updates the nodes above it.
+	 */
+	private void set(int i, long key) {
+		while ((long) i >>> BITS * (height + 1) != 0)
+			addLevel();
+		if (root.owner != owner)
+			root = new Node(owner, root);
+		Node node = root;
+		for (int h = height; h > 0; h--) {
+			path[h] = node;
+			int s = i >>> BITS * h & MASK;
+			Node child = node.children[s];
+			if (child == null)
+				child = node.children[s] = new Node(owner, h == 1);
+			else if (child.owner != owner)
+				child = node.children[s] = new Node(owner, child);
+			node = child;
+		}
+
+		// the entries on the path, up to the first one that does not change
+		long min = key;
+		int at = i;
+		for (int h = 0;; h++) {
+			int k = FAN + (i >>> BITS * h & MASK);
+			long[] mins = node.mins;
+			int[] ats = node.at;
+			if (mins[k] == min && ats[k] == at)
+				return;
+			mins[k] = min;
+			ats[k] = at;
+			for (k >>>= 1; k > 0; k >>>= 1) {
+				int w = mins[2 * k + 1] < mins[2 * k] ? 2 * k + 1 : 2 * k;
+				if (mins[k] == mins[w] && ats[k] == ats[w])
+					return;
+				mins[k] = mins[w];
+				ats[k] = ats[w];
+			}
+			min = mins[1];
+			at = ats[1];
+			if (h == height)
+				break;
+			node = path[h + 1];
+		}
+		least = min;
+		leastAt = min == NONE ? -1 : at;
+	}
+
+	/**
+	 * Puts a new root above the current one, multiplying the number of
+	 * elements the tree can hold by FAN.
+	 */
+	private void addLevel() {
+		Node top = new Node(owner, false);
+		top.children[0] = root;
+		for (int k = FAN; k > 0; k >>>= 1) {
+			top.mins[k] = least;
+			top.at[k] = leastAt;
+		}
+		root = top;
+		height++;
+		path = Arrays.copyOf(path, height + 1);
+	}
+}
@@ -0,0 +1,130 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A bounded queue for any number of producers, which call enqueue and offer,
+ * and one consumer, the only one that calls front and dequeue; e.g. several
+ * threads reading roadside feeds and a thread running the simulation. isEmpty,
+ * size and toString may be called by any of them. Elements cannot be null.
+ *
+ * The elements are kept in a ring whose length is a power of two. Producers
+ * claim a position by advancing the tail index with a compare-and-set, and
+ * then publish the element by writing it to that position with release
+ * semantics; the consumer reads positions with acquire semantics, and a null
+ * position at the head of a non empty queue is one whose producer has yet to
+ * publish, which the consumer waits for. The head is written, with release
+ * semantics, by the consumer alone, after clearing the position it frees.
+ *
+ * @param <E> The type of the elements in the queue.
+ *
+ */
+public class MpscRingQueue<E> implements Queue<E> {
+
+	private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+
+	private final Object[] ring;
+	private final int mask;
+	// the index of the next element to dequeue and of the next position to be
+	// claimed; positions in the ring are the indices modulo its length
+	private final PaddedSequence head = new PaddedSequence();
+	private final PaddedSequence tail = new PaddedSequence();
+
+	/**
+	 * Construct an empty queue.
+	 *
+	 * @param capacity The most elements the queue holds at once, rounded up to a
+	 *                 power of two
+	 * @requires 0 < capacity <= 2^30
+	 */
+	public MpscRingQueue(int capacity) {
+		int length = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		ring = new Object[length];
+		mask = length - 1;
+	}
+
+	/**
+	 * The most elements the queue holds at once.
+	 */
+	public int capacity() {
+		return ring.length;
+	}
+
+	/**
+	 * Adds an element to the rear of this queue, if it is not full.
+	 *
+	 * @param e The object to be added
+	 * @return false if the queue is full
+	 * @requires e != null
+	 */
+	public boolean offer(E e) {
+		long t;
+		do {
+			t = tail.getAcquire();
+			if (t - head.getAcquire() >= ring.length)
+				return false;
+		} while (!tail.compareAndSet(t, t + 1));
+		SLOT.setRelease(ring, (int) t & mask, e);
+		return true;
+	}
+
+	/**
+	 * Adds an element to the rear of this queue, waiting for the consumer to make
+	 * room if the queue is full.
+	 *
+	 * @requires e != null
+	 */
+	@Override
+	public void enqueue(E e) {
+		for (int attempt = 0; !offer(e); attempt++)
+			PaddedSequence.backOff(attempt);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E front() {
+		int position = (int) head.getPlain() & mask;
+		Object e;
+		for (int attempt = 0; (e = SLOT.getAcquire(ring, position)) == null; attempt++)
+			PaddedSequence.backOff(attempt);
+		return (E) e;
+	}
+
+	@Override
+	public void dequeue() {
+		long h = head.getPlain();
+		int position = (int) h & mask;
+		for (int attempt = 0; SLOT.getAcquire(ring, position) == null; attempt++)
+			PaddedSequence.backOff(attempt);
+		ring[position] = null;
+		head.setRelease(h + 1);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public int size() {
+		// the head first: read after it, the tail is not behind it
+		long h = head.getAcquire();
+		return (int) (tail.getAcquire() - h);
+	}
+
+	/**
+	 * The textual representation of this queue, in format "<a, b, c<"; only
+	 * exact when the queue does not change meanwhile
+	 */
+	public String toString() {
+		StringBuilder result = new StringBuilder("<");
+		long h = head.getAcquire();
+		long t = tail.getAcquire();
+		for (long i = h; i < t; i++) {
+			if (i > h)
+				result.append(", ");
+			result.append(SLOT.getAcquire(ring, (int) i & mask));
+		}
+		result.append("<");
+		return result.toString();
+	}
+}
@@ -0,0 +1,299 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Variante de Highway em que os veiculos nao sao objetos: cada fila e uma
+ * VehicleQueue (chegada e duracao num long, portagem em centimos) e a gestao
+ * das filas (ativas, inativas, vazias, ocupacao) e feita diretamente sobre
+ * arrays, sem QueueSystem. Adicionar e processar veiculos nao aloca memoria,
+ * exceto quando uma fila cresce.
+ *
+ * O comportamento e a representacao textual sao os de Highway; o valor das
+ * portagens e somado em centimos.
+ *
+ * @author
+ *
+ */
+public class PackedHighway implements SimulatedHighway {
+
+    // Numero minimo de filas (porticos de portagens) que devem estar ativas
+    private int minActivatedQueues;
+    // Numero maximo de veiculos por fila
+    private int maxVehiclesPerQueue;
+    // Sequencia de filas e respetivo estado
+    private VehicleQueue[] queues;
+    private boolean[] activated;
+    private int nQueues;
+    private int nActive;
+    private int nVehicles;
+    private int currentQueue;
+    // Filas ativas por ocupacao (e indice), filas ativas por indice crescente e
+    // decrescente, filas inativas por indice e filas com veiculos
+    private IndexedMinHeap byMin;
+    private IndexedMinHeap actives;
+    private IndexedMinHeap activesDesc;
+    private IndexedMinHeap inactives;
+    private IndexSet busy;
+    // Unidades de tempo decorridas
+    private int elapsedTime;
+    // Tempo total de espera
+    private long totalWaitTime;
+    // Numero de veiculos cujo pagamento ja foi processado
+    private long numVehiclesProcessed;
+    // Valor total de portagens cobradas, em centimos
+    private long tollsCollectedCents;
+
+    /**
+     * Construtor
+     *
+     * @param minActivatedQueues   Numero minimo de filas que deve estar ativas
+     * @param maxVehiclesPerQueue  Numero maximo de veiculos por fila
+     *
+     * @requires minActivatedQueues > 0 && maxVehiclesPerQueue > 0
+     */
+    public PackedHighway(int minActivatedQueues, int maxVehiclesPerQueue) {
+        this.minActivatedQueues = minActivatedQueues;
+        this.maxVehiclesPerQueue = maxVehiclesPerQueue;
+        queues = new VehicleQueue[minActivatedQueues * 2];
+        activated = new boolean[minActivatedQueues * 2];
+        byMin = new IndexedMinHeap(minActivatedQueues * 2);
+        actives = new IndexedMinHeap(minActivatedQueues * 2);
+        activesDesc = new IndexedMinHeap(minActivatedQueues * 2);
+        inactives = new IndexedMinHeap(minActivatedQueues * 2);
+        busy = new IndexSet(minActivatedQueues * 2);
+        for (int i = 0; i < minActivatedQueues; i++) {
+            createQueue();
+            activateQueue(i);
+        }
+        currentQueue = 0;
+    }
+
+	/**
+     * Numero total de veiculos nas filas desta via rapida
+	 */
+	public int totalNrVehicles() {
+		return nVehicles;
+	}
+
+	/**
+     * Numero de filas ativas nesta via rapida
+	 */
+	public int nrActiveQueues() {
+		return nActive;
+	}
+
+	/**
+     * Numero medio de veiculos por fila ativa neste instante
+	 */
+	public double averageVehiclesPerQueue() {
+		return (double) totalNrVehicles()/nrActiveQueues();
+	}
+
+	/**
+     * Tempo medio de espera de veiculos na fila
+	 */
+	public double averageWaitingTime() {
+		return (double) totalWaitTime/numVehiclesProcessed;
+	}
+
+	/**
+	 * Valor total de portagens cobradas
+	 */
+	public double totalTolls() {
+		return tollsCollectedCents / 100.0;
+	}
+
+	/**
+     * Valor medio de portagens cobradas por veiculo processado
+     */
+	public double averageTolls() {
+		return totalTolls()/numVehiclesProcessed;
+	}
+
+	/**
+	 * Converte o valor de uma portagem para centimos
+	 *
+	 * @param toll O valor da portagem
+	 */
+	public static int toCents(double toll) {
+		return (int) Math.round(toll * 100);
+	}
+
+	/**
+     * Adiciona um veiculo a uma fila ativa, tal como Highway.addVehicle
+	 *
+	 * @param arrival   O instante de tempo em que o veiculo chegou a fila
+	 * @param duration  Unidades de tempo necessarias para processar o pagamento
+	 * @param tollCents Valor da portagem a pagar, em centimos
+	 * @requires arrival > 0 && duration > 0
+	 */
+	public void addVehicle(int arrival, int duration, int tollCents) {
+		int index = byMin.peek();
+		if (queues[index].size() >= maxVehiclesPerQueue) {
+			if (!inactives.isEmpty())
+				index = inactives.peek();
+			else {
+				createQueue();
+				index = nQueues - 1;
+			}
+			activateQueue(index);
+		}
+		currentQueue = index;
+		queues[index].enqueue(arrival, duration, tollCents);
+		nVehicles++;
+		if (queues[index].size() == 1)
+			busy.add(index);
+		byMin.update(index, minKey(index));
+	}
+
+	/**
+     * Adiciona os veiculos chegados no mesmo instante, um a um, pela ordem em
+     * que estao, com as portagens convertidas com toCents
+	 *
+	 * @param arrival   O instante de tempo em que os veiculos chegaram
+	 * @param durations Unidades de tempo necessarias para processar o pagamento
+	 *                  de cada veiculo
+	 * @param tolls     Valor da portagem a pagar por cada veiculo
+	 * @param n         O numero de veiculos
+	 * @requires arrival > 0 && 0 <= n && n <= durations.length && n <= tolls.length
+	 */
+	@Override
+	public void addArrivals(int arrival, int[] durations, double[] tolls, int n) {
+		for (int k = 0; k < n; k++)
+			addVehicle(arrival, durations[k], toCents(tolls[k]));
+	}
+
+	/**
+     * Processa uma unidade de tempo em todas as filas ativas, tal como
+     * Highway.updateActiveQueues
+	 */
+	public void updateActiveQueues() {
+		elapsedTime++;
+		for (int index = busy.next(0); index >= 0; index = busy.next(index + 1)) {
+			VehicleQueue lane = queues[index];
+			if (lane.decreaseFrontTimeUnit() == 0) {
+				totalWaitTime += elapsedTime - lane.frontArrival() - lane.frontDuration() + 1;
+				tollsCollectedCents += lane.frontToll();
+				numVehiclesProcessed++;
+				lane.dequeue();
+				nVehicles--;
+				if (lane.isEmpty())
+					busy.remove(index);
+				byMin.update(index, minKey(index));
+			}
+		}
+		currentQueue = activesDesc.peek();
+	}
+
+	/**
+     * Havendo mais do que uma fila vazia, desativa a fila vazia de menor indice,
+     * conquanto o numero minimo de filas ativas seja respeitado
+	 */
+	public void updateNumberActiveQueues() {
+		currentQueue = activesDesc.peek();
+		if (nActive - busy.size() > 1 && minActivatedQueues < nActive) {
+			int index = byMin.peek();
+			if (queues[index].isEmpty()) {
+				deactivateQueue(index);
+				// a fila atual passa a ser a primeira ativa
+				currentQueue = actives.peek();
+			}
+		}
+	}
+
+	/**
+	 * Avanca a simulacao ate ao instante time, processando cada unidade de tempo
+	 * tal como updateActiveQueues seguido de updateNumberActiveQueues
+	 *
+	 * @param time O instante ate ao qual se avanca
+	 */
+	public void advanceTo(int time) {
+		while (elapsedTime < time) {
+			updateActiveQueues();
+			updateNumberActiveQueues();
+		}
+	}
+
+	/**
+     * Representacao textual da via rapida, igual a de Highway
+	 */
+	public String toString() {
+        return Renderable.toString(this);
+    }
+
+	/**
+     * Escreve a representacao textual da via rapida em out, sem construir
+     * Strings com o conteudo das filas
+	 * 
+	 * @param out Onde escrever
+	 * @throws IOException se out a lancar
+	 */
+	@Override
+	public void appendTo(Appendable out) throws IOException {
+        String END_LINE = System.lineSeparator();
+        out.append("Minimum number of activated queues ");
+        Renderable.appendInt(out, minActivatedQueues);
+        out.append(END_LINE).append("Maximum number of vehicles per queue ");
+        Renderable.appendInt(out, maxVehiclesPerQueue);
+        out.append(END_LINE).append("Total number of elements in queue system ");
+        Renderable.appendInt(out, nVehicles);
+        out.append(END_LINE).append("Current queue ");
+        Renderable.appendInt(out, currentQueue);
+        out.append(END_LINE);
+        for (int i = 0; i < nQueues; i++) {
+            queues[i].appendTo(out);
+            out.append(activated[i] ? "    " : " not").append(" active").append(END_LINE);
+        }
+        out.append("Elapsed time ");
+        Renderable.appendInt(out, elapsedTime);
+        out.append(END_LINE).append("Total waiting time ");
+        Renderable.appendLong(out, totalWaitTime);
+        out.append(END_LINE).append("Number of vehicles processed ");
+        Renderable.appendLong(out, numVehiclesProcessed);
+        out.append(END_LINE).append(String.format("Total tolls collected %.2f", totalTolls())).append(END_LINE);
+    }
+
+	/**
+	 * Cria uma nova fila, inativa, no fim da sequencia
+	 */
+	private void createQueue() {
+		if (nQueues == queues.length) {
+			queues = Arrays.copyOf(queues, nQueues * 2);
+			activated = Arrays.copyOf(activated, nQueues * 2);
+		}
+		queues[nQueues] = new VehicleQueue();
+		inactives.insert(nQueues, nQueues);
+		nQueues++;
+	}
+
+	/**
+	 * Ativa a fila (vazia e inativa) de indice i
+	 */
+	private void activateQueue(int i) {
+		inactives.remove(i);
+		activated[i] = true;
+		nActive++;
+		byMin.insert(i, minKey(i));
+		actives.insert(i, i);
+		activesDesc.insert(i, -i);
+	}
+
+	/**
+	 * Desativa a fila (vazia e ativa) de indice i
+	 */
+	private void deactivateQueue(int i) {
+		byMin.remove(i);
+		actives.remove(i);
+		activesDesc.remove(i);
+		inactives.insert(i, i);
+		activated[i] = false;
+		nActive--;
+	}
+
+	/**
+	 * Chave da fila i em byMin: ocupacao e, em caso de empate, indice
+	 */
+	private long minKey(int i) {
+		return (long) queues[i].size() << 32 | i;
+	}
+}
@@ -0,0 +1,87 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A long counter alone in its cache line, for the indices of the ring queues:
+ * the head, written by the consumer, and the tail, written by the producers,
+ * would otherwise share a cache line and every write to one would slow down
+ * the reads of the other (false sharing).
+ *
+ * The value is surrounded by 56 bytes of padding on each side. The padding
+ * lives in the superclass and in the subclass of the class that declares the
+ * value, since the JVM keeps the fields of a class after those of its
+ * superclasses but may reorder the fields within a class.
+ *
+ */
+final class PaddedSequence extends PaddedSequenceValue {
+	long p11, p12, p13, p14, p15, p16, p17;
+
+	private static final VarHandle VALUE;
+	static {
+		try {
+			VALUE = MethodHandles.lookup().findVarHandle(PaddedSequenceValue.class, "value", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * Waits a little, in a loop that waits for another thread: spins at first,
+	 * and then yields the processor, in case the other thread needs it to make
+	 * progress.
+	 *
+	 * @param attempt How many times the loop has waited
+	 */
+	static void backOff(int attempt) {
+		if (attempt < 100)
+			Thread.onSpinWait();
+		else
+			Thread.yield();
+	}
+
+	/**
+	 * The value, read by the thread that writes it.
+	 */
+	long getPlain() {
+		return value;
+	}
+
+	/**
+	 * The value; later reads and writes of this thread are not moved before this
+	 * read, so it sees whatever was written before the matching setRelease.
+	 */
+	long getAcquire() {
+		return (long) VALUE.getAcquire(this);
+	}
+
+	/**
+	 * Sets the value; earlier reads and writes of this thread are not moved after
+	 * this write.
+	 */
+	void setRelease(long v) {
+		VALUE.setRelease(this, v);
+	}
+
+	/**
+	 * Sets the value to v if it is expected, atomically.
+	 *
+	 * @return true if the value was set
+	 */
+	boolean compareAndSet(long expected, long v) {
+		return VALUE.compareAndSet(this, expected, v);
+	}
+}
+
+/**
+ * The padding before the value of a PaddedSequence.
+ */
+abstract class PaddedSequenceLeftPad {
+	long p01, p02, p03, p04, p05, p06, p07;
+}
+
+/**
+ * The value of a PaddedSequence.
+ */
+abstract class PaddedSequenceValue extends PaddedSequenceLeftPad {
+	long value;
+}
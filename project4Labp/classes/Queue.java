@@ -1,51 +1,125 @@
-/**
- * API for mutable queues.
- *
- * @param <E> The type of the elements in the queue.
- */
-interface Queue<E> {
-
-	/**
-	 * Adds an element to the rear of this queue
-	 * 
-	 * @param e The object to be added
-	 */
-	public void enqueue(E e);
-
-	/**
-	 * Removes the element at the front of this queue
-	 * 
-	 * @requires !isEmpty()
-	 */
-	public void dequeue();
-
-	/**
-	 * The element at the front of this queue
-	 * 
-	 * @return e The element at the front of this queue
-	 * @requires !isEmpty()
-	 */
-	public E front();
-
-	/**
-	 * Is this queue empty?
-	 * 
-	 * @return true if this queue is empty
-	 */
-	public boolean isEmpty();
-
-	/**
-	 * How many elements are there in this queue
-	 * 
-	 * @return the number of elements in this queue
-	 */
-	public int size();
-
-	/**
-	 * Textual representation of the current state of this queue in the format <a1,
-	 * a2, a3, ..., an<
-	 * 
-	 * @return the Textual representation of this queue
-	 */
-	public String toString();
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * API for mutable queues.
+ *
+ * @param <E> The type of the elements in the queue.
+ */
+interface Queue<E> extends Renderable {
+
+	/**
+	 * Adds an element to the rear of this queue
+	 * 
+	 * @param e The object to be added
+	 */
+	public void enqueue(E e);
+
+	/**
+	 * Removes the element at the front of this queue
+	 * 
+	 * @requires !isEmpty()
+	 */
+	public void dequeue();
+
+	/**
+	 * The element at the front of this queue
+	 * 
+	 * @return e The element at the front of this queue
+	 * @requires !isEmpty()
+	 */
+	public E front();
+
+	/**
+	 * Is this queue empty?
+	 * 
+	 * @return true if this queue is empty
+	 */
+	public boolean isEmpty();
+
+	/**
+	 * How many elements are there in this queue
+	 * 
+	 * @return the number of elements in this queue
+	 */
+	public int size();
+
+	/**
+	 * Adds elements to the rear of this queue, in order
+	 * 
+	 * @param src The array holding the elements to be added
+	 * @param off The index in src of the first element to be added
+	 * @param len How many elements to add
+	 * @requires src != null && 0 <= off && 0 <= len && off + len <= src.length
+	 */
+	public default void enqueueAll(E[] src, int off, int len) {
+		for (int k = off; k < off + len; k++)
+			enqueue(src[k]);
+	}
+
+	/**
+	 * Removes elements from the front of this queue, passing each one to a
+	 * consumer, in order
+	 * 
+	 * @param sink Receives each element removed
+	 * @param max  The most elements to remove
+	 * @return how many elements were removed: the least of max and size()
+	 * @requires sink != null && max >= 0
+	 */
+	public default int drainTo(Consumer<? super E> sink, int max) {
+		int n = Math.min(max, size());
+		for (int k = 0; k < n; k++) {
+			sink.accept(front());
+			dequeue();
+		}
+		return n;
+	}
+
+	/**
+	 * Removes elements from the front of this queue into an array, in order
+	 * 
+	 * @param dst The array where the elements removed are stored
+	 * @param off The index in dst where the first element removed is stored
+	 * @param max The most elements to remove
+	 * @return how many elements were removed: the least of max and size()
+	 * @requires dst != null && 0 <= off && 0 <= max && off + max <= dst.length
+	 */
+	public default int drainTo(E[] dst, int off, int max) {
+		int n = Math.min(max, size());
+		for (int k = 0; k < n; k++) {
+			dst[off + k] = front();
+			dequeue();
+		}
+		return n;
+	}
+
+	/**
+	 * Removes elements from the front of this queue
+	 * 
+	 * @param n How many elements to remove
+	 * @requires 0 <= n <= size()
+	 */
+	public default void removeFront(int n) {
+		for (int k = 0; k < n; k++)
+			dequeue();
+	}
+
+	/**
+	 * Textual representation of the current state of this queue in the format <a1,
+	 * a2, a3, ..., an<
+	 * 
+	 * @return the Textual representation of this queue
+	 */
+	public String toString();
+
+	/**
+	 * Writes the textual representation of this queue (see toString) to out;
+	 * by default, writes the String toString returns
+	 * 
+	 * @param out Where to write it
+	 * @throws IOException if out throws it
+	 */
+	public default void appendTo(Appendable out) throws IOException {
+		out.append(toString());
+	}
 }
\ No newline at end of file
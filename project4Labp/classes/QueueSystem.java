@@ -1,154 +1,363 @@
-/**
- * A queue system is a sequence of FIFO queues.
- * 
- * Queues are identified by a non-negative index (the first queue has index 0)
- * 
- * Queues inside a queue system can be active or not.
- * 
- * Queue commands (enqueue, dequeue, front, isEmpty) are only valid on active
- * queues.
- * 
- * All deactivated queues must be empty.
- * 
- * It is possible to create new queues. A new queue must be added at the end of
- * the sequence of existing queues. A new queue is inactive.
- * 
- * There is always one queue denoted the current queue.
- * 
- * The current queue must always be an active queue.
- * 
- * When a queue command is executed, it applies to the current queue.
- * 
- * @author Joao Neto
- *
- * @param <E> The type of elements saved in the queue system
- */
-public interface QueueSystem<E> {
-
-	/**
-	 * The index of the current queue
-	 * 
-	 * @return the index of the current queue
-	 */
-	public int current();
-
-	/**
-	 * Adds an element to the rear of the current queue
-	 * 
-	 * @requires isActivated(current())
-	 * @param e The object to insert.
-	 * @throws IllegalQueueRequest if the current queue is not activated
-	 */
-	public void enqueue(E e) throws IllegalQueueRequest;
-
-	/**
-	 * Removes the element at the front of the current queue.
-	 * 
-	 * @requires isActivated(current())
-	 * @requires !isEmpty()
-	 * @throws IllegalQueueRequest if the current queue is not activated or is empty
-	 */
-	public void dequeue() throws IllegalQueueRequest;
-
-	/**
-	 * The element at the front of the current queue.
-	 * 
-	 * @return The element at the front of the current queue.
-	 * @requires isActivated(current())
-	 * @requires !isEmpty()
-	 * @throws IllegalQueueRequest if the current queue is not activated or is empty
-	 */
-	public E front() throws IllegalQueueRequest;
-
-	/**
-	 * The current queue is empty?
-	 * 
-	 * @return True if the current queue is empty.
-	 * @throws IllegalQueueRequest if queue is not active
-	 */
-	public boolean isEmpty() throws IllegalQueueRequest;
-
-	/**
-	 * The total number of queues in this queue system
-	 * 
-	 * @return the number of all existing queues
-	 */
-	public int howManyQueues();
-
-	/**
-	 * The total number of active queues in this queue system
-	 * 
-	 * @return the number of active queues
-	 */
-	public int howManyActiveQueues();
-
-	/**
-	 * The total number of elements inside this queue system
-	 * 
-	 * @return the number of elements in the queue system
-	 */
-	public int size();
-
-	/**
-	 * Creates a new queue at the end of this queue system, This new queue is non
-	 * activated
-	 * 
-	 * @ensures !isActivated(howManyQueues()-1)
-	 */
-	public void create();
-
-	/**
-	 * Verifies whether the i-th queue is an active queue
-	 * 
-	 * @param i the index of the queue
-	 * @requires i >= 0 && i < howManyQueues()
-	 */
-	public boolean isActivated(int i);
-
-	/**
-	 * Makes the i-th queue an active queue
-	 * 
-	 * @ensures isActivated(i)
-	 * @param i the index of the queue
-	 * @requires i >= 0 && i < howManyQueues()
-	 */
-	public void activate(int i);
-
-	/**
-	 * Makes the i-th queue a deactivated queue
-	 * 
-	 * @requires i >= 0 && i < howManyQueues() && the i-th queue is empty
-	 * @ensures !isActivated(i)
-	 * @param i the index of the queue
-	 * @throws IllegalQueueRequest if the i-th queue is not empty
-	 */
-	public void deactivate(int i) throws IllegalQueueRequest;
-
-	/**
-	 * Makes the i-th queue, the current queue
-	 * 
-	 * @requires isActivated(i)
-	 * @ensures current() == i
-	 * @param i the index of the new current queue
-	 * @throws IllegalQueueRequest if the queue is not activated
-	 */
-	public void focus(int i) throws IllegalQueueRequest;
-
-	/**
-	 * Focus on a queue with minimal occupation (if several equal, pick the queue
-	 * with the least index)
-	 * 
-	 * @ensures isActivated(current())
-	 * @return the number of elements in that queue
-	 */
-	public int focusMin();
-
-	/**
-	 * Focus on a queue with maximal occupation (if several equal, pick the queue
-	 * with the least index)
-	 * 
-	 * @ensures isActivated(current())
-	 * @return the number of elements in that queue
-	 */
-	public int focusMax();
-}
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * A queue system is a sequence of FIFO queues.
+ * 
+ * Queues are identified by a non-negative index (the first queue has index 0)
+ * 
+ * Queues inside a queue system can be active or not.
+ * 
+ * Queue commands (enqueue, dequeue, front, isEmpty) are only valid on active
+ * queues.
+ * 
+ * All deactivated queues must be empty.
+ * 
+ * It is possible to create new queues. A new queue must be added at the end of
+ * the sequence of existing queues. A new queue is inactive.
+ * 
+ * There is always one queue denoted the current queue.
+ * 
+ * The current queue must always be an active queue.
+ * 
+ * When a queue command is executed, it applies to the current queue.
+ * 
+ * @author Joao Neto
+ *
+ * @param <E> The type of elements saved in the queue system
+ */
+public interface QueueSystem<E> extends Renderable {
+
+	/**
+	 * The index of the current queue
+	 * 
+	 * @return the index of the current queue
+	 */
+	public int current();
+
+	/**
+	 * Adds an element to the rear of the current queue
+	 * 
+	 * @requires isActivated(current())
+	 * @param e The object to insert.
+	 * @throws IllegalQueueRequest if the current queue is not activated
+	 */
+	public void enqueue(E e) throws IllegalQueueRequest;
+
+	/**
+	 * Removes the element at the front of the current queue.
+	 * 
+	 * @requires isActivated(current())
+	 * @requires !isEmpty()
+	 * @throws IllegalQueueRequest if the current queue is not activated or is empty
+	 */
+	public void dequeue() throws IllegalQueueRequest;
+
+	/**
+	 * The element at the front of the current queue.
+	 * 
+	 * @return The element at the front of the current queue.
+	 * @requires isActivated(current())
+	 * @requires !isEmpty()
+	 * @throws IllegalQueueRequest if the current queue is not activated or is empty
+	 */
+	public E front() throws IllegalQueueRequest;
+
+	/**
+	 * The current queue is empty?
+	 * 
+	 * @return True if the current queue is empty.
+	 * @throws IllegalQueueRequest if queue is not active
+	 */
+	public boolean isEmpty() throws IllegalQueueRequest;
+
+	/**
+	 * Adds an element to the rear of the i-th queue. Unlike enqueue, neither
+	 * depends on nor changes the current queue, and reports failure through its
+	 * result instead of an exception.
+	 * 
+	 * @param i the index of the queue
+	 * @param e The object to insert.
+	 * @requires i >= 0 && i < howManyQueues()
+	 * @return false, and nothing changes, if the i-th queue is not activated
+	 */
+	public boolean enqueueAt(int i, E e);
+
+	/**
+	 * Removes the element at the front of the i-th queue. Unlike dequeue,
+	 * neither depends on nor changes the current queue, and reports failure
+	 * through its result instead of an exception.
+	 * 
+	 * @param i the index of the queue
+	 * @requires i >= 0 && i < howManyQueues()
+	 * @return false, and nothing changes, if the i-th queue is not activated or
+	 *         is empty
+	 */
+	public boolean tryDequeueAt(int i);
+
+	/**
+	 * The element at the front of the i-th queue. Unlike front, neither depends
+	 * on nor changes the current queue.
+	 * 
+	 * @param i the index of the queue
+	 * @requires i >= 0 && i < howManyQueues()
+	 * @return the element, or null if the i-th queue is not activated or is
+	 *         empty
+	 */
+	public E frontAt(int i);
+
+	/**
+	 * The number of elements in the i-th queue (0 if it is not activated)
+	 * 
+	 * @param i the index of the queue
+	 * @requires i >= 0 && i < howManyQueues()
+	 * @return the number of elements in the i-th queue
+	 */
+	public int sizeOf(int i);
+
+	/**
+	 * Adds elements to the rear of the i-th queue, in order, as enqueueAt does
+	 * for each one
+	 * 
+	 * @param i   the index of the queue
+	 * @param src the array holding the elements to be added
+	 * @param off the index in src of the first element to be added
+	 * @param len how many elements to add
+	 * @requires i >= 0 && i < howManyQueues()
+	 * @requires src != null && 0 <= off && 0 <= len && off + len <= src.length
+	 * @return false, and nothing changes, if the i-th queue is not activated
+	 */
+	public default boolean enqueueAllAt(int i, E[] src, int off, int len) {
+		if (!isActivated(i))
+			return false;
+		for (int k = off; k < off + len; k++)
+			enqueueAt(i, src[k]);
+		return true;
+	}
+
+	/**
+	 * Removes elements from the front of the i-th queue, passing each one to a
+	 * consumer, in order
+	 * 
+	 * @param i    the index of the queue
+	 * @param sink receives each element removed
+	 * @param max  the most elements to remove
+	 * @requires i >= 0 && i < howManyQueues() && sink != null && max >= 0
+	 * @return how many elements were removed (0 if the i-th queue is not
+	 *         activated)
+	 */
+	public default int drainAt(int i, Consumer<? super E> sink, int max) {
+		int n = 0;
+		E e;
+		while (n < max && (e = frontAt(i)) != null) {
+			sink.accept(e);
+			tryDequeueAt(i);
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Removes elements from the front of the i-th queue
+	 * 
+	 * @param i the index of the queue
+	 * @param n the most elements to remove
+	 * @requires i >= 0 && i < howManyQueues() && n >= 0
+	 * @return how many elements were removed: the least of n and sizeOf(i)
+	 */
+	public default int removeFrontAt(int i, int n) {
+		int removed = 0;
+		while (removed < n && tryDequeueAt(i))
+			removed++;
+		return removed;
+	}
+
+	/**
+	 * Passes each element of the i-th queue to a consumer, from the front to
+	 * the rear, leaving the queue as it was
+	 * 
+	 * @param i      the index of the queue
+	 * @param action receives each element
+	 * @requires i >= 0 && i < howManyQueues() && action != null
+	 * @requires action does not change this queue system
+	 */
+	public default void forEachAt(int i, Consumer<? super E> action) {
+		// each element goes around to the rear of the queue
+		for (int k = sizeOf(i); k > 0; k--) {
+			E e = frontAt(i);
+			action.accept(e);
+			tryDequeueAt(i);
+			enqueueAt(i, e);
+		}
+	}
+
+	/**
+	 * The element at the front of the i-th queue, for the caller to change it.
+	 * Where the queue is shared with a fork of this queue system, it is first
+	 * replaced by a queue of its own, so that the change is not seen by the
+	 * fork
+	 * 
+	 * @param i the index of the queue
+	 * @requires i >= 0 && i < howManyQueues()
+	 * @return the element, or null if the i-th queue is not activated or is
+	 *         empty
+	 */
+	public default E frontToChangeAt(int i) {
+		return frontAt(i);
+	}
+
+	/**
+	 * A new queue system with the same queues, elements, active queues and
+	 * current queue as this one, changing independently of it from now on.
+	 * 
+	 * Implementations may share the queues between the two, and copy a queue,
+	 * with a copy of each of its elements, only when one of them changes it
+	 * (or changes its front element, see frontToChangeAt), so that forking is
+	 * cheap and each one pays only for the queues it changes
+	 * 
+	 * @param copy makes a copy of an element
+	 * @requires copy != null
+	 * @return the new queue system
+	 * @throws UnsupportedOperationException if this queue system cannot be
+	 *                                       forked
+	 */
+	public default QueueSystem<E> fork(UnaryOperator<E> copy) {
+		throw new UnsupportedOperationException(getClass().getName() + " cannot be forked");
+	}
+
+	/**
+	 * The total number of queues in this queue system
+	 * 
+	 * @return the number of all existing queues
+	 */
+	public int howManyQueues();
+
+	/**
+	 * The total number of active queues in this queue system
+	 * 
+	 * @return the number of active queues
+	 */
+	public int howManyActiveQueues();
+
+	/**
+	 * The number of active queues that are empty
+	 * 
+	 * @return the number of empty active queues
+	 */
+	public int howManyEmptyQueues();
+
+	/**
+	 * The least index of an active queue
+	 * 
+	 * @return the index of the first active queue, or -1 if there is none
+	 */
+	public int firstActive();
+
+	/**
+	 * The greatest index of an active queue
+	 * 
+	 * @return the index of the last active queue, or -1 if there is none
+	 */
+	public int lastActive();
+
+	/**
+	 * The least index, not less than from, of a non-empty queue (non-empty queues
+	 * are always active). Enumerating the busy queues with nextBusy(0),
+	 * nextBusy(i+1), ... costs time about proportional to their number, not to the
+	 * number of queues.
+	 * 
+	 * @param from the index where the search starts
+	 * @requires from >= 0
+	 * @return the index of the queue, or -1 if there is none
+	 */
+	public int nextBusy(int from);
+
+	/**
+	 * The least index of an inactive queue
+	 * 
+	 * @return the index of the first inactive queue, or -1 if there is none
+	 */
+	public int firstInactive();
+
+	/**
+	 * The total number of elements inside this queue system
+	 * 
+	 * @return the number of elements in the queue system
+	 */
+	public int size();
+
+	/**
+	 * Creates a new queue at the end of this queue system, This new queue is non
+	 * activated
+	 * 
+	 * @ensures !isActivated(howManyQueues()-1)
+	 */
+	public void create();
+
+	/**
+	 * Verifies whether the i-th queue is an active queue
+	 * 
+	 * @param i the index of the queue
+	 * @requires i >= 0 && i < howManyQueues()
+	 */
+	public boolean isActivated(int i);
+
+	/**
+	 * Makes the i-th queue an active queue
+	 * 
+	 * @ensures isActivated(i)
+	 * @param i the index of the queue
+	 * @requires i >= 0 && i < howManyQueues()
+	 */
+	public void activate(int i);
+
+	/**
+	 * Makes the i-th queue a deactivated queue
+	 * 
+	 * @requires i >= 0 && i < howManyQueues() && the i-th queue is empty
+	 * @ensures !isActivated(i)
+	 * @param i the index of the queue
+	 * @throws IllegalQueueRequest if the i-th queue is not empty
+	 */
+	public void deactivate(int i) throws IllegalQueueRequest;
+
+	/**
+	 * Makes the i-th queue, the current queue
+	 * 
+	 * @requires isActivated(i)
+	 * @ensures current() == i
+	 * @param i the index of the new current queue
+	 * @throws IllegalQueueRequest if the queue is not activated
+	 */
+	public void focus(int i) throws IllegalQueueRequest;
+
+	/**
+	 * Focus on a queue with minimal occupation (if several equal, pick the queue
+	 * with the least index)
+	 * 
+	 * @ensures isActivated(current())
+	 * @return the number of elements in that queue
+	 */
+	public int focusMin();
+
+	/**
+	 * Focus on a queue with maximal occupation (if several equal, pick the queue
+	 * with the least index)
+	 * 
+	 * @ensures isActivated(current())
+	 * @return the number of elements in that queue
+	 */
+	public int focusMax();
+
+	/**
+	 * Writes the textual representation of this queue system (see toString) to
+	 * out; by default, writes the String toString returns
+	 * 
+	 * @param out Where to write it
+	 * @throws IOException if out throws it
+	 */
+	public default void appendTo(Appendable out) throws IOException {
+		out.append(toString());
+	}
+}
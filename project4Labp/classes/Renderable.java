@@ -0,0 +1,109 @@
+import java.io.IOException;
+
+/**
+ * An object whose textual representation can be written, piece by piece, to an
+ * Appendable (a StringBuilder, a buffered Writer, ...) instead of being built
+ * as a String first. appendTo writes exactly the text toString returns, so that
+ * a large state, such as all the queues of a highway, can be written out
+ * without any String as large as the text, or as one of its lines.
+ *
+ */
+public interface Renderable {
+
+	/**
+	 * Writes the textual representation of this object (the one toString
+	 * returns) to out.
+	 *
+	 * @param out Where to write it
+	 * @throws IOException if out throws it
+	 */
+	public void appendTo(Appendable out) throws IOException;
+
+	/**
+	 * The text that appendTo writes, as a String: an implementation of toString
+	 * for classes that implement appendTo.
+	 *
+	 * @param r The object
+	 */
+	public static String toString(Renderable r) {
+		StringBuilder result = new StringBuilder();
+		try {
+			r.appendTo(result);
+		} catch (IOException e) {
+			// a StringBuilder does not throw it
+			throw new InternalError(e.toString());
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Writes an int in decimal, as String.valueOf would, without creating a
+	 * String.
+	 *
+	 * @param out Where to write it
+	 * @param n   The int
+	 * @throws IOException if out throws it
+	 */
+	public static void appendInt(Appendable out, int n) throws IOException {
+		if (out instanceof StringBuilder) {
+			((StringBuilder) out).append(n);
+			return;
+		}
+		if (n < 0) {
+			if (n == Integer.MIN_VALUE) {
+				out.append("-2147483648");
+				return;
+			}
+			out.append('-');
+			n = -n;
+		}
+		// the leading digits first; dividing by the constant 10 is cheap
+		if (n >= 10)
+			appendInt(out, n / 10);
+		out.append((char) ('0' + n % 10));
+	}
+
+	/**
+	 * Writes a long in decimal, as String.valueOf would, without creating a
+	 * String.
+	 *
+	 * @param out Where to write it
+	 * @param n   The long
+	 * @throws IOException if out throws it
+	 */
+	public static void appendLong(Appendable out, long n) throws IOException {
+		if (n == (int) n) {
+			appendInt(out, (int) n);
+			return;
+		}
+		if (out instanceof StringBuilder) {
+			((StringBuilder) out).append(n);
+			return;
+		}
+		if (n < 0) {
+			if (n == Long.MIN_VALUE) {
+				out.append("-9223372036854775808");
+				return;
+			}
+			out.append('-');
+			n = -n;
+		}
+		appendLong(out, n / 10);
+		out.append((char) ('0' + n % 10));
+	}
+
+	/**
+	 * Writes an element of a queue: with its appendTo if it is Renderable,
+	 * otherwise as String.valueOf would.
+	 *
+	 * @param out Where to write it
+	 * @param e   The element
+	 * @throws IOException if out throws it
+	 */
+	public static void appendElement(Appendable out, Object e) throws IOException {
+		if (e instanceof Renderable)
+			((Renderable) e).appendTo(out);
+		else
+			out.append(String.valueOf(e));
+	}
+}
@@ -1,121 +1,440 @@
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Locale;
-import java.util.Scanner;
-
-/**
- * Client class of the Supermarket class; it runs a simulation of clients
- * arriving to the queues in a supermarket and being served.
- * 
- * @author
- *
- */
-public class RunSimulation {
-
-	private static final String END_LINE = System.lineSeparator();
-
-	/**
-	 * A Scanner instance is created to read the file of input data; A Supermarket
-	 * instance is created using the two first values read from the file; A
-	 * simulation is executed over the supermarket in several steps (as many as a
-	 * value read from the file). In each step: - one or more customer arrivals at
-	 * the queues; - a unit of time is elapsed (this may cause the end of service of
-	 * some clients that were being served, and the deactivation of some empty
-	 * queue).
-	 * 
-	 * @param args The first and only element of this parameter is the name of the
-	 *             file containing the input data
-	 * @throws FileNotFoundException
-	 * @throws IllegalQueueRequest
-	 */
-	public static void main(String[] args) throws FileNotFoundException, IllegalQueueRequest {
-	    Locale.setDefault(new Locale ("en", "US"));
-		Scanner sc = new Scanner(new File(args[0]));
-
-		int minActQueues = sc.nextInt();
-		int maxVehiPerQueue = sc.nextInt();
-		
-		Highway myHighway = new Highway(minActQueues, maxVehiPerQueue);
-		System.out.println("---------- Highway before starting the simulation" + END_LINE + myHighway);
-		System.out.println("----------");
-
-		simulation(myHighway, sc);
-
-		sc.close();
-	}
-
-	/**
-	 * Runs a simulation over a supermarket, according to client arrival data read
-	 * from a file.
-	 * 
-	 * This simulation is executed in several steps (as many as a value read from
-	 * the file). In each step: - one or more customer arrives wanting to be served
-	 * (register the goods and pay), and the system has to decide to which queue the
-	 * customer will be assigned to; - a unit of time is elapsed (this may cause the
-	 * end of service of some clients that were being served, and the deactivation
-	 * of some empty queue).
-	 * 
-	 * Information is written to the standard output at the end of each 100 units of
-	 * simulation time.
-	 * 
-	 * @param myHighway The instance of Supermarket that is the simulation target
-	 * @param sc      The Scanner instance through which the input data is read.
-	 * @requires myHighway != null && sc != null
-	 * @throws IllegalQueueRequest
-	 */
-	public static void simulation(Highway myHighway, Scanner sc) throws IllegalQueueRequest {
-
-		// initialize variables
-		int simulationTime = sc.nextInt();
-		int clock = 1;
-	
-		int timeArrival = sc.nextInt();
-		int durationNewArrival = sc.nextInt();
-		double tollFee = sc.nextDouble();
-		boolean eof = false; // end of file not reached
-
-		// process arrivals and departures for each unit of time
-		while (clock <= simulationTime) {
-			// process arrivals
-			// more than 1 customer may arrive at the same time
-			// stop reading data when the end of the file is reached
-			while (clock == timeArrival && !eof) {
-				Vehicle v = new Vehicle(timeArrival, durationNewArrival, tollFee);
-				myHighway.addVehicle(v);
-				// prepare next arrival
-				if (sc.hasNext())
-					timeArrival = sc.nextInt();
-				else
-					eof = true;
-				if (sc.hasNext())
-					durationNewArrival = sc.nextInt();
-				if (sc.hasNext())
-                    tollFee = sc.nextDouble();
-			}
-
-			// process departures
-			myHighway.updateActiveQueues();
-
-			// reduce one active queue, if possible
-			myHighway.updateNumberActiveQueues();
-
-			// print info every 100 simulation time units
-			if (clock % 100 == 0) {
-				System.out.println(END_LINE + "---------- After time " + clock);
-				System.out.print(myHighway.toString());
-				String strDouble = String.format("%.2f", myHighway.averageVehiclesPerQueue());
-				System.out.println("Average number of vehicles per queue " + strDouble);
-				System.out.println("----------");
-			}
-
-			clock++;
-		}
-
-		System.out.println(END_LINE + "---------- Highway after finishing the simulation");
-		System.out.print(myHighway.toString());
-		String strDouble = String.format("%.2f", myHighway.averageWaitingTime());
-		System.out.println("Average waiting time in queue " + strDouble);
-		System.out.println("----------");
-	}
-
-}
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Scanner;
+import javax.management.JMException;
+import jdk.jfr.Recording;
+
+/**
+ * Client class of the Supermarket class; it runs a simulation of clients
+ * arriving to the queues in a supermarket and being served.
+ * 
+ * @author
+ *
+ */
+public class RunSimulation {
+
+	private static final String END_LINE = System.lineSeparator();
+
+	/**
+	 * A Scanner instance is created to read the file of input data; A Supermarket
+	 * instance is created using the two first values read from the file; A
+	 * simulation is executed over the supermarket in several steps (as many as a
+	 * value read from the file). In each step: - one or more customer arrivals at
+	 * the queues; - a unit of time is elapsed (this may cause the end of service of
+	 * some clients that were being served, and the deactivation of some empty
+	 * queue).
+	 * 
+	 * @param args The first element of this parameter is the name of the file
+	 *             containing the input data; the others are options: "-events"
+	 *             runs the highway in event-driven mode, "-arena" keeps its queues
+	 *             in an ArenaQueueSystem, "-segmented" in SegmentedQueues,
+	 *             "-packed" runs a PackedHighway instead, "-mmap" reads the file
+	 *             with a MappedArrivalReader instead of a Scanner, "-parallel"
+	 *             splits the queues of the highway across one thread per
+	 *             processor at each unit of time, "-pooled" reuses
+	 *             the vehicles that leave the highway for new arrivals, "-jmx"
+	 *             publishes live metrics of the highway as an MBean (see
+	 *             HighwayMetrics), "-jfr" records the flight recorder events of
+	 *             the highway (see HighwayEvents) to the file named as the input
+	 *             file followed by ".jfr", "checkpoint=file" writes a checkpoint
+	 *             of the simulation to that file every 10,000 units of time (or
+	 *             every n, with "every=n"), and with "-resume" the simulation
+	 *             continues from that checkpoint, if it exists, printing only
+	 *             what remained to print (neither with "-packed"); files in
+	 *             the binary trace format (see TraceConverter) are recognized
+	 *             and read with a BinaryArrivalReader
+	 * @throws IOException
+	 * @throws IllegalQueueRequest
+	 * @throws JMException
+	 */
+	public static void main(String[] args) throws IOException, IllegalQueueRequest, JMException {
+	    Locale.setDefault(new Locale ("en", "US"));
+		Path input = Paths.get(args[0]);
+		String checkpoint = option(args, "checkpoint");
+		if (hasOption(args, "-packed")
+				&& (checkpoint != null || option(args, "every") != null || hasOption(args, "-resume")))
+			throw new IllegalArgumentException("Checkpoints need a Highway, not a PackedHighway");
+		ArrivalSource sc;
+		if (BinaryArrivalReader.isBinaryTrace(input)) {
+			if (checkpoint != null)
+				throw new IllegalArgumentException("Checkpoints need a trace in the text format");
+			sc = new BinaryArrivalReader(input);
+		}
+		else if (hasOption(args, "-mmap") || checkpoint != null)
+			sc = new MappedArrivalReader(input);
+		else
+			sc = ArrivalSource.of(new Scanner(new File(args[0])));
+
+		int minActQueues = sc.nextInt();
+		int maxVehiPerQueue = sc.nextInt();
+		
+		if (hasOption(args, "-packed")) {
+			PackedHighway myHighway = new PackedHighway(minActQueues, maxVehiPerQueue);
+			System.out.println("---------- Highway before starting the simulation" + END_LINE + myHighway);
+			System.out.println("----------");
+
+			simulation(myHighway, sc);
+
+			sc.close();
+			return;
+		}
+
+		boolean eventDriven = hasOption(args, "-events");
+
+		QueueSystem<Vehicle> queues;
+		if (hasOption(args, "-arena"))
+			queues = new ArenaQueueSystem<>(minActQueues, maxVehiPerQueue);
+		else if (hasOption(args, "-segmented"))
+			queues = new ArrayQueueSystem<>(minActQueues, i -> new SegmentedQueue<>());
+		else
+			queues = new ArrayQueueSystem<>(minActQueues);
+
+		int workers = hasOption(args, "-parallel") ? Runtime.getRuntime().availableProcessors() : 1;
+
+		Highway myHighway = new Highway(minActQueues, maxVehiPerQueue, eventDriven, queues, workers);
+		myHighway.setVehiclePooling(hasOption(args, "-pooled"));
+		if (hasOption(args, "-jmx"))
+			myHighway.enableMetrics().register(input.getFileName().toString());
+		Recording recording = null;
+		if (hasOption(args, "-jfr")) {
+			recording = new Recording();
+			for (String event : HighwayEvents.NAMES)
+				recording.enable(event);
+			recording.start();
+		}
+
+		SimulationCheckpoint.Writer checkpoints = null;
+		SimulationCheckpoint from = null;
+		if (checkpoint != null) {
+			Path file = Paths.get(checkpoint);
+			if (hasOption(args, "-resume") && Files.exists(file))
+				from = SimulationCheckpoint.restore(file, myHighway);
+			String every = option(args, "every");
+			checkpoints = new SimulationCheckpoint.Writer(file, every == null ? 10000 : Integer.parseInt(every));
+		}
+		if (from == null) {
+			System.out.println("---------- Highway before starting the simulation" + END_LINE + myHighway);
+			System.out.println("----------");
+		}
+
+		try {
+			simulation(myHighway, sc, System.out, checkpoints, from);
+		} finally {
+			myHighway.close();
+			if (checkpoints != null)
+				checkpoints.close();
+		}
+
+		sc.close();
+		if (recording != null) {
+			recording.dump(Paths.get(args[0] + ".jfr"));
+			recording.close();
+		}
+	}
+
+	/**
+	 * Runs a simulation over a supermarket, according to client arrival data read
+	 * from a file.
+	 * 
+	 * This simulation is executed in several steps (as many as a value read from
+	 * the file). In each step: - one or more customer arrives wanting to be served
+	 * (register the goods and pay), and the system has to decide to which queue the
+	 * customer will be assigned to; - a unit of time is elapsed (this may cause the
+	 * end of service of some clients that were being served, and the deactivation
+	 * of some empty queue).
+	 * 
+	 * Information is written to the standard output at the end of each 100 units of
+	 * simulation time.
+	 * 
+	 * @param myHighway The instance of Supermarket that is the simulation target
+	 * @param sc      The Scanner instance through which the input data is read.
+	 * @requires myHighway != null && sc != null
+	 * @throws IllegalQueueRequest
+	 */
+	public static void simulation(Highway myHighway, Scanner sc) throws IllegalQueueRequest {
+		simulation(myHighway, ArrivalSource.of(sc));
+	}
+
+	/**
+	 * Runs a simulation over a highway, as simulation(Highway, Scanner) does,
+	 * reading the input data from an ArrivalSource.
+	 * 
+	 * @param myHighway The highway that is the simulation target: a Highway, or
+	 *                  a PackedHighway
+	 * @param sc        The source through which the input data is read.
+	 * @requires myHighway != null && sc != null
+	 * @throws IllegalQueueRequest
+	 */
+	public static void simulation(SimulatedHighway myHighway, ArrivalSource sc) throws IllegalQueueRequest {
+		simulation(myHighway, sc, System.out);
+	}
+
+	/**
+	 * Runs a simulation over a highway, as simulation(SimulatedHighway,
+	 * ArrivalSource) does, printing the reports to the given stream, or not at
+	 * all.
+	 * 
+	 * @param myHighway The highway that is the simulation target
+	 * @param sc        The source through which the input data is read.
+	 * @param out       Where to print the reports; null to run the simulation
+	 *                  without printing them
+	 * @requires myHighway != null && sc != null
+	 * @throws IllegalQueueRequest
+	 */
+	public static void simulation(SimulatedHighway myHighway, ArrivalSource sc, PrintStream out)
+			throws IllegalQueueRequest {
+		simulation(myHighway, sc, sc.nextInt(), out);
+	}
+
+	/**
+	 * Runs a simulation over a highway, as simulation(SimulatedHighway,
+	 * ArrivalSource, PrintStream) does, for the given simulation time, reading
+	 * only the arrivals from sc.
+	 * 
+	 * @param myHighway      The highway that is the simulation target
+	 * @param sc             The source of the arrivals
+	 * @param simulationTime The units of time the simulation lasts
+	 * @param out            Where to print the reports; null to run the
+	 *                       simulation without printing them
+	 * @requires myHighway != null && sc != null
+	 * @throws IllegalQueueRequest
+	 */
+	static void simulation(SimulatedHighway myHighway, ArrivalSource sc, int simulationTime, PrintStream out)
+			throws IllegalQueueRequest {
+		try {
+			simulation(myHighway, sc, simulationTime, out, null, null);
+		} catch (IOException e) {
+			// only checkpoints are written or read
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Runs a simulation over a highway, as simulation(SimulatedHighway,
+	 * ArrivalSource, PrintStream) does, taking checkpoints of it, or
+	 * continuing it from one.
+	 * 
+	 * @param myHighway   The highway that is the simulation target; it must
+	 *                    support writeState to take checkpoints of it
+	 * @param sc          The source through which the input data is read; it
+	 *                    must support position and seek to take or continue
+	 *                    from checkpoints
+	 * @param out         Where to print the reports, through a buffer that is
+	 *                    flushed before each checkpoint and when the
+	 *                    simulation ends; null to run the simulation without
+	 *                    printing them
+	 * @param checkpoints Takes the checkpoints; null for none
+	 * @param from        The checkpoint myHighway was restored from (see
+	 *                    SimulationCheckpoint.restore), to continue the
+	 *                    simulation from it, reading sc from where it was then;
+	 *                    null to start the simulation
+	 * @requires myHighway != null && sc != null
+	 * @throws IllegalQueueRequest
+	 * @throws IOException if a checkpoint cannot be written
+	 */
+	public static void simulation(SimulatedHighway myHighway, ArrivalSource sc, PrintStream out,
+			SimulationCheckpoint.Writer checkpoints, SimulationCheckpoint from)
+			throws IllegalQueueRequest, IOException {
+		simulation(myHighway, sc, from == null ? sc.nextInt() : from.simulationTime, out, checkpoints, from);
+	}
+
+	/**
+	 * The simulation loop, shared by all the simulation methods
+	 */
+	private static void simulation(SimulatedHighway myHighway, ArrivalSource sc, int simulationTime,
+			PrintStream out, SimulationCheckpoint.Writer checkpoints, SimulationCheckpoint from)
+			throws IllegalQueueRequest, IOException {
+
+		// initialize variables
+		int clock;
+		int timeArrival;
+		int durationNewArrival;
+		double tollFee;
+		boolean eof; // end of file reached
+		if (from == null) {
+			clock = 1;
+			timeArrival = sc.nextInt();
+			durationNewArrival = sc.nextInt();
+			tollFee = sc.nextDouble();
+			eof = false;
+		} else {
+			clock = from.clock;
+			timeArrival = from.timeArrival;
+			durationNewArrival = from.durationNewArrival;
+			tollFee = from.tollFee;
+			eof = from.eof;
+			sc.seek(from.position);
+		}
+		// the vehicles arriving in the current unit of time
+		int[] durations = new int[16];
+		double[] tolls = new double[16];
+		// the reports are written through a buffer, and the highway is written
+		// to it piece by piece (see Renderable.appendTo)
+		ReportWriter report = out == null ? null : new ReportWriter(out);
+		try {
+
+			// process arrivals and departures for each unit of time
+			while (clock <= simulationTime) {
+				if (checkpoints != null)
+					checkpoints.reached(myHighway, simulationTime, clock, timeArrival, durationNewArrival, tollFee, eof,
+							sc, report);
+
+				// process arrivals
+				// more than 1 customer may arrive at the same time
+				// stop reading data when the end of the file is reached
+				int nArrivals = 0;
+				while (clock == timeArrival && !eof) {
+					if (nArrivals == durations.length) {
+						durations = Arrays.copyOf(durations, nArrivals * 2);
+						tolls = Arrays.copyOf(tolls, nArrivals * 2);
+					}
+					durations[nArrivals] = durationNewArrival;
+					tolls[nArrivals++] = tollFee;
+					// prepare next arrival
+					if (sc.hasNext())
+						timeArrival = sc.nextInt();
+					else
+						eof = true;
+					if (sc.hasNext())
+						durationNewArrival = sc.nextInt();
+					if (sc.hasNext())
+	                    tollFee = sc.nextDouble();
+				}
+				myHighway.addArrivals(clock, durations, tolls, nArrivals);
+
+				// process departures and reduce active queues, one unit of time at a
+				// time, until the next arrival or the next report, whichever is first
+				int next = Math.min(simulationTime, (clock + 99) / 100 * 100);
+				if (!eof && timeArrival > clock)
+					next = Math.min(next, timeArrival - 1);
+				myHighway.advanceTo(next);
+				clock = next;
+
+				// print info every 100 simulation time units
+				if (clock % 100 == 0 && report != null) {
+					report.append(END_LINE).append("---------- After time ");
+					Renderable.appendInt(report, clock);
+					report.append(END_LINE);
+					myHighway.appendTo(report);
+					String strDouble = String.format("%.2f", myHighway.averageVehiclesPerQueue());
+					report.append("Average number of vehicles per queue ").append(strDouble).append(END_LINE);
+					report.append("----------").append(END_LINE);
+				}
+
+				clock++;
+			}
+
+			if (report == null)
+				return;
+			report.append(END_LINE).append("---------- Highway after finishing the simulation").append(END_LINE);
+			myHighway.appendTo(report);
+			String strDouble = String.format("%.2f", myHighway.averageWaitingTime());
+			report.append("Average waiting time in queue ").append(strDouble).append(END_LINE);
+			report.append("----------").append(END_LINE);
+		} finally {
+			if (report != null)
+				report.flush();
+		}
+	}
+
+	/**
+	 * Writes the reports of a simulation to a stream: the text is appended to a
+	 * buffer, one piece at a time and without locking, and written to the
+	 * stream each time the buffer fills up, so that no report is ever held in
+	 * memory as a whole. It is flushed, and never closed, so that the stream
+	 * stays open.
+	 */
+	static final class ReportWriter implements Appendable, Flushable {
+
+		private final Writer out;
+		private final char[] buffer = new char[1 << 16];
+		private int n;
+
+		ReportWriter(PrintStream out) {
+			this.out = new OutputStreamWriter(out, Charset.defaultCharset());
+		}
+
+		@Override
+		public ReportWriter append(char c) throws IOException {
+			if (n == buffer.length)
+				drain();
+			buffer[n++] = c;
+			return this;
+		}
+
+		@Override
+		public ReportWriter append(CharSequence csq) throws IOException {
+			return append(csq, 0, csq.length());
+		}
+
+		@Override
+		public ReportWriter append(CharSequence csq, int start, int end) throws IOException {
+			// copied to the buffer in runs, as long as the room left in it
+			while (start < end) {
+				if (n == buffer.length)
+					drain();
+				int run = Math.min(end - start, buffer.length - n);
+				if (csq instanceof String)
+					((String) csq).getChars(start, start + run, buffer, n);
+				else if (csq instanceof StringBuilder)
+					((StringBuilder) csq).getChars(start, start + run, buffer, n);
+				else
+					for (int i = 0; i < run; i++)
+						buffer[n + i] = csq.charAt(start + i);
+				n += run;
+				start += run;
+			}
+			return this;
+		}
+
+		/**
+		 * Writes what is in the buffer to the stream, and flushes it.
+		 */
+		@Override
+		public void flush() throws IOException {
+			drain();
+			out.flush();
+		}
+
+		private void drain() throws IOException {
+			out.write(buffer, 0, n);
+			n = 0;
+		}
+	}
+
+	/**
+	 * Is the given option among the arguments after the file name?
+	 * 
+	 * @param args   The command line arguments
+	 * @param option The option, e.g. "-events"
+	 */
+	private static boolean hasOption(String[] args, String option) {
+		for (int i = 1; i < args.length; i++)
+			if (args[i].equals(option))
+				return true;
+		return false;
+	}
+
+	/**
+	 * The value of an option "name=value" among the arguments after the first
+	 * one, or null if there is none.
+	 */
+	private static String option(String[] args, String name) {
+		for (int i = 1; i < args.length; i++)
+			if (args[i].startsWith(name + "="))
+				return args[i].substring(name.length() + 1);
+		return null;
+	}
+
+}
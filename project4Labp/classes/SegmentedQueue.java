@@ -0,0 +1,212 @@
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A queue implemented with a linked list of fixed-length arrays (segments).
+ *
+ * Unlike ArrayQueue, it never copies its elements: when the last segment is
+ * full a new one is linked after it, and when the first one is emptied it is
+ * unlinked. Every enqueue and dequeue takes constant time, even the ones that
+ * add or remove segments, and a queue that shrinks after a peak keeps only the
+ * segments it still uses, plus a few spare ones that it reuses before
+ * allocating new ones.
+ *
+ * @param <E> The type of the elements in the queue.
+ *
+ */
+public class SegmentedQueue<E> implements Queue<E>, Iterable<E> {
+
+	/**
+	 * The length of each segment, by default.
+	 */
+	private static final int DEFAULT_SEGMENT_LENGTH = 64;
+
+	/**
+	 * The most emptied segments kept for reuse.
+	 */
+	private static final int MAX_SPARE_SEGMENTS = 2;
+
+	/**
+	 * A segment, and the next one in the queue (or in the list of spare ones).
+	 */
+	private static final class Segment {
+		final Object[] items;
+		Segment next;
+
+		Segment(int length) {
+			items = new Object[length];
+		}
+	}
+
+	private final int segmentLength;
+
+	/**
+	 * The first and last segments of the queue, the index of the front element
+	 * in the first one and the index where the next element will be stored in
+	 * the last one.
+	 */
+	private Segment head;
+	private Segment tail;
+	private int headIndex;
+	private int tailIndex;
+
+	/**
+	 * The number of elements in the queue.
+	 */
+	private int size;
+
+	/**
+	 * Emptied segments kept for reuse, and how many there are.
+	 */
+	private Segment spare;
+	private int nSpare;
+
+	/**
+	 * Construct an empty queue.
+	 */
+	public SegmentedQueue() {
+		this(DEFAULT_SEGMENT_LENGTH);
+	}
+
+	/**
+	 * Construct an empty queue.
+	 *
+	 * @param segmentLength The length of each segment
+	 * @requires segmentLength > 0
+	 */
+	public SegmentedQueue(int segmentLength) {
+		this.segmentLength = segmentLength;
+		head = tail = new Segment(segmentLength);
+		headIndex = 0;
+		tailIndex = 0;
+		size = 0;
+		spare = null;
+		nSpare = 0;
+	}
+
+	@Override
+	public void enqueue(E item) {
+		if (tailIndex == segmentLength) {
+			Segment s = newSegment();
+			tail.next = s;
+			tail = s;
+			tailIndex = 0;
+		}
+		tail.items[tailIndex++] = item;
+		size++;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E front() {
+		return (E) head.items[headIndex];
+	}
+
+	@Override
+	public void dequeue() {
+		head.items[headIndex++] = null;
+		size--;
+		if (size == 0) {
+			// the last element was in the last segment: start it over
+			headIndex = 0;
+			tailIndex = 0;
+		} else if (headIndex == segmentLength) {
+			Segment s = head;
+			head = head.next;
+			headIndex = 0;
+			recycle(s);
+		}
+	}
+
+	/**
+	 * The number of segments in use, not counting the spare ones.
+	 */
+	public int segments() {
+		int n = 0;
+		for (Segment s = head; s != null; s = s.next)
+			n++;
+		return n;
+	}
+
+	/**
+	 * A spare segment, or a new one if there is none.
+	 */
+	private Segment newSegment() {
+		if (spare == null)
+			return new Segment(segmentLength);
+		Segment s = spare;
+		spare = s.next;
+		s.next = null;
+		nSpare--;
+		return s;
+	}
+
+	/**
+	 * Keeps an emptied segment for reuse, unless there are enough spare ones.
+	 */
+	private void recycle(Segment s) {
+		if (nSpare == MAX_SPARE_SEGMENTS)
+			return;
+		s.next = spare;
+		spare = s;
+		nSpare++;
+	}
+
+	/**
+	 * The textual representation of this queue, in format "<a, b, c<"
+	 */
+	public String toString() {
+		return Renderable.toString(this);
+	}
+
+	@Override
+	public void appendTo(Appendable out) throws IOException {
+		out.append('<');
+		boolean first = true;
+		for (E e : this) {
+			if (!first)
+				out.append(", ");
+			Renderable.appendElement(out, e);
+			first = false;
+		}
+		out.append('<');
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			private Segment s = head;
+			private int i = headIndex;
+			private int left = size;
+
+			@Override
+			public boolean hasNext() {
+				return left > 0;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public E next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				if (i == segmentLength) {
+					s = s.next;
+					i = 0;
+				}
+				left--;
+				return (E) s.items[i++];
+			}
+		};
+	}
+}
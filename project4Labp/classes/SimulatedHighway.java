@@ -0,0 +1,56 @@
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A highway that RunSimulation.simulation can run: at each unit of time with
+ * arrivals, the vehicles that arrive are added, the time is advanced to the
+ * next arrival or report, and the reports are written with appendTo. Highway
+ * and PackedHighway are run by the same simulation loop through it.
+ *
+ */
+public interface SimulatedHighway extends Renderable {
+
+	/**
+	 * Adds the vehicles that arrive at the same unit of time, with the same
+	 * result as adding them one at a time, in order.
+	 *
+	 * @param arrival   The unit of time at which they arrive
+	 * @param durations The units of time each one needs to pay its toll
+	 * @param tolls     The toll each one pays
+	 * @param n         How many arrive: those at the first n positions of
+	 *                  durations and tolls
+	 * @requires arrival > 0 && 0 <= n && n <= durations.length && n <= tolls.length
+	 * @throws IllegalQueueRequest
+	 */
+	public void addArrivals(int arrival, int[] durations, double[] tolls, int n) throws IllegalQueueRequest;
+
+	/**
+	 * Advances the time up to the given unit of time, processing each one.
+	 *
+	 * @param time The unit of time up to which it advances
+	 * @throws IllegalQueueRequest
+	 */
+	public void advanceTo(int time) throws IllegalQueueRequest;
+
+	/**
+	 * The average number of vehicles per active queue now.
+	 */
+	public double averageVehiclesPerQueue();
+
+	/**
+	 * The average time the vehicles that left waited in their queues.
+	 */
+	public double averageWaitingTime();
+
+	/**
+	 * Writes the whole state of this highway, to continue the simulation from
+	 * it later (see SimulationCheckpoint); not all highways support it.
+	 *
+	 * @param out Where to write the state
+	 * @throws IOException
+	 * @throws UnsupportedOperationException if this highway cannot be saved
+	 */
+	public default void writeState(DataOutput out) throws IOException {
+		throw new UnsupportedOperationException(getClass().getName() + " cannot save its state");
+	}
+}
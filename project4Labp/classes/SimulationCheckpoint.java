@@ -0,0 +1,203 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A checkpoint of RunSimulation.simulation, from which a simulation that was
+ * interrupted (e.g. by a crash) can continue, with the same results as if it
+ * had never stopped.
+ *
+ * A checkpoint file holds the magic number "HWCP", a version int, the state of
+ * the simulation loop at the start of a unit of time (the simulation time, the
+ * clock, the arrival already read and not yet added, whether the input has
+ * ended, and the position in the input of the next value to read) and then the
+ * state of the highway, as written by Highway.writeState.
+ *
+ * Checkpoints are taken by a Writer: the simulation thread only copies the
+ * state to memory, and another thread writes it to the file, replacing the
+ * previous checkpoint at once, so that the file always holds a whole one.
+ *
+ */
+public class SimulationCheckpoint {
+
+	/**
+	 * The first four bytes of a checkpoint: "HWCP".
+	 */
+	public static final int MAGIC = 0x48574350;
+
+	/**
+	 * The version of the format written by this class. Version 2 writes the
+	 * total waiting time and the number of vehicles processed as longs, which
+	 * version 1 wrote as ints; checkpoints of other versions are not read.
+	 */
+	public static final int VERSION = 2;
+
+	public final int simulationTime;
+	public final int clock;
+	public final int timeArrival;
+	public final int durationNewArrival;
+	public final double tollFee;
+	public final boolean eof;
+	public final long position;
+
+	SimulationCheckpoint(int simulationTime, int clock, int timeArrival, int durationNewArrival, double tollFee,
+			boolean eof, long position) {
+		this.simulationTime = simulationTime;
+		this.clock = clock;
+		this.timeArrival = timeArrival;
+		this.durationNewArrival = durationNewArrival;
+		this.tollFee = tollFee;
+		this.eof = eof;
+		this.position = position;
+	}
+
+	/**
+	 * Reads a checkpoint file, restoring the state of the highway.
+	 *
+	 * @param file      The checkpoint file
+	 * @param myHighway A highway just constructed with the configuration of the
+	 *                  one in the checkpoint (see Highway.readState)
+	 * @return the state of the simulation loop, to continue from it with
+	 *         RunSimulation.simulation
+	 * @throws IOException if the file cannot be read or is not a checkpoint of
+	 *                     such a highway
+	 */
+	public static SimulationCheckpoint restore(Path file, Highway myHighway) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			DataInputStream data = new DataInputStream(in);
+			if (data.readInt() != MAGIC)
+				throw new IOException(file + " is not a simulation checkpoint");
+			int version = data.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported checkpoint version " + version);
+			SimulationCheckpoint c = new SimulationCheckpoint(data.readInt(), data.readInt(), data.readInt(),
+					data.readInt(), data.readDouble(), data.readBoolean(), data.readLong());
+			myHighway.readState(data);
+			return c;
+		}
+	}
+
+	/**
+	 * Takes checkpoints of a simulation every so many units of time, writing
+	 * each one to a file in a thread of its own. Closing the writer waits for
+	 * the last checkpoint to be written.
+	 */
+	public static class Writer implements Closeable {
+
+		private final Path file;
+		private final Path temporary;
+		private final int every;
+		private final ExecutorService thread;
+		// the checkpoint being written, if any
+		private Future<?> pending;
+		// the clock of the last checkpoint
+		private int last = -1;
+
+		/**
+		 * Constructor
+		 *
+		 * @param file  The checkpoint file
+		 * @param every The number of units of time between checkpoints
+		 * @requires every > 0
+		 */
+		public Writer(Path file, int every) {
+			this.file = file;
+			this.temporary = file.resolveSibling(file.getFileName() + ".tmp");
+			this.every = every;
+			this.thread = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "checkpoint writer");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+
+		/**
+		 * Called by the simulation at the start of each unit of time it
+		 * processes; takes a checkpoint if the last one is at least every units
+		 * of time old (the first call only notes the clock).
+		 *
+		 * @param report Where the simulation prints its reports, flushed before
+		 *               a checkpoint is taken so that a simulation continued
+		 *               from it prints exactly what had not been printed; null
+		 *               if it prints none
+		 * @throws IOException if the previous checkpoint could not be written,
+		 *                     or report could not be flushed
+		 */
+		void reached(SimulatedHighway myHighway, int simulationTime, int clock, int timeArrival, int durationNewArrival,
+				double tollFee, boolean eof, ArrivalSource sc, Flushable report) throws IOException {
+			if (last < 0)
+				last = clock;
+			if (clock - last < every)
+				return;
+			last = clock;
+			if (report != null)
+				report.flush();
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream data = new DataOutputStream(bytes);
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			data.writeInt(simulationTime);
+			data.writeInt(clock);
+			data.writeInt(timeArrival);
+			data.writeInt(durationNewArrival);
+			data.writeDouble(tollFee);
+			data.writeBoolean(eof);
+			data.writeLong(sc.position());
+			myHighway.writeState(data);
+			data.flush();
+
+			// at most one checkpoint waits to be written
+			waitForPending();
+			byte[] checkpoint = bytes.toByteArray();
+			pending = thread.submit(() -> {
+				Files.write(temporary, checkpoint);
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				return null;
+			});
+		}
+
+		/**
+		 * Waits for the checkpoint being written, if any.
+		 */
+		private void waitForPending() throws IOException {
+			if (pending == null)
+				return;
+			try {
+				pending.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while writing a checkpoint", e);
+			} catch (ExecutionException e) {
+				throw new IOException("Could not write the checkpoint " + file, e.getCause());
+			} finally {
+				pending = null;
+			}
+		}
+
+		/**
+		 * Waits for the last checkpoint to be written.
+		 *
+		 * @throws IOException if it could not be written
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				waitForPending();
+			} finally {
+				thread.shutdown();
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * A bounded queue for exactly two threads: one producer, the only one that
+ * calls enqueue and offer, and one consumer, the only one that calls front and
+ * dequeue; e.g. a thread reading arrivals and a thread running the simulation.
+ * isEmpty, size and toString may be called by either.
+ *
+ * The elements are kept in a ring whose length is a power of two, so that the
+ * position of an index is found with a mask. No locks are used: the producer
+ * publishes each element by writing the tail index with release semantics,
+ * and the consumer sees it by reading the tail with acquire semantics (and the
+ * other way around with the head, when freeing positions). Each thread also
+ * keeps its last reading of the other thread's index, to read it again only
+ * when that reading is not enough.
+ *
+ * @param <E> The type of the elements in the queue.
+ *
+ */
+public class SpscRingQueue<E> implements Queue<E> {
+
+	private final E[] ring;
+	private final int mask;
+	// the index of the next element to dequeue and of the next one to enqueue;
+	// positions in the ring are the indices modulo its length
+	private final PaddedSequence head = new PaddedSequence();
+	private final PaddedSequence tail = new PaddedSequence();
+	// the last readings of the tail by the consumer and of the head by the
+	// producer
+	private long tailSeen;
+	private long headSeen;
+
+	/**
+	 * Construct an empty queue.
+	 *
+	 * @param capacity The most elements the queue holds at once, rounded up to a
+	 *                 power of two
+	 * @requires 0 < capacity <= 2^30
+	 */
+	@SuppressWarnings("unchecked")
+	public SpscRingQueue(int capacity) {
+		int length = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		ring = (E[]) new Object[length];
+		mask = length - 1;
+	}
+
+	/**
+	 * The most elements the queue holds at once.
+	 */
+	public int capacity() {
+		return ring.length;
+	}
+
+	/**
+	 * Adds an element to the rear of this queue, if it is not full.
+	 *
+	 * @param e The object to be added
+	 * @return false if the queue is full
+	 */
+	public boolean offer(E e) {
+		long t = tail.getPlain();
+		if (t - headSeen == ring.length) {
+			headSeen = head.getAcquire();
+			if (t - headSeen == ring.length)
+				return false;
+		}
+		ring[(int) t & mask] = e;
+		tail.setRelease(t + 1);
+		return true;
+	}
+
+	/**
+	 * Adds an element to the rear of this queue, waiting for the consumer to make
+	 * room if the queue is full.
+	 */
+	@Override
+	public void enqueue(E e) {
+		for (int attempt = 0; !offer(e); attempt++)
+			PaddedSequence.backOff(attempt);
+	}
+
+	@Override
+	public E front() {
+		long h = head.getPlain();
+		if (h == tailSeen)
+			tailSeen = tail.getAcquire();
+		return ring[(int) h & mask];
+	}
+
+	@Override
+	public void dequeue() {
+		long h = head.getPlain();
+		if (h == tailSeen)
+			tailSeen = tail.getAcquire();
+		ring[(int) h & mask] = null;
+		head.setRelease(h + 1);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public int size() {
+		// the head first: read after it, the tail is not behind it
+		long h = head.getAcquire();
+		return (int) (tail.getAcquire() - h);
+	}
+
+	/**
+	 * The textual representation of this queue, in format "<a, b, c<"; only
+	 * exact when the queue does not change meanwhile
+	 */
+	public String toString() {
+		StringBuilder result = new StringBuilder("<");
+		long h = head.getAcquire();
+		long t = tail.getAcquire();
+		for (long i = h; i < t; i++) {
+			if (i > h)
+				result.append(", ");
+			result.append(ring[(int) i & mask]);
+		}
+		result.append("<");
+		return result.toString();
+	}
+}
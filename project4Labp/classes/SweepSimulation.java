@@ -0,0 +1,168 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the simulation of one input file for many highway configurations at
+ * once, for capacity planning: the file is read only once, into an
+ * ArrivalTrace shared by all the simulations, and each combination of minimum
+ * number of active queues and maximum number of vehicles per queue is simulated
+ * by its own Highway, in parallel, without printing the periodic reports. The
+ * results are printed as one table, in the order of the configurations.
+ *
+ * @author
+ *
+ */
+public class SweepSimulation {
+
+	/**
+	 * The results of the simulation of one configuration.
+	 */
+	public static final class Result {
+
+		public final int minActivatedQueues;
+		public final int maxVehiclesPerQueue;
+		public final long processed;
+		public final double averageWaitingTime;
+		public final double totalTolls;
+		public final int peakActiveQueues;
+		public final int p95WaitingTime;
+		public final int p99WaitingTime;
+
+		Result(int minActivatedQueues, int maxVehiclesPerQueue, Highway h) {
+			this.minActivatedQueues = minActivatedQueues;
+			this.maxVehiclesPerQueue = maxVehiclesPerQueue;
+			this.processed = h.nrVehiclesProcessed();
+			this.averageWaitingTime = h.averageWaitingTime();
+			this.totalTolls = h.totalTolls();
+			this.peakActiveQueues = h.peakActiveQueues();
+			this.p95WaitingTime = h.waitingTimePercentile(95);
+			this.p99WaitingTime = h.waitingTimePercentile(99);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%4d %4d %12d %14.2f %8d %8d %14.2f %6d", minActivatedQueues, maxVehiclesPerQueue,
+					processed, averageWaitingTime, p95WaitingTime, p99WaitingTime, totalTolls, peakActiveQueues);
+		}
+	}
+
+	/**
+	 * @param args The first element is the name of the file containing the input
+	 *             data (whose first two values, the configuration, are ignored);
+	 *             the others are options: "min=a-b" and "max=c-d" give the ranges
+	 *             of the minimum number of active queues and of the maximum number
+	 *             of vehicles per queue to simulate (by default, 1 to the value
+	 *             in the file), "threads=n" the number of threads to use (by
+	 *             default, one per processor), and "-events" runs the highways in
+	 *             event-driven mode
+	 * @throws IOException
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		Locale.setDefault(new Locale("en", "US"));
+		Path input = Paths.get(args[0]);
+		ArrivalSource sc;
+		if (BinaryArrivalReader.isBinaryTrace(input))
+			sc = new BinaryArrivalReader(input);
+		else
+			sc = ArrivalSource.of(new Scanner(new File(args[0])));
+		ArrivalTrace trace = ArrivalTrace.read(sc);
+
+		int[] min = range(option(args, "min", "1-" + trace.minActivatedQueues()));
+		int[] max = range(option(args, "max", "1-" + trace.maxVehiclesPerQueue()));
+		int threads = Integer.parseInt(option(args, "threads",
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		boolean eventDriven = false;
+		for (int i = 1; i < args.length; i++)
+			eventDriven |= args[i].equals("-events");
+
+		long start = System.nanoTime();
+		List<Result> results = sweep(trace, min[0], min[1], max[0], max[1], eventDriven, threads);
+		long millis = (System.nanoTime() - start) / 1_000_000;
+
+		System.out.printf("%4s %4s %12s %14s %8s %8s %14s %6s%n", "min", "max", "processed", "avg wait", "p95 wait",
+				"p99 wait", "tolls", "peak");
+		for (Result r : results)
+			System.out.println(r);
+		System.out.println(results.size() + " configurations, " + trace.size() + " arrivals, " + threads
+				+ " threads, " + millis + " ms");
+	}
+
+	/**
+	 * Simulates a trace for every combination of minimum number of active queues
+	 * from minFrom to minTo and maximum number of vehicles per queue from maxFrom
+	 * to maxTo, in parallel.
+	 *
+	 * @param trace       The input data
+	 * @param eventDriven Whether the highways run in event-driven mode
+	 * @param threads     The number of threads to use
+	 * @requires 0 < minFrom <= minTo && 0 < maxFrom <= maxTo && threads > 0
+	 * @return the results, by increasing minimum and then maximum
+	 * @throws InterruptedException
+	 * @throws ExecutionException   if a simulation fails
+	 */
+	public static List<Result> sweep(ArrivalTrace trace, int minFrom, int minTo, int maxFrom, int maxTo,
+			boolean eventDriven, int threads) throws InterruptedException, ExecutionException {
+		List<Callable<Result>> tasks = new ArrayList<>();
+		for (int min = minFrom; min <= minTo; min++)
+			for (int max = maxFrom; max <= maxTo; max++) {
+				int minActQueues = min;
+				int maxVehiPerQueue = max;
+				tasks.add(() -> simulate(trace, minActQueues, maxVehiPerQueue, eventDriven));
+			}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<Result> results = new ArrayList<>();
+			for (Future<Result> f : pool.invokeAll(tasks))
+				results.add(f.get());
+			return results;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Simulates a trace with the given configuration, instead of the one in its
+	 * header.
+	 */
+	static Result simulate(ArrivalTrace trace, int minActQueues, int maxVehiPerQueue, boolean eventDriven)
+			throws IllegalQueueRequest {
+		ArrivalSource sc = trace.source();
+		sc.nextInt();
+		sc.nextInt();
+		Highway myHighway = new Highway(minActQueues, maxVehiPerQueue, eventDriven);
+		RunSimulation.simulation(myHighway, sc, null);
+		return new Result(minActQueues, maxVehiPerQueue, myHighway);
+	}
+
+	/**
+	 * The value of the option with the given name, or the default value.
+	 */
+	private static String option(String[] args, String name, String defaultValue) {
+		for (int i = 1; i < args.length; i++)
+			if (args[i].startsWith(name + "="))
+				return args[i].substring(name.length() + 1);
+		return defaultValue;
+	}
+
+	/**
+	 * The bounds of a range "a-b", or "a" for a range of one value.
+	 */
+	private static int[] range(String range) {
+		int dash = range.indexOf('-');
+		if (dash < 0)
+			return new int[] { Integer.parseInt(range), Integer.parseInt(range) };
+		return new int[] { Integer.parseInt(range.substring(0, dash)), Integer.parseInt(range.substring(dash + 1)) };
+	}
+}
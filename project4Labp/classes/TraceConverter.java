@@ -0,0 +1,73 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+
+/**
+ * Converts an input file in the text format of highwayTolls.txt into the
+ * binary trace format (see BinaryTraceWriter). Simulations over both files
+ * give the same results; tolls must therefore be whole cents.
+ *
+ * @author
+ *
+ */
+public class TraceConverter {
+
+	/**
+	 * @param args The text input file and the binary file to write
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("usage: java TraceConverter <text input> <binary output>");
+			System.exit(2);
+		}
+		try (ArrivalSource in = new MappedArrivalReader(Paths.get(args[0]));
+				OutputStream out = new FileOutputStream(args[1])) {
+			long n = convert(in, out);
+			System.out.println(n + " arrivals written to " + args[1]);
+		}
+	}
+
+	/**
+	 * Copies an input in the text format to the binary trace format, reading the
+	 * arrivals as RunSimulation.simulation does: a last incomplete triple keeps
+	 * the duration and toll of the previous arrival.
+	 *
+	 * @param in  The text input
+	 * @param out Where to write the binary trace
+	 * @return the number of arrivals written
+	 * @throws IOException
+	 * @throws IllegalArgumentException if a toll is not a whole number of cents
+	 */
+	public static long convert(ArrivalSource in, OutputStream out) throws IOException {
+		int minActQueues = in.nextInt();
+		int maxVehiPerQueue = in.nextInt();
+		int simulationTime = in.nextInt();
+		long n = 0;
+		try (BinaryTraceWriter writer = new BinaryTraceWriter(out, minActQueues, maxVehiPerQueue, simulationTime)) {
+			int duration = 0;
+			double toll = 0;
+			while (in.hasNext()) {
+				int arrival = in.nextInt();
+				if (in.hasNext())
+					duration = in.nextInt();
+				if (in.hasNext())
+					toll = in.nextDouble();
+				writer.add(arrival, duration, toCents(toll));
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * The toll in cents, if it is a whole number of cents.
+	 */
+	static int toCents(double toll) {
+		int cents = PackedHighway.toCents(toll);
+		if (cents / 100.0 != toll)
+			throw new IllegalArgumentException("toll " + toll + " is not a whole number of cents");
+		return cents;
+	}
+}
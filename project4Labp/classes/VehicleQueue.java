@@ -0,0 +1,188 @@
+import java.io.IOException;
+
+/**
+ * A queue of vehicles implemented with primitive arrays instead of Vehicle
+ * objects: arrival and duration are packed in one long, and the toll is kept
+ * in integer cents. Only the vehicle at the front is being processed, so the
+ * time left is kept for that one alone; for every other vehicle it is equal
+ * to its duration.
+ *
+ * The arrays have a power of two length, so that the circular indices are
+ * computed with a mask.
+ *
+ */
+public class VehicleQueue implements Renderable {
+
+	/**
+	 * The length of initial arrays.
+	 */
+	private static final int DEFAULT_CAPACITY = 4;
+
+	/**
+	 * Arrival (high 32 bits) and duration (low 32 bits) of the vehicles.
+	 */
+	private long[] times;
+
+	/**
+	 * The tolls of the vehicles, in cents.
+	 */
+	private int[] tolls;
+
+	/**
+	 * The index of the front of the queue.
+	 */
+	private int head;
+
+	/**
+	 * The number of vehicles in the queue.
+	 */
+	private int size;
+
+	/**
+	 * The time left to finish processing the vehicle at the front.
+	 */
+	private int headTimeLeft;
+
+	/**
+	 * Construct an empty queue.
+	 */
+	public VehicleQueue() {
+		times = new long[DEFAULT_CAPACITY];
+		tolls = new int[DEFAULT_CAPACITY];
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Adds a vehicle to the rear of this queue.
+	 *
+	 * @param arrival   The time the vehicle arrived.
+	 * @param duration  The time needed to process it once at the front.
+	 * @param tollCents The toll it pays, in cents.
+	 * @requires arrival > 0 && duration > 0
+	 */
+	public void enqueue(int arrival, int duration, int tollCents) {
+		if (size == times.length)
+			reallocate();
+		int tail = (head + size) & (times.length - 1);
+		times[tail] = (long) arrival << 32 | duration;
+		tolls[tail] = tollCents;
+		if (size == 0)
+			headTimeLeft = duration;
+		size++;
+	}
+
+	/**
+	 * Removes the vehicle at the front of this queue.
+	 *
+	 * @requires !isEmpty()
+	 */
+	public void dequeue() {
+		head = (head + 1) & (times.length - 1);
+		size--;
+		if (size > 0)
+			headTimeLeft = (int) times[head];
+	}
+
+	/**
+	 * Is this queue empty?
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * The number of vehicles in the queue.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The arrival time of the vehicle at the front.
+	 *
+	 * @requires !isEmpty()
+	 */
+	public int frontArrival() {
+		return (int) (times[head] >>> 32);
+	}
+
+	/**
+	 * The duration of the vehicle at the front.
+	 *
+	 * @requires !isEmpty()
+	 */
+	public int frontDuration() {
+		return (int) times[head];
+	}
+
+	/**
+	 * The toll of the vehicle at the front, in cents.
+	 *
+	 * @requires !isEmpty()
+	 */
+	public int frontToll() {
+		return tolls[head];
+	}
+
+	/**
+	 * The time left to finish processing the vehicle at the front.
+	 *
+	 * @requires !isEmpty()
+	 */
+	public int frontTimeLeft() {
+		return headTimeLeft;
+	}
+
+	/**
+	 * Decrements by one the time left to the vehicle at the front.
+	 *
+	 * @return the time left after the decrement
+	 * @requires !isEmpty()
+	 */
+	public int decreaseFrontTimeUnit() {
+		return --headTimeLeft;
+	}
+
+	/**
+	 * Move the elements to arrays twice as long, starting at index 0.
+	 */
+	private void reallocate() {
+		int n = times.length;
+		long[] newTimes = new long[n * 2];
+		int[] newTolls = new int[n * 2];
+		System.arraycopy(times, head, newTimes, 0, n - head);
+		System.arraycopy(times, 0, newTimes, n - head, head);
+		System.arraycopy(tolls, head, newTolls, 0, n - head);
+		System.arraycopy(tolls, 0, newTolls, n - head, head);
+		times = newTimes;
+		tolls = newTolls;
+		head = 0;
+	}
+
+	/**
+	 * The textual representation of this queue, in the same format as an
+	 * ArrayQueue of Vehicle: "<(a,d:t), (a,d:t)<"
+	 */
+	public String toString() {
+		return Renderable.toString(this);
+	}
+
+	@Override
+	public void appendTo(Appendable out) throws IOException {
+		out.append('<');
+		for (int k = 0; k < size; k++) {
+			long t = times[(head + k) & (times.length - 1)];
+			if (k > 0)
+				out.append(", ");
+			out.append('(');
+			Renderable.appendInt(out, (int) (t >>> 32));
+			out.append(',');
+			Renderable.appendInt(out, (int) t);
+			out.append(':');
+			Renderable.appendInt(out, k == 0 ? headTimeLeft : (int) t);
+			out.append(')');
+		}
+		out.append('<');
+	}
+}
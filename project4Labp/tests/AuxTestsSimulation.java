@@ -1,43 +1,100 @@
-import java.util.Scanner;
-
-public class AuxTestsSimulation {
-	
-	public static void simulationTest (Scanner sc, Highway myHighway, int simulationTime) 
-			throws IllegalQueueRequest {
-	
-	int clock = 1;
-
-	int timeArrival = sc.nextInt();
-	int durationNewArrival = sc.nextInt();
-	double tollFee = sc.nextDouble();
-	boolean eof = false;  //end of file not reached
-
-	// process arrivals and departures for each unit of time 
-	while ( clock <= simulationTime) {
-		// process arrivals
-		//more than 1 customer may arrive at the same time
-		//stop reading data when the end of the file is reached
-		while (clock == timeArrival && !eof) { 
-			Vehicle v = new Vehicle (timeArrival, durationNewArrival, tollFee);
-			myHighway.addVehicle (v) ;
-
-			//prepare next arrival
-			if (sc.hasNext()) 
-				timeArrival = sc.nextInt();
-			else eof = true;
-			if (sc.hasNext())
-				durationNewArrival = sc.nextInt();
-			if (sc.hasNext())
-                tollFee = sc.nextDouble();
-		}
-
-		// process departures
-		myHighway.updateActiveQueues ();
-
-		// reduce one active queue, if possible
-		myHighway.updateNumberActiveQueues ();
-	
-		clock ++ ;
-	}
-	}
-}
+import java.util.Scanner;
+
+public class AuxTestsSimulation {
+	
+	public static void simulationTest (Scanner sc, Highway myHighway, int simulationTime) 
+			throws IllegalQueueRequest {
+	simulationTest(ArrivalSource.of(sc), myHighway, simulationTime);
+	}
+
+	/**
+	 * Same as simulationTest, reading the arrivals from an ArrivalSource (for
+	 * instance, a MappedArrivalReader).
+	 */
+	public static void simulationTest (ArrivalSource sc, Highway myHighway, int simulationTime) 
+			throws IllegalQueueRequest {
+	
+	int clock = 1;
+
+	int timeArrival = sc.nextInt();
+	int durationNewArrival = sc.nextInt();
+	double tollFee = sc.nextDouble();
+	boolean eof = false;  //end of file not reached
+
+	// process arrivals and departures for each unit of time 
+	while ( clock <= simulationTime) {
+		// process arrivals
+		//more than 1 customer may arrive at the same time
+		//stop reading data when the end of the file is reached
+		while (clock == timeArrival && !eof) { 
+			Vehicle v = new Vehicle (timeArrival, durationNewArrival, tollFee);
+			myHighway.addVehicle (v) ;
+
+			//prepare next arrival
+			if (sc.hasNext()) 
+				timeArrival = sc.nextInt();
+			else eof = true;
+			if (sc.hasNext())
+				durationNewArrival = sc.nextInt();
+			if (sc.hasNext())
+                tollFee = sc.nextDouble();
+		}
+
+		// process departures
+		myHighway.updateActiveQueues ();
+
+		// reduce one active queue, if possible
+		myHighway.updateNumberActiveQueues ();
+	
+		clock ++ ;
+	}
+	}
+
+	/**
+	 * Same as simulationTest, but advancing the highway with advanceTo from one
+	 * arrival to the next, so that an event-driven highway skips idle time.
+	 */
+	public static void simulationAdvanceTest (Scanner sc, Highway myHighway, int simulationTime) 
+			throws IllegalQueueRequest {
+
+	int clock = 1;
+
+	int timeArrival = sc.nextInt();
+	int durationNewArrival = sc.nextInt();
+	double tollFee = sc.nextDouble();
+	boolean eof = false;  //end of file not reached
+
+	while ( clock <= simulationTime) {
+		while (clock == timeArrival && !eof) { 
+			Vehicle v = new Vehicle (timeArrival, durationNewArrival, tollFee);
+			myHighway.addVehicle (v) ;
+
+			//prepare next arrival
+			if (sc.hasNext()) 
+				timeArrival = sc.nextInt();
+			else eof = true;
+			if (sc.hasNext())
+				durationNewArrival = sc.nextInt();
+			if (sc.hasNext())
+                tollFee = sc.nextDouble();
+		}
+
+		// process departures until the next arrival
+		int next = simulationTime;
+		if (!eof && timeArrival > clock)
+			next = Math.min(next, timeArrival - 1);
+		myHighway.advanceTo (next);
+
+		clock = next + 1;
+	}
+	}
+
+	/**
+	 * Same as simulationTest, over a PackedHighway, running the simulation loop
+	 * of RunSimulation without printing the reports.
+	 */
+	public static void simulationTest (Scanner sc, PackedHighway myHighway, int simulationTime) 
+			throws IllegalQueueRequest {
+	RunSimulation.simulation(myHighway, ArrivalSource.of(sc), simulationTime, null);
+	}
+}
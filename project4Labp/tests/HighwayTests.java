@@ -1,9 +1,30 @@
 import static org.junit.Assert.*;
 import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.InputMismatchException;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HighwayTests {
 	
@@ -195,4 +216,1045 @@ public class HighwayTests {
         assertEquals(esperado, actual, delta);
     }
 
+    @Test
+    void test_eventDrivenSameAsTicks() throws FileNotFoundException, IllegalQueueRequest {
+        Locale.setDefault(new Locale("en", "US"));
+        String args = "highwayTolls.txt";
+        Scanner sc = new Scanner(new File(args));
+
+        int minActQueues = sc.nextInt();
+        int maxVehiPerQueue = sc.nextInt();
+        int simulationTime = sc.nextInt();
+
+        Highway ticks = new Highway(minActQueues, maxVehiPerQueue);
+        AuxTestsSimulation.simulationTest(sc, ticks, simulationTime);
+
+        sc.close();
+        sc = new Scanner(new File(args));
+        sc.nextInt();
+        sc.nextInt();
+        sc.nextInt();
+
+        Highway events = new Highway(minActQueues, maxVehiPerQueue, true);
+        AuxTestsSimulation.simulationAdvanceTest(sc, events, simulationTime);
+
+        sc.close();
+
+        assertEquals(ticks.toString(), events.toString());
+        assertEquals(ticks.averageWaitingTime(), events.averageWaitingTime(), 0.0);
+        assertEquals(ticks.totalTolls(), events.totalTolls(), 0.0);
+    }
+
+    @Test
+    void test_longWaitsDoNotOverflow() throws IllegalQueueRequest {
+        // 2 queues of 1000 vehicles taking 3000 units each: the waits add up to
+        // about 3 * 10^9, more than an int holds
+        int n = 2000;
+        int[] durations = new int[n];
+        double[] tolls = new double[n];
+        Arrays.fill(durations, 3000);
+        Arrays.fill(tolls, 1.0);
+        int end = 1000 * 3000 + 1;
+
+        Highway events = new Highway(2, 1000, true);
+        events.addArrivals(1, durations, tolls, n);
+        events.advanceTo(end);
+        PackedHighway packed = new PackedHighway(2, 1000);
+        packed.addArrivals(1, durations, tolls, n);
+        packed.advanceTo(end);
+
+        assertEquals(n, events.nrVehiclesProcessed());
+        assertEquals(999 * 3000 / 2.0, events.averageWaitingTime(), 0.0);
+        assertEquals(events.waitingTimes().mean(), events.averageWaitingTime(), 0.0);
+        assertEquals(events.averageWaitingTime(), packed.averageWaitingTime(), 0.0);
+        assertEquals(events.toString(), packed.toString());
+    }
+
+    @Test
+    void test_stateKeepsLongWaits() throws IOException, IllegalQueueRequest {
+        int n = 2000;
+        int[] durations = new int[n];
+        double[] tolls = new double[n];
+        Arrays.fill(durations, 3000);
+        Arrays.fill(tolls, 1.0);
+        Highway before = new Highway(2, 1000, true);
+        before.addArrivals(1, durations, tolls, n);
+        before.advanceTo(1000 * 3000 + 1);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        before.writeState(new DataOutputStream(bytes));
+        Highway after = new Highway(2, 1000, true);
+        after.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(before.toString(), after.toString());
+        assertEquals(n, after.nrVehiclesProcessed());
+        assertEquals(before.averageWaitingTime(), after.averageWaitingTime(), 0.0);
+    }
+
+    @Test
+    void test_packedSameAsHighway60() throws FileNotFoundException, IllegalQueueRequest {
+        Locale.setDefault(new Locale("en", "US"));
+        String args = "tests.txt";
+
+        int minActQueues = 2;
+        int maxVehiPerQueue = 3;
+        int simulationTime = 60;
+
+        Scanner sc = new Scanner(new File(args));
+        Highway myHighway = new Highway(minActQueues, maxVehiPerQueue);
+        AuxTestsSimulation.simulationTest(sc, myHighway, simulationTime);
+        sc.close();
+
+        sc = new Scanner(new File(args));
+        PackedHighway packed = new PackedHighway(minActQueues, maxVehiPerQueue);
+        AuxTestsSimulation.simulationTest(sc, packed, simulationTime);
+        sc.close();
+
+        assertEquals(myHighway.toString(), packed.toString());
+        assertEquals(myHighway.totalTolls(), packed.totalTolls(), 0.005);
+    }
+
+    @Test
+    void test_arenaSameAsArrayQueues60() throws FileNotFoundException, IllegalQueueRequest {
+        Locale.setDefault(new Locale("en", "US"));
+        String args = "tests.txt";
+
+        int minActQueues = 2;
+        int maxVehiPerQueue = 3;
+        int simulationTime = 60;
+
+        Scanner sc = new Scanner(new File(args));
+        Highway myHighway = new Highway(minActQueues, maxVehiPerQueue);
+        AuxTestsSimulation.simulationTest(sc, myHighway, simulationTime);
+        sc.close();
+
+        sc = new Scanner(new File(args));
+        Highway arena = new Highway(minActQueues, maxVehiPerQueue, false,
+                new ArenaQueueSystem<>(minActQueues, maxVehiPerQueue));
+        AuxTestsSimulation.simulationTest(sc, arena, simulationTime);
+        sc.close();
+
+        assertEquals(myHighway.toString(), arena.toString());
+    }
+
+    @Test
+    void test_mappedReaderSameAsScanner60() throws IOException, IllegalQueueRequest {
+        Locale.setDefault(new Locale("en", "US"));
+        String args = "tests.txt";
+
+        int minActQueues = 2;
+        int maxVehiPerQueue = 3;
+        int simulationTime = 60;
+
+        Scanner sc = new Scanner(new File(args));
+        Highway myHighway = new Highway(minActQueues, maxVehiPerQueue);
+        AuxTestsSimulation.simulationTest(sc, myHighway, simulationTime);
+        sc.close();
+
+        MappedArrivalReader reader = new MappedArrivalReader(Paths.get(args));
+        Highway mapped = new Highway(minActQueues, maxVehiPerQueue);
+        AuxTestsSimulation.simulationTest(reader, mapped, simulationTime);
+        reader.close();
+
+        assertEquals(myHighway.toString(), mapped.toString());
+        assertEquals(myHighway.totalTolls(), mapped.totalTolls(), 0.0);
+    }
+
+    @Test
+    void test_mappedReaderReadsValuesAcrossWindows() throws IOException {
+        Locale.setDefault(new Locale("en", "US"));
+        // values longer than MappedArrivalReader.MAX_VALUE_LENGTH, among short ones
+        String zeros = "0".repeat(100);
+        String text = "3 " + zeros + "7\r\n" + "1." + "25".repeat(60) + " -12 " + zeros + "1.5\n\n" + "2.5e1 "
+                + "+" + zeros + "42 0.1";
+        Path file = Files.createTempFile("values", ".txt");
+        try {
+            Files.write(file, text.getBytes());
+            // windows that end at every few bytes of the file, all longer than
+            // the longest value
+            for (long windowLength = 123; windowLength <= text.length() + 1; windowLength += 3) {
+                Scanner sc = new Scanner(text);
+                try (MappedArrivalReader reader = new MappedArrivalReader(file, windowLength)) {
+                    assertEquals(sc.nextInt(), reader.nextInt());
+                    assertEquals(sc.nextInt(), reader.nextInt());
+                    assertEquals(sc.nextDouble(), reader.nextDouble(), 0.0);
+                    assertEquals(sc.nextInt(), reader.nextInt());
+                    assertEquals(sc.nextDouble(), reader.nextDouble(), 0.0);
+                    assertEquals(sc.nextDouble(), reader.nextDouble(), 0.0);
+                    assertEquals(sc.nextInt(), reader.nextInt());
+                    assertEquals(sc.nextDouble(), reader.nextDouble(), 0.0);
+                    assertFalse(reader.hasNext());
+                }
+            }
+
+            // a value longer than a window cannot be read whole
+            try (MappedArrivalReader reader = new MappedArrivalReader(file, 50)) {
+                reader.nextInt();
+                try {
+                    reader.nextInt();
+                    fail("read a value longer than a window");
+                } catch (InputMismatchException e) {
+                    // expected
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void test_binaryTraceSameAsText60() throws IOException, IllegalQueueRequest {
+        Locale.setDefault(new Locale("en", "US"));
+        String args = "tests.txt";
+
+        int minActQueues = 2;
+        int maxVehiPerQueue = 3;
+        int simulationTime = 60;
+
+        Scanner sc = new Scanner(new File(args));
+        Highway myHighway = new Highway(minActQueues, maxVehiPerQueue);
+        AuxTestsSimulation.simulationTest(sc, myHighway, simulationTime);
+        sc.close();
+
+        // tests.txt has no header, so the arrivals are copied one by one
+        Path binary = Files.createTempFile("tests", ".bin");
+        try {
+            try (MappedArrivalReader text = new MappedArrivalReader(Paths.get(args));
+                    BinaryTraceWriter out = new BinaryTraceWriter(Files.newOutputStream(binary),
+                            minActQueues, maxVehiPerQueue, simulationTime)) {
+                while (text.hasNext())
+                    out.add(text.nextInt(), text.nextInt(), PackedHighway.toCents(text.nextDouble()));
+            }
+            assertTrue(BinaryArrivalReader.isBinaryTrace(binary));
+            assertFalse(BinaryArrivalReader.isBinaryTrace(Paths.get(args)));
+
+            Highway fromBinary = new Highway(minActQueues, maxVehiPerQueue);
+            try (BinaryArrivalReader reader = new BinaryArrivalReader(binary)) {
+                assertEquals(minActQueues, reader.nextInt());
+                assertEquals(maxVehiPerQueue, reader.nextInt());
+                assertEquals(simulationTime, reader.nextInt());
+                AuxTestsSimulation.simulationTest(reader, fromBinary, simulationTime);
+            }
+
+            assertEquals(myHighway.toString(), fromBinary.toString());
+            assertEquals(myHighway.totalTolls(), fromBinary.totalTolls(), 0.0);
+        } finally {
+            Files.deleteIfExists(binary);
+        }
+    }
+
+    @Test
+    void test_generatorSameAsItsTextFile() throws IOException, IllegalQueueRequest {
+        Locale.setDefault(new Locale("en", "US"));
+
+        Path text = Files.createTempFile("generated", ".txt");
+        try {
+            try (OutputStream out = Files.newOutputStream(text)) {
+                assertEquals(2000, ArrivalGenerator.writeText(generator(), out));
+            }
+
+            ArrivalGenerator direct = generator();
+            Highway myHighway = new Highway(direct.nextInt(), direct.nextInt());
+            AuxTestsSimulation.simulationTest(direct, myHighway, direct.nextInt());
+
+            Highway fromFile;
+            try (MappedArrivalReader reader = new MappedArrivalReader(text)) {
+                fromFile = new Highway(reader.nextInt(), reader.nextInt());
+                AuxTestsSimulation.simulationTest(reader, fromFile, reader.nextInt());
+            }
+
+            assertEquals(myHighway.toString(), fromFile.toString());
+            assertEquals(myHighway.totalTolls(), fromFile.totalTolls(), 0.0);
+        } finally {
+            Files.deleteIfExists(text);
+        }
+    }
+
+    @Test
+    void test_parallelSameAsTicks() throws IllegalQueueRequest {
+        Locale.setDefault(new Locale("en", "US"));
+        // a wide plaza: about 8 arrivals per time unit and 2 vehicles per queue
+        int minActQueues = 4;
+        int maxVehiPerQueue = 2;
+        int simulationTime = 3000;
+
+        Highway ticks = new Highway(minActQueues, maxVehiPerQueue);
+        AuxTestsSimulation.simulationTest(widePlaza(), ticks, simulationTime);
+
+        try (Highway parallel = new Highway(minActQueues, maxVehiPerQueue, false,
+                new ArrayQueueSystem<>(minActQueues), 4)) {
+            AuxTestsSimulation.simulationTest(widePlaza(), parallel, simulationTime);
+
+            assertTrue(ticks.peakActiveQueues() > 50);
+            assertEquals(ticks.toString(), parallel.toString());
+            assertEquals(ticks.averageWaitingTime(), parallel.averageWaitingTime(), 0.0);
+            assertEquals(ticks.totalTolls(), parallel.totalTolls(), 0.0);
+        }
+    }
+
+    /**
+     * The arrivals of a generated trace (without its header) with about 8
+     * arrivals per time unit.
+     */
+    private static ArrivalSource widePlaza() {
+        ArrivalGenerator g = new ArrivalGenerator(11, 4, 2, 3000, ArrivalGenerator.Rate.constant(8),
+                ArrivalGenerator.Distribution.uniform(1, 30), ArrivalGenerator.Distribution.uniform(50, 300));
+        g.nextInt();
+        g.nextInt();
+        g.nextInt();
+        return g;
+    }
+
+    @Test
+    void test_concurrentLeastLoadedStress() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 20000;
+        ConcurrentQueueSystem<Integer> qs = new ConcurrentQueueSystem<>(8);
+        qs.create();
+        qs.create();
+
+        // producers fill the queues while another thread opens two more; the
+        // failures are counted there and checked here, where they fail the test
+        List<Thread> threads = new ArrayList<>();
+        int[] rejected = new int[producers];
+        for (int p = 0; p < producers; p++) {
+            int id = p;
+            threads.add(new Thread(() -> {
+                for (int k = 0; k < perProducer; k++)
+                    if (qs.enqueueLeastLoaded(k) < 0)
+                        rejected[id]++;
+            }));
+        }
+        threads.add(new Thread(() -> {
+            qs.activate(8);
+            qs.activate(9);
+        }));
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        for (int p = 0; p < producers; p++)
+            assertEquals(0, rejected[p]);
+
+        // every element went to a least occupied queue, so the sizes differ by at
+        // most one, except in the queues activated late, which may have fewer
+        assertEquals(producers * perProducer, qs.size());
+        int total = 0;
+        int max = 0;
+        for (int i = 0; i < qs.howManyQueues(); i++) {
+            total += qs.sizeOf(i);
+            max = Math.max(max, qs.sizeOf(i));
+        }
+        assertEquals(qs.size(), total);
+        for (int i = 0; i < qs.howManyQueues(); i++)
+            assertTrue(qs.sizeOf(i) >= max - 1 || i >= 8);
+        assertEquals(0, qs.howManyEmptyQueues());
+
+        // consumers drain the queues concurrently
+        AtomicInteger dequeued = new AtomicInteger();
+        threads.clear();
+        for (int c = 0; c < 4; c++) {
+            int first = c;
+            threads.add(new Thread(() -> {
+                for (int i = first; i < qs.howManyQueues(); i = (i + 1) % qs.howManyQueues())
+                    if (qs.tryDequeueAt(i))
+                        dequeued.incrementAndGet();
+                    else if (qs.size() == 0)
+                        break;
+            }));
+        }
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        assertEquals(producers * perProducer, dequeued.get());
+        assertEquals(qs.howManyActiveQueues(), qs.howManyEmptyQueues());
+    }
+
+    @Test
+    void test_concurrentLeastLoadedScalesWithProducers() throws InterruptedException {
+        int perProducer = 50000;
+        int maxProducers = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+        // elements per millisecond with 1 to maxProducers producers and a consumer
+        // draining the queues meanwhile, best of three rounds
+        double single = 0;
+        for (int producers = 1; producers <= maxProducers; producers *= 2) {
+            double best = 0;
+            for (int round = 0; round < 3; round++) {
+                ConcurrentQueueSystem<Integer> qs = new ConcurrentQueueSystem<>(64);
+                long start = System.nanoTime();
+                long total = producersRound(qs, producers, perProducer);
+                best = Math.max(best, total * 1e6 / (System.nanoTime() - start));
+                // a choice is spoiled only by another thread changing the queue
+                // chosen, so the producers seldom fall back to locking them all
+                assertTrue(qs.lockedChoices() * 1000 <= total);
+                assertEquals(0, qs.size());
+            }
+            if (producers == 1)
+                single = best;
+            // more producers must not make the whole slower: with one processor
+            // they share it, with more they add to each other
+            assertTrue("producers " + producers + ": " + best + " vs " + single + " per ms",
+                    best >= single / 2);
+        }
+    }
+
+    /**
+     * Runs producers adding perProducer elements each to qs, and a consumer
+     * removing them all, and waits for them.
+     *
+     * @return the number of elements added
+     */
+    private static long producersRound(ConcurrentQueueSystem<Integer> qs, int producers, int perProducer)
+            throws InterruptedException {
+        Integer item = 7;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++)
+            threads.add(new Thread(() -> {
+                for (int k = 0; k < perProducer; k++)
+                    qs.enqueueLeastLoaded(item);
+            }));
+        long total = (long) producers * perProducer;
+        threads.add(new Thread(() -> {
+            long removed = 0;
+            for (int i = 0; removed < total; i = (i + 1) % qs.howManyQueues())
+                if (qs.tryDequeueAt(i))
+                    removed++;
+        }));
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        return total;
+    }
+
+    @Test
+    void test_ringQueuesKeepOrderAcrossThreads() throws InterruptedException {
+        int n = 200000;
+
+        // one producer: the consumer sees every element, in order
+        SpscRingQueue<Integer> spsc = new SpscRingQueue<>(100);
+        assertEquals(128, spsc.capacity());
+        Thread producer = new Thread(() -> {
+            for (int k = 0; k < n; k++)
+                spsc.enqueue(k);
+        });
+        producer.start();
+        for (int k = 0; k < n; k++) {
+            while (spsc.isEmpty())
+                Thread.yield();
+            assertEquals(k, (int) spsc.front());
+            spsc.dequeue();
+        }
+        producer.join();
+        assertTrue(spsc.isEmpty());
+
+        // several producers: the elements of each one are seen in its order
+        int producers = 3;
+        MpscRingQueue<Integer> mpsc = new MpscRingQueue<>(64);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int id = p;
+            threads.add(new Thread(() -> {
+                for (int k = 0; k < n; k++)
+                    mpsc.enqueue(k * producers + id);
+            }));
+        }
+        for (Thread t : threads)
+            t.start();
+        int[] next = new int[producers];
+        for (int k = 0; k < producers * n; k++) {
+            while (mpsc.isEmpty())
+                Thread.yield();
+            int e = mpsc.front();
+            mpsc.dequeue();
+            assertEquals(next[e % producers]++, e / producers);
+        }
+        for (Thread t : threads)
+            t.join();
+        assertTrue(mpsc.isEmpty());
+    }
+
+    @Test
+    void test_segmentedQueueSameAsArrayQueue() {
+        ArrayQueue<Integer> array = new ArrayQueue<>();
+        SegmentedQueue<Integer> segmented = new SegmentedQueue<>(8);
+        Random random = new Random(3);
+        // a jam that builds up to thousands of elements and then clears
+        for (int k = 0; k < 20000; k++) {
+            boolean add = array.isEmpty() || random.nextInt(100) < (k < 10000 ? 60 : 40);
+            if (add) {
+                array.enqueue(k);
+                segmented.enqueue(k);
+            } else {
+                assertEquals(array.front(), segmented.front());
+                array.dequeue();
+                segmented.dequeue();
+            }
+            assertEquals(array.size(), segmented.size());
+        }
+        assertTrue(segmented.segments() <= array.size() / 8 + 2);
+        assertEquals(array.toString(), segmented.toString());
+        while (!array.isEmpty()) {
+            assertEquals(array.front(), segmented.front());
+            array.dequeue();
+            segmented.dequeue();
+        }
+        assertTrue(segmented.isEmpty());
+        assertEquals(1, segmented.segments());
+    }
+
+    @Test
+    void test_bulkOperationsSameAsOneByOne() throws IllegalQueueRequest {
+        Random random = new Random(5);
+        Integer[] batch = new Integer[40];
+        for (int k = 0; k < batch.length; k++)
+            batch[k] = k;
+        Integer[] drained = new Integer[40];
+
+        // ArrayQueue's bulk operations, across the wrap of its ring, against the
+        // one by one ones SegmentedQueue inherits from Queue
+        ArrayQueue<Integer> array = new ArrayQueue<>();
+        SegmentedQueue<Integer> segmented = new SegmentedQueue<>(8);
+        for (int round = 0; round < 2000; round++) {
+            int n = random.nextInt(20);
+            int off = random.nextInt(20);
+            switch (random.nextInt(4)) {
+            case 0:
+                array.enqueueAll(batch, off, n);
+                segmented.enqueueAll(batch, off, n);
+                break;
+            case 1:
+                int got = array.drainTo(drained, 0, n);
+                assertEquals(segmented.drainTo(drained, 20, n), got);
+                for (int k = 0; k < got; k++)
+                    assertEquals(drained[20 + k], drained[k]);
+                break;
+            case 2:
+                List<Integer> a = new ArrayList<>();
+                List<Integer> b = new ArrayList<>();
+                assertEquals(segmented.drainTo(b::add, n), array.drainTo(a::add, n));
+                assertEquals(b, a);
+                break;
+            default:
+                n = Math.min(n, array.size());
+                array.removeFront(n);
+                segmented.removeFront(n);
+            }
+            assertEquals(segmented.toString(), array.toString());
+        }
+
+        // ArrayQueueSystem's bulk operations against enqueueAt and tryDequeueAt
+        ArrayQueueSystem<Integer> bulk = new ArrayQueueSystem<>(4);
+        ArrayQueueSystem<Integer> single = new ArrayQueueSystem<>(4);
+        bulk.create();
+        single.create();
+        for (int round = 0; round < 500; round++) {
+            int i = random.nextInt(5);
+            int n = random.nextInt(10);
+            if (random.nextBoolean()) {
+                boolean done = bulk.enqueueAllAt(i, batch, 0, n);
+                assertEquals(single.isActivated(i), done);
+                for (int k = 0; done && k < n; k++)
+                    single.enqueueAt(i, batch[k]);
+            } else {
+                int removed = random.nextBoolean() ? bulk.removeFrontAt(i, n) : bulk.drainAt(i, e -> {
+                }, n);
+                int expected = 0;
+                while (expected < n && single.tryDequeueAt(i))
+                    expected++;
+                assertEquals(expected, removed);
+            }
+            assertEquals(single.size(), bulk.size());
+            assertEquals(single.howManyEmptyQueues(), bulk.howManyEmptyQueues());
+            assertEquals(single.focusMin(), bulk.focusMin());
+            assertEquals(single.current(), bulk.current());
+            assertEquals(single.focusMax(), bulk.focusMax());
+            assertEquals(single.toString(), bulk.toString());
+        }
+    }
+
+    /**
+     * A generated trace of 2000 vehicles arriving in platoons, with rush hours.
+     */
+    private static ArrivalGenerator generator() {
+        return new ArrivalGenerator(7, 2, 4, 5000, ArrivalGenerator.Rate.rushHours(0.2, 2, 1440, 60, 480, 1080),
+                ArrivalGenerator.Distribution.exponential(6, 1, 40),
+                ArrivalGenerator.Distribution.discrete(new int[] { 85, 150, 300 }, new double[] { 6, 3, 1 }),
+                ArrivalGenerator.Distribution.uniform(1, 3), 2000);
+    }
+
+    @Test
+    void test_sweepSameAsSequentialRuns() throws Exception {
+        Locale.setDefault(new Locale("en", "US"));
+        String args = "highwayTolls.txt";
+
+        ArrivalTrace trace = ArrivalTrace.read(ArrivalSource.of(new Scanner(new File(args))));
+        List<SweepSimulation.Result> results = SweepSimulation.sweep(trace, 1, 3, 1, 4, false, 4);
+        assertEquals(12, results.size());
+
+        for (SweepSimulation.Result r : results) {
+            Scanner sc = new Scanner(new File(args));
+            sc.nextInt();
+            sc.nextInt();
+            int simulationTime = sc.nextInt();
+            Highway myHighway = new Highway(r.minActivatedQueues, r.maxVehiclesPerQueue);
+            AuxTestsSimulation.simulationTest(sc, myHighway, simulationTime);
+            sc.close();
+
+            assertEquals(myHighway.nrVehiclesProcessed(), r.processed);
+            assertEquals(myHighway.averageWaitingTime(), r.averageWaitingTime, 0.0);
+            assertEquals(myHighway.totalTolls(), r.totalTolls, 0.0);
+            assertEquals(myHighway.peakActiveQueues(), r.peakActiveQueues);
+        }
+    }
+
+    @Test
+    void test_addVehiclesSameAsOneByOne() throws IllegalQueueRequest {
+        for (boolean eventDriven : new boolean[] { false, true }) {
+            Random random = new Random(18);
+            Highway single = new Highway(3, 5, eventDriven);
+            Highway batched = new Highway(3, 5, eventDriven);
+            int time = 0;
+            for (int round = 0; round < 300; round++) {
+                // batches from a few vehicles to enough for several new queues,
+                // with a few units of time between them
+                int len = random.nextInt(round % 10 == 0 ? 60 : 20);
+                Vehicle[] batch = new Vehicle[len + 2];
+                for (int k = 0; k < len; k++) {
+                    int duration = 1 + random.nextInt(6);
+                    double toll = 1 + random.nextInt(300) / 100.0;
+                    single.addVehicle(new Vehicle(time + 1, duration, toll));
+                    batch[k + 1] = new Vehicle(time + 1, duration, toll);
+                }
+                batched.addVehicles(batch, 1, len);
+
+                assertEquals(single.toString(), batched.toString());
+                assertEquals(single.nrActiveQueues(), batched.nrActiveQueues());
+                assertEquals(single.peakActiveQueues(), batched.peakActiveQueues());
+
+                for (int steps = random.nextInt(4); steps >= 0; steps--) {
+                    single.updateActiveQueues();
+                    single.updateNumberActiveQueues();
+                    batched.updateActiveQueues();
+                    batched.updateNumberActiveQueues();
+                    time++;
+                }
+            }
+            assertTrue(single.peakActiveQueues() > 6);
+            assertEquals(single.toString(), batched.toString());
+            assertEquals(single.averageWaitingTime(), batched.averageWaitingTime(), 0.0);
+            assertEquals(single.totalTolls(), batched.totalTolls(), 0.0);
+        }
+    }
+
+    @Test
+    void test_pooledVehiclesAllocateNothingPerTick() throws IllegalQueueRequest {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (boolean eventDriven : new boolean[] { false, true }) {
+            Highway pooled = new Highway(4, 8, eventDriven);
+            pooled.setVehiclePooling(true);
+            Highway unpooled = new Highway(4, 8, eventDriven);
+            Vehicle[] arrivals = new Vehicle[12];
+            int[] clock = { 1 };
+
+            // a steady state in which about as many vehicles leave as arrive
+            // (warming up the queues, the pool and the compiler first)
+            for (Highway h : new Highway[] { pooled, unpooled }) {
+                clock[0] = 1;
+                runTicks(h, arrivals, clock, 20000);
+            }
+            long before = threads.getThreadAllocatedBytes(thread);
+            runTicks(pooled, arrivals, clock, 100000);
+            double pooledPerTick = (threads.getThreadAllocatedBytes(thread) - before) / 100000.0;
+            clock[0] = 20001;
+            before = threads.getThreadAllocatedBytes(thread);
+            runTicks(unpooled, arrivals, clock, 100000);
+            double unpooledPerTick = (threads.getThreadAllocatedBytes(thread) - before) / 100000.0;
+
+            assertTrue(pooled.nrVehiclesProcessed() > 500000);
+            assertTrue("pooled " + pooledPerTick + " bytes per tick", pooledPerTick < 1);
+            assertTrue("unpooled " + unpooledPerTick + " bytes per tick", unpooledPerTick > 16);
+            assertEquals(unpooled.toString(), pooled.toString());
+        }
+    }
+
+    /**
+     * Runs a highway for some units of time in which 4 or 12 vehicles arrive,
+     * alternately, taking 1 or 2 units of time each.
+     */
+    private static void runTicks(Highway h, Vehicle[] arrivals, int[] clock, int ticks)
+            throws IllegalQueueRequest {
+        for (int k = 0; k < ticks; k++) {
+            int time = clock[0]++;
+            int n = time % 2 == 0 ? 4 : 12;
+            for (int i = 0; i < n; i++)
+                arrivals[i] = h.newVehicle(time, 1 + (time + i) % 2, 1.5);
+            h.addVehicles(arrivals, 0, n);
+            h.advanceTo(time);
+        }
+    }
+
+    @Test
+    void test_waitingTimeHistograms() throws IllegalQueueRequest {
+        // percentiles within 1/16 of the exact ones, and merges of histograms
+        // the same as one histogram of all the values
+        Random random = new Random(20);
+        LogHistogram all = new LogHistogram();
+        LogHistogram odd = new LogHistogram();
+        LogHistogram even = new LogHistogram();
+        int[] values = new int[100000];
+        for (int k = 0; k < values.length; k++) {
+            values[k] = (int) Math.round(Math.exp(random.nextDouble() * 21)) - 1;
+            all.record(values[k]);
+            (k % 2 == 0 ? even : odd).record(values[k]);
+        }
+        java.util.Arrays.sort(values);
+        even.merge(odd);
+        for (double percent : new double[] { 0, 1, 50, 90, 95, 99, 99.9, 100 }) {
+            int exact = values[Math.max(0, (int) Math.ceil(percent / 100 * values.length) - 1)];
+            int p = all.percentile(percent);
+            assertTrue(percent + ": " + p + " for " + exact, p >= exact && p <= exact + exact / 16L);
+            assertEquals(p, even.percentile(percent));
+        }
+        assertEquals(values[0], all.min());
+        assertEquals(values[values.length - 1], all.max());
+        assertEquals(all.toString(), even.toString());
+
+        // a highway in every mode: the same histograms, and those of the lanes
+        // add up to those of the whole highway
+        Highway ticks = new Highway(4, 2);
+        Highway events = new Highway(4, 2, true);
+        Highway parallel = new Highway(4, 2, false, new ArrayQueueSystem<>(4), 4);
+        for (Highway h : new Highway[] { ticks, events, parallel })
+            AuxTestsSimulation.simulationTest(widePlaza(), h, 3000);
+        parallel.close();
+        assertEquals(ticks.nrVehiclesProcessed(), ticks.waitingTimes().count());
+        assertEquals(ticks.averageWaitingTime(), ticks.waitingTimes().mean(), 1e-9);
+        assertTrue(ticks.waitingTimePercentile(99) > ticks.waitingTimePercentile(50));
+        LogHistogram lanes = new LogHistogram();
+        LogHistogram laneServices = new LogHistogram();
+        for (int i = 0; i < ticks.peakActiveQueues(); i++) {
+            lanes.merge(ticks.waitingTimes(i));
+            laneServices.merge(ticks.serviceTimes(i));
+        }
+        assertEquals(ticks.waitingTimes().toString(), lanes.toString());
+        assertEquals(ticks.serviceTimes().toString(), laneServices.toString());
+        for (Highway h : new Highway[] { events, parallel }) {
+            assertEquals(ticks.waitingTimes().toString(), h.waitingTimes().toString());
+            assertEquals(ticks.serviceTimes().toString(), h.serviceTimes().toString());
+            assertEquals(ticks.waitingTimes(0).toString(), h.waitingTimes(0).toString());
+        }
+    }
+
+    @Test
+    void test_metricsOverJmx() throws Exception {
+        Highway plain = new Highway(4, 2);
+        AuxTestsSimulation.simulationTest(widePlaza(), plain, 3000);
+
+        Highway measured = new Highway(4, 2);
+        HighwayMetrics metrics = measured.enableMetrics();
+        metrics.register("test_metricsOverJmx");
+        try {
+            AuxTestsSimulation.simulationTest(widePlaza(), measured, 3000);
+            assertEquals(plain.toString(), measured.toString());
+
+            javax.management.MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            javax.management.ObjectName name = new javax.management.ObjectName(
+                    "Highway:type=HighwayMetrics,name=\"test_metricsOverJmx\"");
+            assertEquals(3000, server.getAttribute(name, "ElapsedTime"));
+            assertEquals((long) measured.nrVehiclesProcessed(), server.getAttribute(name, "Departures"));
+            assertEquals(measured.nrVehiclesProcessed() + measured.totalNrVehicles(),
+                    ((Long) server.getAttribute(name, "Arrivals")).intValue());
+            assertEquals(measured.nrActiveQueues(), server.getAttribute(name, "ActiveLanes"));
+            assertEquals(measured.totalNrVehicles(), server.getAttribute(name, "Backlog"));
+            long activations = (Long) server.getAttribute(name, "LaneActivations");
+            long deactivations = (Long) server.getAttribute(name, "LaneDeactivations");
+            assertTrue(activations > 50);
+            assertEquals(measured.nrActiveQueues() - 4, activations - deactivations);
+            assertTrue((Integer) server.getAttribute(name, "TotalLanes") >= measured.peakActiveQueues());
+            assertTrue((Double) server.getAttribute(name, "TicksPerSecond") > 0);
+            assertTrue((Double) server.getAttribute(name, "UpdateActiveQueuesMillis") > 0);
+
+            // reallocations are counted for the whole program, under a name of their own
+            javax.management.ObjectName queues = new javax.management.ObjectName(ArrayQueueMetrics.NAME);
+            long reallocations = (Long) server.getAttribute(queues, "Reallocations");
+            ArrayQueue<Integer> queue = new ArrayQueue<>();
+            for (int k = 0; k < 5; k++)
+                queue.enqueue(k);
+            assertTrue((Long) server.getAttribute(queues, "Reallocations") > reallocations);
+        } finally {
+            metrics.unregister();
+        }
+    }
+
+    @Test
+    void test_flightRecorderEvents() throws Exception {
+        Path file = Files.createTempFile("highway", ".jfr");
+        try {
+            Highway h = new Highway(4, 2);
+            HighwayMetrics metrics = h.enableMetrics();
+            try (jdk.jfr.Recording recording = new jdk.jfr.Recording()) {
+                for (String event : HighwayEvents.NAMES)
+                    recording.enable(event);
+                recording.start();
+                AuxTestsSimulation.simulationTest(widePlaza(), h, 3000);
+                ArrayQueue<Integer> queue = new ArrayQueue<>();
+                for (int k = 0; k < 5; k++)
+                    queue.enqueue(k);
+                recording.stop();
+                recording.dump(file);
+            }
+
+            int created = 0;
+            int activated = 0;
+            int deactivated = 0;
+            int reallocated = 0;
+            int ticks = 0;
+            int departures = 0;
+            for (jdk.jfr.consumer.RecordedEvent e : jdk.jfr.consumer.RecordingFile.readAllEvents(file)) {
+                switch (e.getEventType().getName()) {
+                case "highway.LaneCreated":
+                    created++;
+                    break;
+                case "highway.LaneActivated":
+                    activated++;
+                    break;
+                case "highway.LaneDeactivated":
+                    deactivated++;
+                    break;
+                case "highway.QueueReallocated":
+                    if (e.getInt("oldCapacity") == 4 && e.getInt("newCapacity") == 8)
+                        reallocated++;
+                    break;
+                case "highway.TickPhase":
+                    if (e.getString("phase").equals("updateActiveQueues")) {
+                        ticks++;
+                        departures += e.getInt("vehicles");
+                    }
+                    break;
+                }
+            }
+            assertEquals(metrics.getTotalLanes() - 4, created);
+            assertEquals(metrics.getLaneActivations(), activated);
+            assertEquals(metrics.getLaneDeactivations(), deactivated);
+            assertTrue(reallocated >= 1);
+            assertEquals(3000, ticks);
+            assertEquals(h.nrVehiclesProcessed(), departures);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void test_resumeFromCheckpointSameAsUninterrupted() throws Exception {
+        Path text = Files.createTempFile("generated", ".txt");
+        // written by the checkpoint writer, through a sibling .tmp file
+        Path checkpoint = text.resolveSibling(text.getFileName() + ".checkpoint");
+        try {
+            try (OutputStream out = Files.newOutputStream(text)) {
+                ArrivalGenerator.writeText(generator(), out);
+            }
+
+            for (boolean eventDriven : new boolean[] { false, true }) {
+                // the only checkpoint is taken halfway through the 5000 units of time;
+                // how much of the reports was printed is noted at each clock it may be
+                ByteArrayOutputStream printed = new ByteArrayOutputStream();
+                Map<Integer, Integer> printedAt = new HashMap<>();
+                Highway uninterrupted;
+                try (MappedArrivalReader sc = new MappedArrivalReader(text);
+                        SimulationCheckpoint.Writer checkpoints = new SimulationCheckpoint.Writer(checkpoint,
+                                2500) {
+                            @Override
+                            void reached(SimulatedHighway myHighway, int simulationTime, int clock,
+                                    int timeArrival, int durationNewArrival, double tollFee, boolean eof,
+                                    ArrivalSource sc, Flushable report) throws IOException {
+                                super.reached(myHighway, simulationTime, clock, timeArrival,
+                                        durationNewArrival, tollFee, eof, sc, report);
+                                printedAt.put(clock, printed.size());
+                            }
+                        }) {
+                    uninterrupted = new Highway(sc.nextInt(), sc.nextInt(), eventDriven);
+                    RunSimulation.simulation(uninterrupted, sc, new PrintStream(printed), checkpoints, null);
+                }
+
+                Highway resumed;
+                SimulationCheckpoint from;
+                ByteArrayOutputStream printedAfter = new ByteArrayOutputStream();
+                try (MappedArrivalReader sc = new MappedArrivalReader(text)) {
+                    resumed = new Highway(sc.nextInt(), sc.nextInt(), eventDriven);
+                    from = SimulationCheckpoint.restore(checkpoint, resumed);
+                    assertTrue(from.clock > 2500 && from.clock < 3000);
+                    assertTrue(resumed.nrVehiclesProcessed() > 0);
+                    RunSimulation.simulation(resumed, sc, new PrintStream(printedAfter), null, from);
+                }
+
+                // the reports printed before the checkpoint, and those printed after
+                // resuming from it, are all of them, once
+                String all = printed.toString();
+                int before = printedAt.get(from.clock);
+                assertTrue(all.substring(0, before).contains("---------- After time 2500"));
+                assertEquals(all, all.substring(0, before) + printedAfter.toString());
+                assertEquals(uninterrupted.toString(), resumed.toString());
+                assertEquals(uninterrupted.averageWaitingTime(), resumed.averageWaitingTime(), 0.0);
+                assertEquals(uninterrupted.totalTolls(), resumed.totalTolls(), 0.0);
+                assertEquals(uninterrupted.peakActiveQueues(), resumed.peakActiveQueues());
+                assertEquals(uninterrupted.waitingTimes().toString(), resumed.waitingTimes().toString());
+                assertEquals(uninterrupted.serviceTimes(0).toString(), resumed.serviceTimes(0).toString());
+            }
+
+            // a checkpoint is only restored into a highway with the same configuration
+            try {
+                SimulationCheckpoint.restore(checkpoint, new Highway(3, 3, true));
+                fail("restored into another configuration");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            Files.deleteIfExists(text);
+            Files.deleteIfExists(checkpoint);
+            Files.deleteIfExists(checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp"));
+        }
+    }
+
+    @Test
+    void test_forkedBranchesSameAsIndependentRuns() throws IllegalQueueRequest {
+        // after a common past, each branch of a fork ends as a highway that
+        // lived its future alone, whatever the other branches do
+        for (boolean eventDriven : new boolean[] { false, true }) {
+            Highway past = new Highway(2, 4, eventDriven);
+            Highway trunk = new Highway(2, 4, eventDriven);
+            Highway light = new Highway(2, 4, eventDriven);
+            Highway heavy = new Highway(2, 4, eventDriven);
+            for (Highway h : List.of(past, trunk, light, heavy))
+                drive(h, new Random(1), 1, 300, 3);
+
+            Highway branch = trunk.fork();
+            Highway twig = branch.fork();
+            drive(trunk, new Random(2), 301, 600, 2);
+            drive(light, new Random(2), 301, 600, 2);
+            drive(branch, new Random(3), 301, 600, 5);
+            drive(heavy, new Random(3), 301, 600, 5);
+
+            assertSameState(light, trunk);
+            assertSameState(heavy, branch);
+            assertSameState(past, twig);
+        }
+    }
+
+    @Test
+    void test_forkedBranchAllocationDoesNotGrowWithLanes() throws IllegalQueueRequest {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        // the same branch, of 10 units of time with 16 arrivals in each, from
+        // a backlog of 8 vehicles per lane in 1,250 and in 12,500 lanes
+        double[] perBranch = new double[2];
+        int[] lanes = { 1250, 12500 };
+        for (int k = 0; k < lanes.length; k++) {
+            Highway trunk = new Highway(2, 8, true);
+            for (int i = 0; i < lanes[k] * 8; i++)
+                trunk.addVehicle(new Vehicle(1, 1000 + i % 1000, 1.5));
+            trunk.advanceTo(1);
+            assertEquals(lanes[k], trunk.nrActiveQueues());
+
+            for (int n = 0; n < 200; n++)
+                branch10(trunk.fork());
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int n = 0; n < 100; n++)
+                branch10(trunk.fork());
+            perBranch[k] = (threads.getThreadAllocatedBytes(thread) - before) / 100.0;
+        }
+        assertTrue(perBranch[0] + " and " + perBranch[1] + " bytes per branch",
+                perBranch[1] < 1.5 * perBranch[0]);
+    }
+
+    private static void branch10(Highway h) throws IllegalQueueRequest {
+        for (int time = 2; time <= 11; time++) {
+            for (int k = 0; k < 16; k++)
+                h.addVehicle(new Vehicle(time, 1 + k % 4, 1.5));
+            h.advanceTo(time);
+        }
+    }
+
+    private static void drive(Highway h, Random random, int from, int to, int most)
+            throws IllegalQueueRequest {
+        for (int time = from; time <= to; time++) {
+            for (int n = random.nextInt(most + 1); n > 0; n--)
+                h.addVehicle(new Vehicle(time, 1 + random.nextInt(6), 0.5 + random.nextInt(4)));
+            h.advanceTo(time);
+        }
+    }
+
+    private static void assertSameState(Highway expected, Highway actual) {
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.averageWaitingTime(), actual.averageWaitingTime(), 0.0);
+        assertEquals(expected.totalTolls(), actual.totalTolls(), 0.0);
+        assertEquals(expected.peakActiveQueues(), actual.peakActiveQueues());
+        assertEquals(expected.waitingTimes().toString(), actual.waitingTimes().toString());
+        assertEquals(expected.waitingTimes(0).toString(), actual.waitingTimes(0).toString());
+        assertEquals(expected.serviceTimes(1).toString(), actual.serviceTimes(1).toString());
+    }
+
+    @Test
+    void test_appendToSameAsToString() throws IOException, IllegalQueueRequest {
+        Locale.setDefault(new Locale("en", "US"));
+        String END_LINE = System.lineSeparator();
+
+        // written piece by piece to a Writer, the text the old toString built
+        String expected = String.join(END_LINE,
+                "Minimum number of activated queues 2",
+                "Maximum number of vehicles per queue 3",
+                "Total number of elements in queue system 3",
+                "Current queue 1",
+                "<(1,2:2)<     active",
+                "<(1,5:2), (1,4:4)<     active",
+                "Elapsed time 3",
+                "Total waiting time 0",
+                "Number of vehicles processed 1",
+                "Total tolls collected 2.25",
+                "");
+        Highway h = new Highway(2, 3, true);
+        PackedHighway packed = new PackedHighway(2, 3);
+        for (int duration : new int[] { 3, 5, 2, 4 }) {
+            h.addVehicle(new Vehicle(1, duration, 2.25));
+            packed.addVehicle(1, duration, 225);
+        }
+        h.advanceTo(3);
+        packed.advanceTo(3);
+        for (Renderable r : List.of(h, packed)) {
+            StringWriter out = new StringWriter();
+            r.appendTo(out);
+            assertEquals(expected, out.toString());
+            assertEquals(expected, r.toString());
+        }
+        StringWriter vehicle = new StringWriter();
+        new Vehicle(12, 30, 1).appendTo(vehicle);
+        assertEquals("(12,30:30)", vehicle.toString());
+
+        // the reports of the reference simulation, printed with appendTo, are
+        // those in outputSemLog.txt
+        Highway reference;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        StringWriter before = new StringWriter();
+        try (Scanner sc = new Scanner(new File("highwayTolls.txt"))) {
+            reference = new Highway(sc.nextInt(), sc.nextInt());
+            reference.appendTo(before);
+            RunSimulation.simulation(reference, ArrivalSource.of(sc), new PrintStream(printed));
+        }
+        String log = new String(Files.readAllBytes(Paths.get("outputSemLog.txt"))).replace("\r\n", "\n");
+        assertEquals(log, ("---------- Highway before starting the simulation" + END_LINE + before + END_LINE
+                + "----------" + END_LINE + printed).replace(END_LINE, "\n"));
+
+        StringWriter out = new StringWriter();
+        for (int n : new int[] { 0, 7, 10, -45, 1000000, Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+            Renderable.appendInt(out, n);
+            out.append(' ');
+        }
+        assertEquals("0 7 10 -45 1000000 2147483647 -2147483648 ", out.toString());
+    }
+
 }